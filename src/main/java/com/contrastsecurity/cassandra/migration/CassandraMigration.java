@@ -2,27 +2,52 @@ package com.contrastsecurity.cassandra.migration;
 
 import com.contrastsecurity.cassandra.migration.action.Initialize;
 import com.contrastsecurity.cassandra.migration.action.Migrate;
+import com.contrastsecurity.cassandra.migration.action.MigrationLease;
 import com.contrastsecurity.cassandra.migration.action.Validate;
 import com.contrastsecurity.cassandra.migration.config.Keyspace;
 import com.contrastsecurity.cassandra.migration.config.MigrationConfigs;
+import com.contrastsecurity.cassandra.migration.config.ScriptsLocation;
 import com.contrastsecurity.cassandra.migration.config.ScriptsLocations;
+import com.contrastsecurity.cassandra.migration.dao.LeaseDAO;
 import com.contrastsecurity.cassandra.migration.dao.SchemaVersionDAO;
+import com.contrastsecurity.cassandra.migration.info.AppliedMigration;
 import com.contrastsecurity.cassandra.migration.info.MigrationInfoService;
 import com.contrastsecurity.cassandra.migration.info.MigrationVersion;
+import com.contrastsecurity.cassandra.migration.info.ResolvedMigration;
 import com.contrastsecurity.cassandra.migration.logging.Log;
 import com.contrastsecurity.cassandra.migration.logging.LogFactory;
 import com.contrastsecurity.cassandra.migration.resolver.CompositeMigrationResolver;
+import com.contrastsecurity.cassandra.migration.resolver.MigrationManifest;
 import com.contrastsecurity.cassandra.migration.resolver.MigrationResolver;
+import com.contrastsecurity.cassandra.migration.resolver.ResolutionCache;
+import com.contrastsecurity.cassandra.migration.resolver.WatchingMigrationResolver;
+import com.contrastsecurity.cassandra.migration.resolver.cql.CqlMigrationResolver;
+import com.contrastsecurity.cassandra.migration.resolver.java.JavaMigrationResolver;
+import com.contrastsecurity.cassandra.migration.utils.ObjectUtils;
+import com.contrastsecurity.cassandra.migration.utils.StopWatch;
 import com.contrastsecurity.cassandra.migration.utils.VersionPrinter;
 import com.datastax.driver.core.Host;
 import com.datastax.driver.core.KeyspaceMetadata;
 import com.datastax.driver.core.Metadata;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.exceptions.DriverException;
+import com.datastax.driver.core.policies.ConstantSpeculativeExecutionPolicy;
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-public class CassandraMigration {
+public class CassandraMigration implements Closeable {
 
     private static final Log LOG = LogFactory.getLog(CassandraMigration.class);
 
@@ -30,6 +55,24 @@ public class CassandraMigration {
     private Keyspace keyspace;
     private MigrationConfigs configs;
 
+    /**
+     * Session managed by the application, never closed by this class.
+     */
+    private Session externalSession;
+
+    /**
+     * Cluster managed by the application, never closed by this class.
+     */
+    private com.datastax.driver.core.Cluster externalCluster;
+
+    /**
+     * Whether the cluster and session opened by this class are kept open between calls until {@link #close()}.
+     */
+    private boolean keepConnectionOpen;
+
+    private com.datastax.driver.core.Cluster ownedCluster;
+    private Session ownedSession;
+
     public CassandraMigration() {
         this.keyspace = new Keyspace();
         this.configs = new MigrationConfigs();
@@ -60,30 +103,280 @@ public class CassandraMigration {
         return configs;
     }
 
+    /**
+     * Uses this application managed session instead of building a cluster from the configured cluster settings.
+     * The session is used as is when it is logged into the configured keyspace (or when no keyspace name is
+     * configured), otherwise a session to the keyspace is opened on its cluster. It is never closed by this class.
+     *
+     * @param session The session to use.
+     */
+    public void setSession(Session session) {
+        this.externalSession = session;
+        if (null != session && null != keyspace && null == keyspace.getName()) {
+            keyspace.setName(session.getLoggedKeyspace());
+        }
+    }
+
+    /**
+     * Uses this application managed cluster instead of building one from the configured cluster settings.
+     * It is never closed by this class.
+     *
+     * @param cluster The cluster to connect with.
+     */
+    public void setCluster(com.datastax.driver.core.Cluster cluster) {
+        this.externalCluster = cluster;
+    }
+
+    public boolean isKeepConnectionOpen() {
+        return keepConnectionOpen;
+    }
+
+    /**
+     * Keeps the cluster and session opened by this class between calls, so that repeated calls do not pay the
+     * connection setup. They are then only released by {@link #close()}. (default: false)
+     *
+     * @param keepConnectionOpen Whether to keep the connection open between calls.
+     */
+    public void setKeepConnectionOpen(boolean keepConnectionOpen) {
+        this.keepConnectionOpen = keepConnectionOpen;
+    }
+
+    /**
+     * Closes the cluster and session opened by this class, if any. Application managed ones are left open.
+     */
+    @Override
+    public void close() {
+        close(ownedSession);
+        ownedSession = null;
+        close(ownedCluster);
+        ownedCluster = null;
+    }
+
     private MigrationResolver createMigrationResolver() {
-        return new CompositeMigrationResolver(classLoader, new ScriptsLocations(configs.getScriptsLocations()), configs.getEncoding());
+        ResolutionCache resolutionCache = configs.getScriptsCache() == null ? null
+                : new ResolutionCache(new File(configs.getScriptsCache()), configs.getEncoding());
+        CompositeMigrationResolver migrationResolver = new CompositeMigrationResolver(classLoader,
+                new ScriptsLocations(configs.getScriptsLocations()), configs.getEncoding(), configs.getAsyncWindow(),
+                resolutionCache);
+        migrationResolver.setThreads(configs.getResolverThreads());
+        return migrationResolver;
     }
 
     public int migrate() {
         return execute(new Action<Integer>() {
             public Integer execute(Session session) {
-                new Initialize().run(session, keyspace, MigrationVersion.CURRENT.getTable());
+                return migrate(session, keyspace, createMigrationResolver());
+            }
+        });
+    }
 
-                MigrationResolver migrationResolver = createMigrationResolver();
-                SchemaVersionDAO schemaVersionDAO = new SchemaVersionDAO(session, keyspace, MigrationVersion.CURRENT.getTable());
-                Migrate migrate = new Migrate(migrationResolver, configs.getTarget(), schemaVersionDAO, session,
-                        keyspace.getCluster().getUsername(), configs.isAllowOutOfOrder());
+    /**
+     * Migrates this keyspace. When a lease TTL is configured, only the instance holding the migration lease of the
+     * keyspace migrates it. The others wait for the lease to be released and only check that the keyspace is up to
+     * date, taking the lease in turn if it is not. The migration is aborted if the lease is lost.
+     *
+     * @param session           The session connected to the keyspace.
+     * @param keyspace          The keyspace to migrate.
+     * @param migrationResolver The resolver of the migrations to apply.
+     * @return The number of successfully applied migrations.
+     */
+    private int migrate(Session session, Keyspace keyspace, MigrationResolver migrationResolver) {
+        new Initialize().run(session, keyspace, MigrationVersion.CURRENT.getTable());
+
+        SchemaVersionDAO schemaVersionDAO = new SchemaVersionDAO(session, keyspace, MigrationVersion.CURRENT.getTable(),
+                configs.isHistoryCache());
+        return migrate(session, keyspace, migrationResolver, schemaVersionDAO);
+    }
+
+    /**
+     * Migrates this keyspace through this DAO, whose metadata tables exist.
+     *
+     * @param session           The session connected to the keyspace.
+     * @param keyspace          The keyspace to migrate.
+     * @param migrationResolver The resolver of the migrations to apply.
+     * @param schemaVersionDAO  The DAO of the metadata table of the keyspace.
+     * @return The number of successfully applied migrations.
+     */
+    private int migrate(Session session, Keyspace keyspace, MigrationResolver migrationResolver,
+                        SchemaVersionDAO schemaVersionDAO) {
+        Migrate migrate = new Migrate(migrationResolver, configs.getTarget(), schemaVersionDAO, session,
+                keyspace.getCluster().getUsername(), configs.isAllowOutOfOrder(), configs.getParallelism());
 
-                return migrate.run();
+        if (configs.getLeaseTtl() <= 0) {
+            return migrate.run();
+        }
+
+        LeaseDAO leaseDAO = new LeaseDAO(session, keyspace, MigrationVersion.CURRENT.getTable(),
+                schemaVersionDAO.getLockConsistency(), schemaVersionDAO.getSerialConsistency());
+        try (MigrationLease lease = new MigrationLease(leaseDAO, configs.getLeaseTtl())) {
+            while (!lease.tryAcquire()) {
+                lease.awaitRelease();
+                if (migrate.isUpToDate()) {
+                    LOG.info("Keyspace " + keyspace.getName() + " is up to date, migrated by another instance");
+                    return 0;
+                }
+            }
+            return migrate.run(lease);
+        }
+    }
+
+    /**
+     * Migrates the keyspace, then keeps watching the filesystem locations and applies the Cql migrations added to them
+     * as they appear, through the same session. Only the added or changed scripts are resolved again, and the applied
+     * migrations are cached between iterations. A failing migration is logged and the watch goes on, so that the
+     * script can be fixed: once its script changed, the failed migration is removed from the metadata table and
+     * applied again. Blocks until the thread is interrupted.
+     */
+    public void watch() {
+        execute(new Action<Void>() {
+            public Void execute(Session session) {
+                ScriptsLocations locations = new ScriptsLocations(configs.getScriptsLocations());
+                try (WatchingMigrationResolver migrationResolver = new WatchingMigrationResolver(
+                        createMigrationResolver(), classLoader, locations, configs.getEncoding(), configs.getAsyncWindow())) {
+                    SchemaVersionDAO schemaVersionDAO = new SchemaVersionDAO(session, keyspace,
+                            MigrationVersion.CURRENT.getTable(), true);
+                    schemaVersionDAO.createTablesIfNotExist();
+                    do {
+                        try {
+                            removeChangedFailedMigrations(schemaVersionDAO, migrationResolver);
+                            migrate(session, keyspace, migrationResolver, schemaVersionDAO);
+                        } catch (CassandraMigrationException | DriverException e) {
+                            LOG.error("Migration of keyspace " + keyspace.getName() + " failed: " + e.getMessage());
+                        }
+                    } while (migrationResolver.awaitChanges());
+                } catch (IOException e) {
+                    throw new CassandraMigrationException("Unable to watch the migration locations", e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
             }
         });
     }
 
+    /**
+     * Removes the failed migrations whose script changed since they failed from the metadata table, so that they are
+     * applied again.
+     *
+     * @param schemaVersionDAO  The DAO of the metadata table.
+     * @param migrationResolver The resolver of the current migrations.
+     */
+    private void removeChangedFailedMigrations(SchemaVersionDAO schemaVersionDAO, MigrationResolver migrationResolver) {
+        Map<MigrationVersion, ResolvedMigration> resolvedMigrations = new HashMap<>();
+        for (ResolvedMigration resolvedMigration : migrationResolver.resolveMigrations()) {
+            resolvedMigrations.put(resolvedMigration.getVersion(), resolvedMigration);
+        }
+        for (AppliedMigration appliedMigration : schemaVersionDAO.findAppliedMigrations()) {
+            ResolvedMigration resolvedMigration = resolvedMigrations.get(appliedMigration.getVersion());
+            if (appliedMigration.isSuccess() || resolvedMigration == null
+                    || ObjectUtils.nullSafeEquals(resolvedMigration.getChecksum(), appliedMigration.getChecksum())) {
+                continue;
+            }
+            if (schemaVersionDAO.removeFailedMigration(appliedMigration.getVersion())) {
+                LOG.info("Script of failed migration " + appliedMigration.getVersion() + " of keyspace "
+                        + keyspace.getName() + " changed, applying it again");
+            }
+        }
+    }
+
+    /**
+     * Migrates these keyspaces of the configured cluster to the latest version, several keyspaces at a time.
+     *
+     * <p>The migrations are resolved once and every keyspace is migrated through its own session of a single shared
+     * driver cluster. A failing keyspace does not stop the migration of the others. Java migrations are shared between
+     * keyspaces and may be executed concurrently.</p>
+     *
+     * @param keyspaceNames The names of the keyspaces to migrate.
+     * @return The result of the migration of each keyspace, in the order of the given names.
+     * @see MigrationConfigs#getKeyspaceConcurrency()
+     */
+    public List<KeyspaceMigrationResult> migrate(List<String> keyspaceNames) {
+        VersionPrinter.printVersion(classLoader);
+
+        ExecutorService executorService = null;
+        try {
+            com.datastax.driver.core.Cluster cluster = connectCluster();
+
+            final MigrationResolver migrationResolver = createMigrationResolver();
+            migrationResolver.resolveMigrations();
+
+            executorService = Executors.newFixedThreadPool(Math.max(1, configs.getKeyspaceConcurrency()));
+            List<Future<KeyspaceMigrationResult>> futures = new ArrayList<>();
+            final com.datastax.driver.core.Cluster sharedCluster = cluster;
+            for (final String keyspaceName : keyspaceNames) {
+                futures.add(executorService.submit(new Callable<KeyspaceMigrationResult>() {
+                    @Override
+                    public KeyspaceMigrationResult call() {
+                        return migrate(sharedCluster, migrationResolver, keyspaceName);
+                    }
+                }));
+            }
+
+            List<KeyspaceMigrationResult> results = new ArrayList<>();
+            int failures = 0;
+            for (Future<KeyspaceMigrationResult> future : futures) {
+                KeyspaceMigrationResult result = future.get();
+                if (!result.isSuccess()) {
+                    failures++;
+                }
+                results.add(result);
+            }
+            LOG.info("Migrated " + (results.size() - failures) + " of " + results.size() + " keyspaces"
+                    + (failures > 0 ? " (" + failures + " failed)" : ""));
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CassandraMigrationException("Interrupted while migrating keyspaces", e);
+        } catch (ExecutionException e) {
+            throw new CassandraMigrationException("Unable to migrate keyspaces", e.getCause());
+        } finally {
+            if (null != executorService) {
+                executorService.shutdownNow();
+            }
+            disconnect();
+        }
+    }
+
+    /**
+     * Migrates this keyspace through its own session of this cluster.
+     *
+     * @return The result of the migration. Never throws.
+     */
+    private KeyspaceMigrationResult migrate(com.datastax.driver.core.Cluster cluster, MigrationResolver migrationResolver,
+                                            String keyspaceName) {
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+
+        Session session = null;
+        try {
+            if (!keyspaceExists(cluster.getMetadata(), keyspaceName))
+                throw new CassandraMigrationException("Keyspace: " + keyspaceName + " does not exist.");
+            session = cluster.connect(keyspaceName);
+
+            Keyspace tenant = new Keyspace();
+            tenant.setName(keyspaceName);
+            tenant.setCluster(keyspace.getCluster());
+            tenant.setConsistency(keyspace.getConsistency());
+
+            int migrationsApplied = migrate(session, tenant, migrationResolver);
+
+            stopWatch.stop();
+            return new KeyspaceMigrationResult(keyspaceName, migrationsApplied, stopWatch.getTotalTimeMillis(), null);
+        } catch (RuntimeException e) {
+            stopWatch.stop();
+            LOG.error("Migration of keyspace " + keyspaceName + " failed: " + e.getMessage());
+            return new KeyspaceMigrationResult(keyspaceName, 0, stopWatch.getTotalTimeMillis(), e);
+        } finally {
+            close(session);
+        }
+    }
+
     public MigrationInfoService info() {
         return execute(new Action<MigrationInfoService>() {
             public MigrationInfoService execute(Session session) {
                 MigrationResolver migrationResolver = createMigrationResolver();
-                SchemaVersionDAO schemaVersionDAO = new SchemaVersionDAO(session, keyspace, MigrationVersion.CURRENT.getTable());
+                SchemaVersionDAO schemaVersionDAO = new SchemaVersionDAO(session, keyspace, MigrationVersion.CURRENT.getTable(),
+                        configs.isHistoryCache());
                 MigrationInfoService migrationInfoService =
                         new MigrationInfoService(migrationResolver, schemaVersionDAO, configs.getTarget(), false, true);
                 migrationInfoService.refresh();
@@ -98,7 +391,8 @@ public class CassandraMigration {
     		@Override
     		public String execute(Session session) {
     			MigrationResolver migrationResolver = createMigrationResolver();
-    			SchemaVersionDAO schemaVersionDao = new SchemaVersionDAO(session, keyspace, MigrationVersion.CURRENT.getTable());
+    			SchemaVersionDAO schemaVersionDao = new SchemaVersionDAO(session, keyspace, MigrationVersion.CURRENT.getTable(),
+    					configs.isHistoryCache());
     			Validate validate = new Validate(migrationResolver, schemaVersionDao, configs.getTarget(), true, false);
     			return validate.run();
     		}
@@ -109,6 +403,46 @@ public class CassandraMigration {
     	}
     }
     
+    /**
+     * Writes a {@link MigrationManifest} for each configured classpath location below this directory, listing the Cql
+     * and Java migrations of the location found in this directory. The migrations of the location found in other
+     * classpath entries, such as dependencies, are left to their own manifests. Meant to run at build time, once the
+     * migrations were compiled and copied to the directory, so that the resolvers of the packaged artifact skip the
+     * scanning.
+     *
+     * @param outputDirectory The root of the classpath entry holding the migrations, such as {@code target/classes}.
+     * @return The manifest files.
+     */
+    public List<File> generateManifests(File outputDirectory) {
+        List<File> manifests = new ArrayList<>();
+        for (ScriptsLocation location : new ScriptsLocations(configs.getScriptsLocations()).getLocations()) {
+            if (!location.isClassPath()) {
+                LOG.warn("Skipping manifest of filesystem location " + location);
+                continue;
+            }
+
+            CqlMigrationResolver cqlMigrationResolver = new CqlMigrationResolver(classLoader, location, configs.getEncoding());
+            cqlMigrationResolver.setUseManifest(false);
+            JavaMigrationResolver javaMigrationResolver = new JavaMigrationResolver(classLoader, location, configs.getEncoding());
+            javaMigrationResolver.setUseManifest(false);
+
+            List<ResolvedMigration> migrations = new ArrayList<>();
+            List<ResolvedMigration> resolvedMigrations = new ArrayList<>(cqlMigrationResolver.resolveMigrations());
+            resolvedMigrations.addAll(javaMigrationResolver.resolveMigrations());
+            for (ResolvedMigration migration : resolvedMigrations) {
+                if (MigrationManifest.isIn(outputDirectory, location, migration)) {
+                    migrations.add(migration);
+                } else {
+                    LOG.debug("Skipping migration " + migration.getScript() + " of another classpath entry");
+                }
+            }
+            File manifest = MigrationManifest.write(outputDirectory, location, configs.getEncoding(), migrations);
+            LOG.info("Wrote manifest of " + migrations.size() + " migrations of location " + location + " to " + manifest);
+            manifests.add(manifest);
+        }
+        return manifests;
+    }
+
     public void baseline() {
         //TODO
         throw new NotImplementedException();
@@ -129,64 +463,119 @@ public class CassandraMigration {
     }
 
     <T> T execute(Action<T> action) {
-        T result;
-
         VersionPrinter.printVersion(classLoader);
 
-        com.datastax.driver.core.Cluster cluster = null;
-        Session session = null;
         try {
-            if (null == keyspace)
-                throw new IllegalArgumentException("Unable to establish Cassandra session. Keyspace is not configured.");
-
-            if (null == keyspace.getCluster())
-                throw new IllegalArgumentException("Unable to establish Cassandra session. Cluster is not configured.");
-
-            com.datastax.driver.core.Cluster.Builder builder = new com.datastax.driver.core.Cluster.Builder();
-            builder.addContactPoints(keyspace.getCluster().getContactpoints()).withPort(keyspace.getCluster().getPort());
-            if (null != keyspace.getCluster().getUsername() && !keyspace.getCluster().getUsername().trim().isEmpty()) {
-                if (null != keyspace.getCluster().getPassword() && !keyspace.getCluster().getPassword().trim().isEmpty()) {
-                    builder.withCredentials(keyspace.getCluster().getUsername(),
-                            keyspace.getCluster().getPassword());
-                } else {
-                    throw new IllegalArgumentException("Password must be provided with username.");
-                }
-            }
-            cluster = builder.build();
-
-            Metadata metadata = cluster.getMetadata();
-            LOG.info(getConnectionInfo(metadata));
-
-            session = cluster.newSession();
-            if (null == keyspace.getName() || keyspace.getName().trim().length() == 0)
-                throw new IllegalArgumentException("Keyspace not specified.");
-            List<KeyspaceMetadata> keyspaces = metadata.getKeyspaces();
-            boolean keyspaceExists = false;
-            for (KeyspaceMetadata keyspaceMetadata : keyspaces) {
-                if (keyspaceMetadata.getName().equalsIgnoreCase(keyspace.getName()))
-                    keyspaceExists = true;
+            return action.execute(connect());
+        } finally {
+            disconnect();
+        }
+    }
+
+    /**
+     * Provides a session logged into the configured keyspace, reusing the application managed or the kept open one
+     * when possible.
+     *
+     * @return The session.
+     */
+    private Session connect() {
+        if (null == keyspace)
+            throw new IllegalArgumentException("Unable to establish Cassandra session. Keyspace is not configured.");
+        if (null == keyspace.getName() || keyspace.getName().trim().length() == 0)
+            throw new IllegalArgumentException("Keyspace not specified.");
+
+        if (null != externalSession && keyspace.getName().equalsIgnoreCase(externalSession.getLoggedKeyspace()))
+            return externalSession;
+
+        if (null != ownedSession && !ownedSession.isClosed()) {
+            if (keyspace.getName().equalsIgnoreCase(ownedSession.getLoggedKeyspace()))
+                return ownedSession;
+            close(ownedSession);
+        }
+
+        com.datastax.driver.core.Cluster cluster = connectCluster();
+        if (!keyspaceExists(cluster.getMetadata(), keyspace.getName()))
+            throw new CassandraMigrationException("Keyspace: " + keyspace.getName() + " does not exist.");
+        ownedSession = cluster.connect(keyspace.getName());
+        return ownedSession;
+    }
+
+    /**
+     * Provides the application managed cluster, the kept open one or a newly built one.
+     *
+     * @return The cluster.
+     */
+    private com.datastax.driver.core.Cluster connectCluster() {
+        if (null != externalCluster)
+            return externalCluster;
+        if (null != externalSession)
+            return externalSession.getCluster();
+
+        if (null == ownedCluster || ownedCluster.isClosed()) {
+            ownedCluster = createCluster();
+            LOG.info(getConnectionInfo(ownedCluster.getMetadata()));
+        }
+        return ownedCluster;
+    }
+
+    /**
+     * Releases the cluster and session opened by this class, unless they are to be kept open.
+     */
+    private void disconnect() {
+        if (!keepConnectionOpen)
+            close();
+    }
+
+    /**
+     * Builds a driver cluster from the configured cluster settings.
+     *
+     * @return The cluster, not yet initialized.
+     */
+    private com.datastax.driver.core.Cluster createCluster() {
+        if (null == keyspace || null == keyspace.getCluster())
+            throw new IllegalArgumentException("Unable to establish Cassandra session. Cluster is not configured.");
+
+        com.datastax.driver.core.Cluster.Builder builder = new com.datastax.driver.core.Cluster.Builder();
+        builder.addContactPoints(keyspace.getCluster().getContactpoints()).withPort(keyspace.getCluster().getPort());
+        if (null != keyspace.getCluster().getUsername() && !keyspace.getCluster().getUsername().trim().isEmpty()) {
+            if (null != keyspace.getCluster().getPassword() && !keyspace.getCluster().getPassword().trim().isEmpty()) {
+                builder.withCredentials(keyspace.getCluster().getUsername(),
+                        keyspace.getCluster().getPassword());
+            } else {
+                throw new IllegalArgumentException("Password must be provided with username.");
             }
-            if (keyspaceExists)
-                session.execute("USE " + keyspace.getName());
-            else
-                throw new CassandraMigrationException("Keyspace: " + keyspace.getName() + " does not exist.");
+        }
+        if (keyspace.getCluster().getSpeculativeDelay() > 0) {
+            builder.withSpeculativeExecutionPolicy(new ConstantSpeculativeExecutionPolicy(
+                    keyspace.getCluster().getSpeculativeDelay(), keyspace.getCluster().getSpeculativeExecutions()));
+        }
+        return builder.build();
+    }
 
-            result = action.execute(session);
-        } finally {
-            if (null != session && !session.isClosed())
-                try {
-                    session.close();
-                } catch(Exception e) {
-                    LOG.warn("Error closing Cassandra session");
-                }
-            if (null != cluster && !cluster.isClosed())
-                try {
-                    cluster.close();
-                } catch(Exception e) {
-                    LOG.warn("Error closing Cassandra cluster");
-                }
+    private static boolean keyspaceExists(Metadata metadata, String keyspaceName) {
+        for (KeyspaceMetadata keyspaceMetadata : metadata.getKeyspaces()) {
+            if (keyspaceMetadata.getName().equalsIgnoreCase(keyspaceName))
+                return true;
         }
-        return result;
+        return false;
+    }
+
+    private static void close(Session session) {
+        if (null != session && !session.isClosed())
+            try {
+                session.close();
+            } catch(Exception e) {
+                LOG.warn("Error closing Cassandra session");
+            }
+    }
+
+    private static void close(com.datastax.driver.core.Cluster cluster) {
+        if (null != cluster && !cluster.isClosed())
+            try {
+                cluster.close();
+            } catch(Exception e) {
+                LOG.warn("Error closing Cassandra cluster");
+            }
     }
 
     interface Action<T> {
@@ -6,6 +6,7 @@ import com.contrastsecurity.cassandra.migration.logging.LogFactory;
 import com.contrastsecurity.cassandra.migration.logging.console.ConsoleLog;
 import com.contrastsecurity.cassandra.migration.logging.console.ConsoleLogCreator;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -21,6 +22,16 @@ public class CommandLine {
 	 */
 	public static final String VALIDATE = "validate";
 
+	/**
+	 * command to migrate, then apply new migrations as they appear
+	 */
+	public static final String WATCH = "watch";
+
+	/**
+	 * command to generate the migration manifests
+	 */
+	public static final String MANIFEST = "manifest";
+
 	/**
 	 * logging support
 	 */
@@ -43,12 +54,23 @@ public class CommandLine {
 		String operation = operations.get(0);
 
 		CassandraMigration cm = new CassandraMigration();
+		if (MANIFEST.equalsIgnoreCase(operation)) {
+			if (operations.size() < 2) {
+				printUsage();
+				return;
+			}
+			cm.generateManifests(new File(operations.get(1)));
+			return;
+		}
+
 		Keyspace ks = new Keyspace();
 		cm.setKeyspace(ks);
 		if (MIGRATE.equalsIgnoreCase(operation)) {
 			cm.migrate();
 		} else if (VALIDATE.equalsIgnoreCase(operation)) {
 			cm.validate();
+		} else if (WATCH.equalsIgnoreCase(operation)) {
+			cm.watch();
 		}
 	}
 
@@ -92,6 +114,8 @@ public class CommandLine {
 		LOG.info("========");
 		LOG.info("migrate  : Migrates the database");
 		LOG.info("validate : Validates the applied migrations against the available ones");
+		LOG.info("watch    : Migrates the database, then applies the scripts added to the filesystem locations until interrupted");
+		LOG.info("manifest <directory> : Writes the manifest of the migrations of the classpath locations to the directory");
 		LOG.info("");
 		LOG.info("Add -X to print debug output");
 		LOG.info("Add -q to suppress all output, except for errors and warnings");
@@ -0,0 +1,59 @@
+package com.contrastsecurity.cassandra.migration;
+
+/**
+ * The outcome of the migration of one keyspace when migrating several keyspaces at once.
+ */
+public class KeyspaceMigrationResult {
+    /**
+     * The name of the migrated keyspace.
+     */
+    private final String keyspaceName;
+
+    /**
+     * The number of successfully applied migrations.
+     */
+    private final int migrationsApplied;
+
+    /**
+     * The time taken to migrate the keyspace (in ms).
+     */
+    private final long executionTime;
+
+    /**
+     * The failure of the migration, {@code null} if it succeeded.
+     */
+    private final Exception failure;
+
+    public KeyspaceMigrationResult(String keyspaceName, int migrationsApplied, long executionTime, Exception failure) {
+        this.keyspaceName = keyspaceName;
+        this.migrationsApplied = migrationsApplied;
+        this.executionTime = executionTime;
+        this.failure = failure;
+    }
+
+    public String getKeyspaceName() {
+        return keyspaceName;
+    }
+
+    public int getMigrationsApplied() {
+        return migrationsApplied;
+    }
+
+    public long getExecutionTime() {
+        return executionTime;
+    }
+
+    public Exception getFailure() {
+        return failure;
+    }
+
+    public boolean isSuccess() {
+        return failure == null;
+    }
+
+    @Override
+    public String toString() {
+        return keyspaceName + ": " + (isSuccess() ? migrationsApplied + " migration(s) applied" : "failed (" + failure.getMessage() + ")")
+                + " in " + executionTime + " ms";
+    }
+}
@@ -7,10 +7,21 @@ import com.contrastsecurity.cassandra.migration.logging.Log;
 import com.contrastsecurity.cassandra.migration.logging.LogFactory;
 import com.contrastsecurity.cassandra.migration.resolver.MigrationExecutor;
 import com.contrastsecurity.cassandra.migration.resolver.MigrationResolver;
+import com.contrastsecurity.cassandra.migration.utils.Pair;
 import com.contrastsecurity.cassandra.migration.utils.StopWatch;
 import com.contrastsecurity.cassandra.migration.utils.TimeFormat;
 import com.datastax.driver.core.Session;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 public class Migrate {
     private static final Log LOG = LogFactory.getLog(Migrate.class);
 
@@ -21,82 +32,375 @@ public class Migrate {
     private final String user;
     private final boolean allowOutOfOrder;
 
+    /**
+     * The maximum number of independent migrations applied concurrently.
+     */
+    private final int parallelism;
+
     public Migrate(MigrationResolver migrationResolver, MigrationVersion target, SchemaVersionDAO schemaVersionDAO,
                    Session session, String user, boolean allowOutOfOrder) {
+        this(migrationResolver, target, schemaVersionDAO, session, user, allowOutOfOrder, 1);
+    }
+
+    public Migrate(MigrationResolver migrationResolver, MigrationVersion target, SchemaVersionDAO schemaVersionDAO,
+                   Session session, String user, boolean allowOutOfOrder, int parallelism) {
         this.migrationResolver = migrationResolver;
         this.schemaVersionDAO = schemaVersionDAO;
         this.session = session;
         this.target = target;
         this.user = user;
         this.allowOutOfOrder = allowOutOfOrder;
+        this.parallelism = parallelism;
     }
 
     public int run() {
+        return run(null);
+    }
+
+    /**
+     * Migrates the keyspace while holding this lease. The lease is checked before applying each migration: once lost,
+     * no further migration is applied.
+     *
+     * @param lease The migration lease held by this instance, {@code null} if none.
+     * @return The number of successfully applied migrations.
+     * @throws CassandraMigrationException when the lease is lost while migrating.
+     */
+    public int run(MigrationLease lease) {
         StopWatch stopWatch = new StopWatch();
         stopWatch.start();
 
-        int migrationSuccessCount = 0;
-        while (true) {
-            final boolean firstRun = migrationSuccessCount == 0;
+        MigrationDigest recordedDigest = schemaVersionDAO.findMigrationDigest();
+        if (matches(recordedDigest)) {
+            LOG.info("Current version of keyspace " + schemaVersionDAO.getKeyspace().getName() + ": " + recordedDigest.getWatermark());
+            stopWatch.stop();
+            logSummary(0, stopWatch.getTotalTimeMillis());
+            return 0;
+        }
 
-            MigrationInfoService infoService = new MigrationInfoService(migrationResolver, schemaVersionDAO, target, allowOutOfOrder, true);
-            infoService.refresh();
+        MigrationPlanner planner = new MigrationPlanner(migrationResolver, schemaVersionDAO, target, allowOutOfOrder);
+        MigrationInfoService infoService = planner.refresh();
+        LOG.info("Current version of keyspace " + schemaVersionDAO.getKeyspace().getName() + ": " + planner.getCurrentVersion());
+        checkState(infoService, planner.getCurrentVersion());
 
-            MigrationVersion currentSchemaVersion = MigrationVersion.EMPTY;
-            if (infoService.current() != null) {
-                currentSchemaVersion = infoService.current().getVersion();
+        int migrationSuccessCount = 0;
+        if (parallelism > 1) {
+            while (true) {
+                // The plan is drained by every batch, including one stopped by a concurrent run
+                if (planner.isStale()) {
+                    infoService = planner.refresh();
+                    checkState(infoService, planner.getCurrentVersion());
+                }
+                List<MigrationInfo> pendingMigrations = remaining(planner);
+                if (pendingMigrations.isEmpty()) {
+                    break;
+                }
+                checkLease(lease, pendingMigrations.get(0));
+                migrationSuccessCount += applyInParallel(planner, pendingMigrations, lease);
             }
-            if (firstRun) {
-                LOG.info("Current version of keyspace " + schemaVersionDAO.getKeyspace().getName() + ": " + currentSchemaVersion);
+        } else {
+            MigrationInfo migration;
+            while ((migration = planner.next()) != null) {
+                if (planner.isStale()) {
+                    infoService = planner.refresh();
+                    checkState(infoService, planner.getCurrentVersion());
+                    continue;
+                }
+                checkLease(lease, migration);
+                boolean isOutOfOrder = migration.getVersion().compareTo(planner.getCurrentVersion()) < 0;
+                applyMigration(planner, migration, isOutOfOrder);
+                migrationSuccessCount++;
             }
+        }
 
-            MigrationInfo[] future = infoService.future();
-            if (future.length > 0) {
-                MigrationInfo[] resolved = infoService.resolved();
-                if (resolved.length == 0) {
-                    LOG.warn("Keyspace " + schemaVersionDAO.getKeyspace().getName() + " has version " + currentSchemaVersion
-                            + ", but no migration could be resolved in the configured locations !");
-                } else {
-                    LOG.warn("Keyspace " + schemaVersionDAO.getKeyspace().getName() + " has a version (" + currentSchemaVersion
-                            + ") that is newer than the latest available migration ("
-                            + resolved[resolved.length - 1].getVersion() + ") !");
-                }
+        recordDigest(planner, recordedDigest);
+
+        stopWatch.stop();
+
+        logSummary(migrationSuccessCount, stopWatch.getTotalTimeMillis());
+
+        return migrationSuccessCount;
+    }
+
+    /**
+     * Checks whether the keyspace is up to date, without applying anything.
+     *
+     * @return {@code true} if no migration is pending.
+     */
+    public boolean isUpToDate() {
+        if (matches(schemaVersionDAO.findMigrationDigest())) {
+            return true;
+        }
+        MigrationPlanner planner = new MigrationPlanner(migrationResolver, schemaVersionDAO, target, allowOutOfOrder);
+        planner.refresh();
+        return planner.next() == null;
+    }
+
+    /**
+     * Compares the digest recorded by the last migration run with the digest of the resolved migrations. When they
+     * differ, the buckets where the applied and the resolved migrations diverge are logged.
+     *
+     * @param recordedDigest The recorded digest, {@code null} if none.
+     * @return {@code true} if exactly the resolved migrations were successfully applied.
+     */
+    private boolean matches(MigrationDigest recordedDigest) {
+        if (recordedDigest == null || target == MigrationVersion.CURRENT) {
+            return false;
+        }
+
+        Collection<ResolvedMigration> resolvedMigrations = migrationResolver.resolveMigrations();
+        MigrationDigest resolvedDigest = MigrationDigest.ofResolved(resolvedMigrations, target);
+        if (resolvedDigest.equals(recordedDigest)) {
+            return true;
+        }
+
+        List<Integer> buckets = resolvedDigest.divergingBuckets(recordedDigest);
+        List<MigrationVersion> versions = new ArrayList<>();
+        for (ResolvedMigration resolvedMigration : resolvedMigrations) {
+            if (buckets.contains(MigrationDigest.bucketOf(resolvedMigration.getVersion()))
+                    && resolvedMigration.getVersion().compareTo(target) <= 0) {
+                versions.add(resolvedMigration.getVersion());
             }
+        }
+        LOG.debug("Resolved migrations (up to " + resolvedDigest.getWatermark() + ") of keyspace "
+                + schemaVersionDAO.getKeyspace().getName() + " differ from the applied ones (up to "
+                + recordedDigest.getWatermark() + ") in buckets " + buckets + ", holding resolved versions " + versions);
+        return false;
+    }
 
-            MigrationInfo[] failed = infoService.failed();
-            if (failed.length > 0) {
-                if ((failed.length == 1)
-                        && (failed[0].getState() == MigrationState.FUTURE_FAILED)) {
-                    LOG.warn("Keyspace " + schemaVersionDAO.getKeyspace().getName() + " contains a failed future migration to version " + failed[0].getVersion() + " !");
-                } else {
-                    throw new CassandraMigrationException("Keyspace " + schemaVersionDAO.getKeyspace().getName() + " contains a failed migration to version " + failed[0].getVersion() + " !");
-                }
+    /**
+     * Records the digest of the applied migrations for the next runs, unless unchanged. Migrations recorded by
+     * concurrent runs may be missing from the planner: the digest then only causes a full check at the next run.
+     *
+     * @param planner        The planner knowing the applied migrations.
+     * @param recordedDigest The digest recorded before this run, {@code null} if none.
+     */
+    private void recordDigest(MigrationPlanner planner, MigrationDigest recordedDigest) {
+        try {
+            MigrationDigest appliedDigest = MigrationDigest.ofApplied(planner.getAppliedMigrations());
+            if (!appliedDigest.equals(recordedDigest)) {
+                schemaVersionDAO.saveMigrationDigest(appliedDigest);
             }
+        } catch (RuntimeException e) {
+            // Only the next runs are affected: they fall back to reading the applied migrations
+            LOG.warn("Unable to record the digest of the applied migrations: " + e.getMessage());
+        }
+    }
 
-            MigrationInfo[] pendingMigrations = infoService.pending();
+    /**
+     * Checks the keyspace for future and failed migrations before migrating it further.
+     *
+     * @param infoService          The migration info to check.
+     * @param currentSchemaVersion The current version of the keyspace.
+     * @throws CassandraMigrationException when the keyspace contains a failed migration.
+     */
+    private void checkState(MigrationInfoService infoService, MigrationVersion currentSchemaVersion) {
+        MigrationInfo[] future = infoService.future();
+        if (future.length > 0) {
+            MigrationInfo[] resolved = infoService.resolved();
+            if (resolved.length == 0) {
+                LOG.warn("Keyspace " + schemaVersionDAO.getKeyspace().getName() + " has version " + currentSchemaVersion
+                        + ", but no migration could be resolved in the configured locations !");
+            } else {
+                LOG.warn("Keyspace " + schemaVersionDAO.getKeyspace().getName() + " has a version (" + currentSchemaVersion
+                        + ") that is newer than the latest available migration ("
+                        + resolved[resolved.length - 1].getVersion() + ") !");
+            }
+        }
 
-            if (pendingMigrations.length == 0) {
-                break;
+        MigrationInfo[] failed = infoService.failed();
+        if (failed.length > 0) {
+            if ((failed.length == 1)
+                    && (failed[0].getState() == MigrationState.FUTURE_FAILED)) {
+                LOG.warn("Keyspace " + schemaVersionDAO.getKeyspace().getName() + " contains a failed future migration to version " + failed[0].getVersion() + " !");
+            } else {
+                throw new CassandraMigrationException("Keyspace " + schemaVersionDAO.getKeyspace().getName() + " contains a failed migration to version " + failed[0].getVersion() + " !");
             }
+        }
+    }
 
-            boolean isOutOfOrder = pendingMigrations[0].getVersion().compareTo(currentSchemaVersion) < 0;
-            MigrationVersion mv = applyMigration(pendingMigrations[0], isOutOfOrder);
-            if(mv == null) {
-                //no more migrations
-                break;
+    private MigrationVersion applyMigration(MigrationPlanner planner, final MigrationInfo migration, boolean isOutOfOrder) {
+        MigrationResult result = executeMigration(migration, isOutOfOrder);
+        planner.recordApplied(result.appliedMigration);
+        if (result.failure != null) {
+            throw result.failure;
+        }
+        return migration.getVersion();
+    }
+
+    /**
+     * Applies these pending migrations, running independent ones concurrently. The migrations are recorded in the
+     * metadata table in version order, so a migration completing before a lower version is only recorded once the
+     * lower version completed as well.
+     *
+     * <p>A failure, a lost lease or a concurrent migration run revealed by a recorded migration stops the scheduling
+     * of further migrations. The running migrations are awaited and every completed migration is
+     * recorded before the failure is rethrown. If waiting for them fails, they are cancelled and reported as possibly
+     * applied without being recorded.</p>
+     *
+     * @param planner           The planner to record the applied migrations with.
+     * @param pendingMigrations The migrations to apply, sorted by version.
+     * @param lease             The migration lease held by this instance, {@code null} if none.
+     * @return The number of successfully applied migrations.
+     */
+    private int applyInParallel(final MigrationPlanner planner, final List<MigrationInfo> pendingMigrations,
+                                MigrationLease lease) {
+        MigrationGraph graph = new MigrationGraph(pendingMigrations, planner.getKnownVersions());
+        MigrationResult[] results = new MigrationResult[pendingMigrations.size()];
+        boolean[] submitted = new boolean[pendingMigrations.size()];
+        int nextToRecord = 0;
+        int migrationSuccessCount = 0;
+        CassandraMigrationException failure = null;
+
+        ExecutorService executorService = Executors.newFixedThreadPool(parallelism);
+        try {
+            CompletionService<Pair<Integer, MigrationResult>> completionService =
+                    new ExecutorCompletionService<>(executorService);
+            int running = 0;
+            for (int index : graph.roots()) {
+                submit(completionService, planner, pendingMigrations, index);
+                submitted[index] = true;
+                running++;
             }
 
-            migrationSuccessCount++;
+            while (running > 0) {
+                Pair<Integer, MigrationResult> completed;
+                try {
+                    completed = take(completionService);
+                } catch (RuntimeException e) {
+                    executorService.shutdownNow();
+                    List<MigrationVersion> abandoned = new ArrayList<>();
+                    for (int i = 0; i < results.length; i++) {
+                        if (submitted[i] && results[i] == null) {
+                            abandoned.add(pendingMigrations.get(i).getVersion());
+                        }
+                    }
+                    LOG.error("Cancelled the migrations of keyspace " + schemaVersionDAO.getKeyspace().getName()
+                            + " to versions " + abandoned + ": they may have been applied without being recorded!");
+                    recordCompleted(planner, results, nextToRecord);
+                    throw e;
+                }
+                running--;
+                int index = completed.getLeft();
+                results[index] = completed.getRight();
+                if (results[index].failure != null && failure == null) {
+                    failure = results[index].failure;
+                }
+
+                while (nextToRecord < results.length && results[nextToRecord] != null) {
+                    migrationSuccessCount += record(planner, results[nextToRecord]);
+                    nextToRecord++;
+                }
+
+                if (failure == null) {
+                    List<Integer> ready = graph.complete(index);
+                    if (!ready.isEmpty() && lease != null && !lease.isHeld()) {
+                        failure = lostLease(pendingMigrations.get(ready.get(0)));
+                    }
+                    // Checked after recording, which reveals a concurrent run
+                    if (failure == null && !ready.isEmpty() && !planner.isStale()) {
+                        for (int readyIndex : ready) {
+                            submit(completionService, planner, pendingMigrations, readyIndex);
+                            submitted[readyIndex] = true;
+                            running++;
+                        }
+                    }
+                }
+            }
+        } finally {
+            executorService.shutdown();
         }
 
-        stopWatch.stop();
+        // Migrations that completed after a failure of one of their predecessors
+        migrationSuccessCount += recordCompleted(planner, results, nextToRecord);
 
-        logSummary(migrationSuccessCount, stopWatch.getTotalTimeMillis());
+        if (failure != null) {
+            throw failure;
+        }
+        return migrationSuccessCount;
+    }
 
+    /**
+     * Records the completed migrations from this index on, skipping the ones that did not complete.
+     *
+     * @return The number of successfully applied migrations recorded.
+     */
+    private int recordCompleted(MigrationPlanner planner, MigrationResult[] results, int fromIndex) {
+        int migrationSuccessCount = 0;
+        for (int i = fromIndex; i < results.length; i++) {
+            if (results[i] != null) {
+                migrationSuccessCount += record(planner, results[i]);
+            }
+        }
         return migrationSuccessCount;
     }
 
-    private MigrationVersion applyMigration(final MigrationInfo migration, boolean isOutOfOrder) {
+    /**
+     * Checks that this instance still holds its migration lease before applying this migration.
+     *
+     * @param lease     The migration lease, {@code null} if none.
+     * @param migration The migration about to be applied.
+     * @throws CassandraMigrationException when the lease was lost.
+     */
+    private void checkLease(MigrationLease lease, MigrationInfo migration) {
+        if (lease != null && !lease.isHeld()) {
+            throw lostLease(migration);
+        }
+    }
+
+    private CassandraMigrationException lostLease(MigrationInfo migration) {
+        return new CassandraMigrationException("Migration lease of keyspace " + schemaVersionDAO.getKeyspace().getName()
+                + " was lost. Aborting before migrating to version " + migration.getVersion() + " !");
+    }
+
+    private void submit(CompletionService<Pair<Integer, MigrationResult>> completionService, MigrationPlanner planner,
+                        List<MigrationInfo> pendingMigrations, final int index) {
+        final MigrationInfo migration = pendingMigrations.get(index);
+        final boolean isOutOfOrder = migration.getVersion().compareTo(planner.getCurrentVersion()) < 0;
+        completionService.submit(new Callable<Pair<Integer, MigrationResult>>() {
+            @Override
+            public Pair<Integer, MigrationResult> call() {
+                return Pair.of(index, executeMigration(migration, isOutOfOrder));
+            }
+        });
+    }
+
+    private Pair<Integer, MigrationResult> take(CompletionService<Pair<Integer, MigrationResult>> completionService) {
+        try {
+            return completionService.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CassandraMigrationException("Interrupted while waiting for migrations to complete", e);
+        } catch (ExecutionException e) {
+            throw new CassandraMigrationException("Unable to apply migration", e.getCause());
+        }
+    }
+
+    private int record(MigrationPlanner planner, MigrationResult result) {
+        planner.recordApplied(result.appliedMigration);
+        return result.failure == null ? 1 : 0;
+    }
+
+    /**
+     * @param planner The planner to take the migrations from.
+     * @return The migrations left in the plan of this planner.
+     */
+    private static List<MigrationInfo> remaining(MigrationPlanner planner) {
+        List<MigrationInfo> pendingMigrations = new ArrayList<>();
+        MigrationInfo migration;
+        while ((migration = planner.next()) != null) {
+            pendingMigrations.add(migration);
+        }
+        return pendingMigrations;
+    }
+
+    /**
+     * Executes this migration without recording it.
+     *
+     * @param migration    The migration to execute.
+     * @param isOutOfOrder Whether the migration is applied out of order.
+     * @return The migration to record in the metadata table, along with its failure if it failed.
+     */
+    private MigrationResult executeMigration(final MigrationInfo migration, boolean isOutOfOrder) {
         MigrationVersion version = migration.getVersion();
         LOG.info("Migrating keyspace " + schemaVersionDAO.getKeyspace().getName() + " to version " + version + " - " + migration.getDescription() +
                 (isOutOfOrder ? " (out of order)" : ""));
@@ -123,8 +427,7 @@ public class Migrate {
             int executionTime = (int) stopWatch.getTotalTimeMillis();
             AppliedMigration appliedMigration = new AppliedMigration(version, migration.getDescription(),
                     migration.getType(), migration.getScript(), migration.getChecksum(), user, executionTime, false);
-            schemaVersionDAO.addAppliedMigration(appliedMigration);
-            throw e;
+            return new MigrationResult(appliedMigration, e);
         }
 
         stopWatch.stop();
@@ -132,9 +435,20 @@ public class Migrate {
 
         AppliedMigration appliedMigration = new AppliedMigration(version, migration.getDescription(),
                 migration.getType(), migration.getScript(), migration.getChecksum(), user, executionTime, true);
-        schemaVersionDAO.addAppliedMigration(appliedMigration);
+        return new MigrationResult(appliedMigration, null);
+    }
 
-        return version;
+    /**
+     * The outcome of the execution of a migration.
+     */
+    private static class MigrationResult {
+        private final AppliedMigration appliedMigration;
+        private final CassandraMigrationException failure;
+
+        MigrationResult(AppliedMigration appliedMigration, CassandraMigrationException failure) {
+            this.appliedMigration = appliedMigration;
+            this.failure = failure;
+        }
     }
 
     /**
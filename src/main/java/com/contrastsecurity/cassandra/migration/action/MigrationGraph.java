@@ -0,0 +1,120 @@
+package com.contrastsecurity.cassandra.migration.action;
+
+import com.contrastsecurity.cassandra.migration.CassandraMigrationException;
+import com.contrastsecurity.cassandra.migration.info.MigrationInfo;
+import com.contrastsecurity.cassandra.migration.info.MigrationVersion;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Dependency graph between pending migrations, tracking which of them are ready to be applied.
+ *
+ * <p>Migrations are identified by their index in the list of pending migrations. A migration without declared
+ * dependencies depends on every pending migration before it: it only gets an edge to the previous such migration and
+ * to the migrations declaring their dependencies since then, the others being reached through them. Dependencies on
+ * versions that are known but not pending are satisfied.</p>
+ */
+public class MigrationGraph {
+    /**
+     * The number of unfinished dependencies of each migration.
+     */
+    private final int[] remainingDependencies;
+
+    /**
+     * The migrations depending on each migration.
+     */
+    private final List<List<Integer>> dependents;
+
+    /**
+     * Creates the graph of these pending migrations.
+     *
+     * @param pendingMigrations The pending migrations, sorted by version.
+     * @param knownVersions     The versions of the resolved and of the applied migrations.
+     * @throws CassandraMigrationException when a migration depends on a version that is not lower than its own, or
+     *                                     that is not known.
+     */
+    public MigrationGraph(List<MigrationInfo> pendingMigrations, Set<MigrationVersion> knownVersions) {
+        int size = pendingMigrations.size();
+        remainingDependencies = new int[size];
+        dependents = new ArrayList<>(size);
+
+        Map<MigrationVersion, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            indexes.put(pendingMigrations.get(i).getVersion(), i);
+            dependents.add(new ArrayList<Integer>());
+        }
+
+        int barrier = -1;
+        List<Integer> sinceBarrier = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            MigrationInfo migration = pendingMigrations.get(i);
+            Collection<MigrationVersion> dependencies = migration.getResolvedMigration().getDependencies();
+            if (dependencies == null) {
+                if (barrier >= 0) {
+                    addDependency(i, barrier);
+                }
+                for (int j : sinceBarrier) {
+                    addDependency(i, j);
+                }
+                barrier = i;
+                sinceBarrier.clear();
+                continue;
+            }
+
+            for (MigrationVersion dependency : dependencies) {
+                if (dependency.compareTo(migration.getVersion()) >= 0) {
+                    throw new CassandraMigrationException("Migration " + migration.getVersion()
+                            + " can only depend on lower versions, not on " + dependency);
+                }
+                if (!knownVersions.contains(dependency)) {
+                    throw new CassandraMigrationException("Migration " + migration.getVersion()
+                            + " depends on version " + dependency + ", which is neither resolved nor applied");
+                }
+                Integer j = indexes.get(dependency);
+                if (j != null) {
+                    addDependency(i, j);
+                }
+            }
+            sinceBarrier.add(i);
+        }
+    }
+
+    private void addDependency(int migration, int dependency) {
+        remainingDependencies[migration]++;
+        dependents.get(dependency).add(migration);
+    }
+
+    /**
+     * @return The migrations without any dependency among the pending migrations, in version order.
+     */
+    public List<Integer> roots() {
+        List<Integer> roots = new ArrayList<>();
+        for (int i = 0; i < remainingDependencies.length; i++) {
+            if (remainingDependencies[i] == 0) {
+                roots.add(i);
+            }
+        }
+        return roots;
+    }
+
+    /**
+     * Marks this migration as applied.
+     *
+     * @param migration The index of the applied migration.
+     * @return The migrations that became ready to be applied, in version order.
+     */
+    public List<Integer> complete(int migration) {
+        List<Integer> ready = new ArrayList<>();
+        for (int dependent : dependents.get(migration)) {
+            if (--remainingDependencies[dependent] == 0) {
+                ready.add(dependent);
+            }
+        }
+        return ready;
+    }
+}
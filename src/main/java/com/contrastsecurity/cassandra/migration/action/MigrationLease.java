@@ -0,0 +1,190 @@
+package com.contrastsecurity.cassandra.migration.action;
+
+import com.contrastsecurity.cassandra.migration.CassandraMigrationException;
+import com.contrastsecurity.cassandra.migration.dao.LeaseDAO;
+import com.contrastsecurity.cassandra.migration.logging.Log;
+import com.contrastsecurity.cassandra.migration.logging.LogFactory;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lease electing the single instance allowed to migrate a keyspace.
+ *
+ * <p>The lease expires after its time to live unless its owner renews it. While held, it is renewed in the
+ * background every third of its time to live, so that an owner that dies only blocks the others until the lease
+ * expires. An owner whose renewals keep failing considers the lease lost shortly before it expires.</p>
+ */
+public class MigrationLease implements Closeable {
+    private static final Log LOG = LogFactory.getLog(MigrationLease.class);
+
+    private static final long INITIAL_BACKOFF_MILLIS = 200;
+    private static final long MAX_BACKOFF_MILLIS = 5000;
+
+    private final LeaseDAO leaseDAO;
+    private final int ttlSeconds;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final String owner;
+    private final Random random = new Random();
+
+    private ScheduledExecutorService heartbeat;
+    private volatile boolean held;
+
+    /**
+     * The {@link System#nanoTime()} after which the lease may have expired, as the last successful renewal (or
+     * acquisition) started before it.
+     */
+    private volatile long heldUntilNanos;
+
+    /**
+     * Creates a new lease.
+     *
+     * @param leaseDAO   The DAO storing the lease.
+     * @param ttlSeconds The time to live of the lease.
+     */
+    public MigrationLease(LeaseDAO leaseDAO, int ttlSeconds) {
+        this(leaseDAO, ttlSeconds, INITIAL_BACKOFF_MILLIS, MAX_BACKOFF_MILLIS);
+    }
+
+    /* private -> for testing */
+    MigrationLease(LeaseDAO leaseDAO, int ttlSeconds, long initialBackoffMillis, long maxBackoffMillis) {
+        this.leaseDAO = leaseDAO;
+        this.ttlSeconds = Math.max(1, ttlSeconds);
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.owner = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID();
+    }
+
+    /**
+     * @return The id identifying this instance as owner of the lease.
+     */
+    public String getOwner() {
+        return owner;
+    }
+
+    /**
+     * @return {@code true} while this instance holds the lease, as far as the last renewal knows and until shortly
+     * before the lease expires if it could not be renewed since.
+     */
+    public boolean isHeld() {
+        return held && System.nanoTime() - heldUntilNanos < 0;
+    }
+
+    /**
+     * Extends the time the lease is held for, from a write of the lease started at this time.
+     *
+     * @param startNanos The {@link System#nanoTime()} when the write was sent.
+     */
+    private void extend(long startNanos) {
+        // A sixth of the TTL is kept as a margin for the clock drift between this instance and the replicas
+        long ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        heldUntilNanos = startNanos + ttlNanos - ttlNanos / 6;
+    }
+
+    /**
+     * Takes the lease if nobody holds it, and starts renewing it.
+     *
+     * @return {@code true} if this instance now holds the lease.
+     */
+    public boolean tryAcquire() {
+        long startNanos = System.nanoTime();
+        if (!leaseDAO.tryAcquire(owner, ttlSeconds)) {
+            return false;
+        }
+        extend(startNanos);
+        held = true;
+        startHeartbeat();
+        return true;
+    }
+
+    /**
+     * Waits until the lease is released or expires, polling its single row with an exponential backoff.
+     *
+     * @throws CassandraMigrationException when interrupted while waiting.
+     */
+    public void awaitRelease() {
+        long backoff = initialBackoffMillis;
+        String currentOwner;
+        while ((currentOwner = leaseDAO.findOwner()) != null) {
+            LOG.info("Keyspace " + leaseDAO.getKeyspace().getName() + " is being migrated by " + currentOwner
+                    + ". Waiting for the migration lease.");
+            try {
+                // Jitter keeps a fleet of waiters from polling in lockstep
+                Thread.sleep(backoff / 2 + (long) (random.nextDouble() * (backoff / 2 + 1)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CassandraMigrationException("Interrupted while waiting for the migration lease", e);
+            }
+            backoff = Math.min(backoff * 2, maxBackoffMillis);
+        }
+    }
+
+    private void startHeartbeat() {
+        heartbeat = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "cassandra-migration-lease");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long periodMillis = Math.max(1, TimeUnit.SECONDS.toMillis(ttlSeconds) / 3);
+        heartbeat.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                renew();
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /* private -> for testing */
+    void renew() {
+        if (!held) {
+            return;
+        }
+        try {
+            long startNanos = System.nanoTime();
+            if (leaseDAO.renew(owner, ttlSeconds)) {
+                extend(startNanos);
+            } else {
+                held = false;
+                LOG.error("Migration lease of keyspace " + leaseDAO.getKeyspace().getName()
+                        + " was lost. Another instance may start migrating concurrently,"
+                        + " no further migration is applied.");
+            }
+        } catch (RuntimeException e) {
+            // The lease remains valid until its TTL expires, the next renewal may still succeed
+            LOG.warn("Unable to renew migration lease: " + e.getMessage()
+                    + (isHeld() ? "" : ". The lease is about to expire, no further migration is applied."));
+        }
+    }
+
+    /**
+     * Stops renewing the lease and releases it, if held.
+     */
+    @Override
+    public void close() {
+        if (heartbeat == null) {
+            return;
+        }
+        heartbeat.shutdownNow();
+        heartbeat = null;
+        if (held) {
+            held = false;
+            try {
+                leaseDAO.release(owner);
+            } catch (RuntimeException e) {
+                // The lease expires with its TTL anyway
+                LOG.warn("Unable to release migration lease of keyspace " + leaseDAO.getKeyspace().getName()
+                        + ", it expires in at most " + ttlSeconds + "s: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.contrastsecurity.cassandra.migration.action;
+
+import com.contrastsecurity.cassandra.migration.dao.SchemaVersionDAO;
+import com.contrastsecurity.cassandra.migration.info.AppliedMigration;
+import com.contrastsecurity.cassandra.migration.info.MigrationInfo;
+import com.contrastsecurity.cassandra.migration.info.MigrationInfoService;
+import com.contrastsecurity.cassandra.migration.info.MigrationVersion;
+import com.contrastsecurity.cassandra.migration.logging.Log;
+import com.contrastsecurity.cassandra.migration.logging.LogFactory;
+import com.contrastsecurity.cassandra.migration.resolver.MigrationResolver;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Plans a migration run from a single snapshot of the resolved and the applied migrations.
+ *
+ * <p>The metadata table is read once and the plan is kept up to date in memory as migrations get applied.
+ * The metadata table is only read again when recording a migration finds its version already recorded, which shows
+ * that the history changed since it was read.</p>
+ */
+public class MigrationPlanner {
+    private static final Log LOG = LogFactory.getLog(MigrationPlanner.class);
+
+    private final MigrationResolver migrationResolver;
+    private final SchemaVersionDAO schemaVersionDAO;
+    private final MigrationVersion target;
+    private final boolean allowOutOfOrder;
+
+    /**
+     * The migrations that were pending at the last refresh, in the order they should be applied.
+     */
+    private MigrationInfo[] pendingMigrations = new MigrationInfo[0];
+
+    /**
+     * The index of the next migration of the plan to hand out.
+     */
+    private int nextPending;
+
+    /**
+     * The highest version applied to the keyspace, as far as this planner knows.
+     */
+    private MigrationVersion currentVersion = MigrationVersion.EMPTY;
+
+    /**
+     * The migrations recorded in the metadata table, as far as this planner knows.
+     */
+    private List<AppliedMigration> appliedMigrations = new ArrayList<>();
+
+    /**
+     * The versions of the resolved and of the applied migrations at the last refresh.
+     */
+    private Set<MigrationVersion> knownVersions = new HashSet<>();
+
+    /**
+     * Whether a concurrent modification of the metadata table was detected since the last refresh.
+     */
+    private boolean stale;
+
+    public MigrationPlanner(MigrationResolver migrationResolver, SchemaVersionDAO schemaVersionDAO,
+                            MigrationVersion target, boolean allowOutOfOrder) {
+        this.migrationResolver = migrationResolver;
+        this.schemaVersionDAO = schemaVersionDAO;
+        this.target = target;
+        this.allowOutOfOrder = allowOutOfOrder;
+    }
+
+    /**
+     * Reads the resolved and applied migrations and builds a new plan from them.
+     *
+     * @return The migration info the plan was built from.
+     */
+    public MigrationInfoService refresh() {
+        MigrationInfoService infoService =
+                new MigrationInfoService(migrationResolver, schemaVersionDAO, target, allowOutOfOrder, true);
+        infoService.refresh();
+
+        pendingMigrations = infoService.pending();
+        appliedMigrations = new ArrayList<>();
+        knownVersions = new HashSet<>();
+        for (MigrationInfo migrationInfo : infoService.all()) {
+            knownVersions.add(migrationInfo.getVersion());
+            if (migrationInfo.getAppliedMigration() != null) {
+                appliedMigrations.add(migrationInfo.getAppliedMigration());
+            }
+        }
+        nextPending = 0;
+        currentVersion = infoService.current() == null ? MigrationVersion.EMPTY : infoService.current().getVersion();
+        stale = false;
+
+        return infoService;
+    }
+
+    /**
+     * @return The next migration to apply, or {@code null} if the plan is complete.
+     */
+    public MigrationInfo next() {
+        if (nextPending >= pendingMigrations.length) {
+            return null;
+        }
+        return pendingMigrations[nextPending++];
+    }
+
+    /**
+     * @return The highest version applied to the keyspace, as far as this planner knows.
+     */
+    public MigrationVersion getCurrentVersion() {
+        return currentVersion;
+    }
+
+    /**
+     * @return The versions of the resolved and of the applied migrations at the last refresh.
+     */
+    public Set<MigrationVersion> getKnownVersions() {
+        return knownVersions;
+    }
+
+    /**
+     * @return The migrations recorded in the metadata table, as far as this planner knows.
+     */
+    public List<AppliedMigration> getAppliedMigrations() {
+        return appliedMigrations;
+    }
+
+    /**
+     * Records this migration in the metadata table and updates the in-memory view accordingly.
+     *
+     * @param appliedMigration The migration that was applied (or failed).
+     */
+    public void recordApplied(AppliedMigration appliedMigration) {
+        if (!schemaVersionDAO.addAppliedMigration(appliedMigration)) {
+            LOG.info("Keyspace " + schemaVersionDAO.getKeyspace().getName()
+                    + " was modified by a concurrent migration. Re-reading applied migrations.");
+            stale = true;
+        } else {
+            appliedMigrations.add(appliedMigration);
+        }
+
+        if (appliedMigration.isSuccess() && appliedMigration.getVersion().compareTo(currentVersion) > 0) {
+            currentVersion = appliedMigration.getVersion();
+        }
+    }
+
+    /**
+     * @return {@code true} if the plan must be refreshed because a recorded migration revealed a concurrent
+     * modification of the metadata table.
+     */
+    public boolean isStale() {
+        return stale;
+    }
+}
@@ -0,0 +1,20 @@
+package com.contrastsecurity.cassandra.migration.api;
+
+import com.contrastsecurity.cassandra.migration.info.MigrationVersion;
+
+import java.util.Collection;
+
+/**
+ * Migration implementors that also implement this interface will be able to declare the migrations they depend on.
+ * Migrations without declared dependencies depend on every migration with a lower version. Independent migrations
+ * may be applied concurrently when the migration parallelism is greater than 1.
+ */
+public interface MigrationDependencyProvider {
+    /**
+     * Returns the versions of the migrations that must be applied before this one.
+     *
+     * @return The versions this migration depends on, all lower than its own version. An empty collection if it does
+     * not depend on any other migration. Never {@code null}.
+     */
+    Collection<MigrationVersion> getDependencies();
+}
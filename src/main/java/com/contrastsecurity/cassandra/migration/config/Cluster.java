@@ -7,7 +7,9 @@ public class Cluster {
         CONTACTPOINTS(PROPERTY_PREFIX + "contactpoints", "Comma separated values of node IP addresses"),
         PORT(PROPERTY_PREFIX + "port", "CQL native transport port"),
         USERNAME(PROPERTY_PREFIX + "username", "Username for password authenticator"),
-        PASSWORD(PROPERTY_PREFIX + "password", "Password for password authenticator");
+        PASSWORD(PROPERTY_PREFIX + "password", "Password for password authenticator"),
+        SPECULATIVE_DELAY(PROPERTY_PREFIX + "speculativedelay", "Delay in milliseconds before a speculative execution of idempotent reads (0 to disable)"),
+        SPECULATIVE_EXECUTIONS(PROPERTY_PREFIX + "speculativeexecutions", "Maximum number of speculative executions of idempotent reads");
 
         private String name;
         private String description;
@@ -30,6 +32,8 @@ public class Cluster {
     private int port = 9042;
     private String username;
     private String password;
+    private long speculativeDelay = 0;
+    private int speculativeExecutions = 2;
 
     public Cluster() {
         String contactpointsP = System.getProperty(ClusterProperty.CONTACTPOINTS.getName());
@@ -47,6 +51,14 @@ public class Cluster {
         String passwordP = System.getProperty(ClusterProperty.PASSWORD.getName());
         if (null != passwordP && passwordP.trim().length() != 0)
             this.password = passwordP;
+
+        String speculativeDelayP = System.getProperty(ClusterProperty.SPECULATIVE_DELAY.getName());
+        if (null != speculativeDelayP && speculativeDelayP.trim().length() != 0)
+            this.speculativeDelay = Long.parseLong(speculativeDelayP.trim());
+
+        String speculativeExecutionsP = System.getProperty(ClusterProperty.SPECULATIVE_EXECUTIONS.getName());
+        if (null != speculativeExecutionsP && speculativeExecutionsP.trim().length() != 0)
+            this.speculativeExecutions = Integer.parseInt(speculativeExecutionsP.trim());
     }
 
     public String[] getContactpoints() {
@@ -80,4 +92,20 @@ public class Cluster {
     public void setPassword(String password) {
         this.password = password;
     }
+
+    public long getSpeculativeDelay() {
+        return speculativeDelay;
+    }
+
+    public void setSpeculativeDelay(long speculativeDelay) {
+        this.speculativeDelay = speculativeDelay;
+    }
+
+    public int getSpeculativeExecutions() {
+        return speculativeExecutions;
+    }
+
+    public void setSpeculativeExecutions(int speculativeExecutions) {
+        this.speculativeExecutions = speculativeExecutions;
+    }
 }
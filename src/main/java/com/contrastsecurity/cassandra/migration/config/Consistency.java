@@ -0,0 +1,98 @@
+package com.contrastsecurity.cassandra.migration.config;
+
+import com.datastax.driver.core.ConsistencyLevel;
+
+import java.util.Locale;
+
+/**
+ * Consistency levels of the statements used to track the schema version, per type of operation.
+ * A level left unset defaults to ALL on multi-host clusters and ONE on single-host clusters.
+ */
+public class Consistency {
+    private static final String PROPERTY_PREFIX = "cassandra.migration.consistency.";
+
+    public enum ConsistencyProperty {
+        HISTORY_READ(PROPERTY_PREFIX + "history.read", "Consistency level for reading the schema version table"),
+        HISTORY_WRITE(PROPERTY_PREFIX + "history.write", "Consistency level for writing the schema version table"),
+        LOCK(PROPERTY_PREFIX + "lock", "Consistency level for the migration lock"),
+        DDL(PROPERTY_PREFIX + "ddl", "Consistency level for creating and upgrading the schema version tables"),
+        SERIAL(PROPERTY_PREFIX + "serial", "Serial consistency level for lightweight transactions (SERIAL or LOCAL_SERIAL)");
+
+        private String name;
+        private String description;
+
+        ConsistencyProperty(String name, String description) {
+            this.name = name;
+            this.description = description;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    private ConsistencyLevel historyRead;
+    private ConsistencyLevel historyWrite;
+    private ConsistencyLevel lock;
+    private ConsistencyLevel ddl;
+    private ConsistencyLevel serial;
+
+    public Consistency() {
+        this.historyRead = fromProperty(ConsistencyProperty.HISTORY_READ);
+        this.historyWrite = fromProperty(ConsistencyProperty.HISTORY_WRITE);
+        this.lock = fromProperty(ConsistencyProperty.LOCK);
+        this.ddl = fromProperty(ConsistencyProperty.DDL);
+        this.serial = fromProperty(ConsistencyProperty.SERIAL);
+    }
+
+    private static ConsistencyLevel fromProperty(ConsistencyProperty property) {
+        String levelP = System.getProperty(property.getName());
+        if (null != levelP && levelP.trim().length() != 0)
+            return ConsistencyLevel.valueOf(levelP.trim().toUpperCase(Locale.ENGLISH));
+        return null;
+    }
+
+    public ConsistencyLevel getHistoryRead() {
+        return historyRead;
+    }
+
+    public void setHistoryRead(ConsistencyLevel historyRead) {
+        this.historyRead = historyRead;
+    }
+
+    public ConsistencyLevel getHistoryWrite() {
+        return historyWrite;
+    }
+
+    public void setHistoryWrite(ConsistencyLevel historyWrite) {
+        this.historyWrite = historyWrite;
+    }
+
+    public ConsistencyLevel getLock() {
+        return lock;
+    }
+
+    public void setLock(ConsistencyLevel lock) {
+        this.lock = lock;
+    }
+
+    public ConsistencyLevel getDdl() {
+        return ddl;
+    }
+
+    public void setDdl(ConsistencyLevel ddl) {
+        this.ddl = ddl;
+    }
+
+    public ConsistencyLevel getSerial() {
+        return serial;
+    }
+
+    public void setSerial(ConsistencyLevel serial) {
+        this.serial = serial;
+    }
+}
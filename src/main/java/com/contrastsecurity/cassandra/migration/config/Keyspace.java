@@ -24,10 +24,12 @@ public class Keyspace {
     }
 
     private Cluster cluster;
+    private Consistency consistency;
     private String name;
 
     public Keyspace() {
         cluster = new Cluster();
+        consistency = new Consistency();
         String keyspaceP = System.getProperty(KeyspaceProperty.NAME.getName());
         if (null != keyspaceP && keyspaceP.trim().length() != 0)
             this.name = keyspaceP;
@@ -41,6 +43,14 @@ public class Keyspace {
         this.cluster = cluster;
     }
 
+    public Consistency getConsistency() {
+        return consistency;
+    }
+
+    public void setConsistency(Consistency consistency) {
+        this.consistency = consistency;
+    }
+
     public String getName() {
         return name;
     }
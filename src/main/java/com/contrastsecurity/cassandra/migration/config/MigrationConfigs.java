@@ -8,6 +8,13 @@ public class MigrationConfigs {
         SCRIPTS_ENCODING("cassandra.migration.scripts.encoding", "Encoding for CQL scripts"),
         SCRIPTS_LOCATIONS("cassandra.migration.scripts.locations", "Locations of the migration scripts in CSV format"),
         ALLOW_OUTOFORDER("cassandra.migration.scripts.allowoutoforder", "Allow out of order migration"),
+        SCRIPTS_CACHE("cassandra.migration.scripts.cache", "File caching the checksums of unchanged CQL scripts between runs"),
+        SCRIPTS_THREADS("cassandra.migration.scripts.threads", "Number of threads resolving and checksumming migrations"),
+        SCRIPTS_ASYNC_WINDOW("cassandra.migration.scripts.asyncwindow", "Maximum number of DML statements of a CQL script in flight"),
+        PARALLELISM("cassandra.migration.parallelism", "Maximum number of independent migrations applied concurrently"),
+        KEYSPACE_CONCURRENCY("cassandra.migration.keyspaces.concurrency", "Maximum number of keyspaces migrated concurrently"),
+        HISTORY_CACHE("cassandra.migration.history.cache", "Cache the applied migrations in memory during a run"),
+        LEASE_TTL("cassandra.migration.lease.ttl", "Time to live in seconds of the lease electing the instance that migrates"),
         TARGET_VERSION("cassandra.migration.version.target", "The target version. Migrations with a higher version number will be ignored.");
 
         private String name;
@@ -45,6 +52,41 @@ public class MigrationConfigs {
         if(allowOutOfOrderProp != null && allowOutOfOrderProp.trim().length() != 0) {
             setAllowOutOfOrder(allowOutOfOrderProp);
         }
+
+        String scriptsCacheProp = System.getProperty(MigrationProperty.SCRIPTS_CACHE.getName());
+        if (scriptsCacheProp != null && scriptsCacheProp.trim().length() != 0) {
+            setScriptsCache(scriptsCacheProp.trim());
+        }
+
+        String resolverThreadsProp = System.getProperty(MigrationProperty.SCRIPTS_THREADS.getName());
+        if (resolverThreadsProp != null && resolverThreadsProp.trim().length() != 0) {
+            setResolverThreads(Integer.parseInt(resolverThreadsProp.trim()));
+        }
+
+        String asyncWindowProp = System.getProperty(MigrationProperty.SCRIPTS_ASYNC_WINDOW.getName());
+        if (asyncWindowProp != null && asyncWindowProp.trim().length() != 0) {
+            setAsyncWindow(Integer.parseInt(asyncWindowProp.trim()));
+        }
+
+        String parallelismProp = System.getProperty(MigrationProperty.PARALLELISM.getName());
+        if (parallelismProp != null && parallelismProp.trim().length() != 0) {
+            setParallelism(Integer.parseInt(parallelismProp.trim()));
+        }
+
+        String keyspaceConcurrencyProp = System.getProperty(MigrationProperty.KEYSPACE_CONCURRENCY.getName());
+        if (keyspaceConcurrencyProp != null && keyspaceConcurrencyProp.trim().length() != 0) {
+            setKeyspaceConcurrency(Integer.parseInt(keyspaceConcurrencyProp.trim()));
+        }
+
+        String historyCacheProp = System.getProperty(MigrationProperty.HISTORY_CACHE.getName());
+        if (historyCacheProp != null && historyCacheProp.trim().length() != 0) {
+            setHistoryCache(Boolean.parseBoolean(historyCacheProp.trim()));
+        }
+
+        String leaseTtlProp = System.getProperty(MigrationProperty.LEASE_TTL.getName());
+        if (leaseTtlProp != null && leaseTtlProp.trim().length() != 0) {
+            setLeaseTtl(Integer.parseInt(leaseTtlProp.trim()));
+        }
     }
 
     /**
@@ -62,6 +104,46 @@ public class MigrationConfigs {
      */
     private boolean allowOutOfOrder = false;
 
+    /**
+     * File caching the version, description, checksum and dependencies of CQL scripts, reused while the file holding
+     * a script is unchanged (default: none, every script is read at each run)
+     */
+    private String scriptsCache;
+
+    /**
+     * Number of threads resolving migrations across locations and scripts (default: 1, migrations are resolved on the
+     * calling thread)
+     */
+    private int resolverThreads = 1;
+
+    /**
+     * Maximum number of DML statements of a CQL script sent asynchronously before waiting for their results
+     * (default: 0, statements are executed one at a time)
+     */
+    private int asyncWindow = 0;
+
+    /**
+     * Maximum number of independent migrations applied concurrently (default: 1, migrations are applied one at a time)
+     */
+    private int parallelism = 1;
+
+    /**
+     * Maximum number of keyspaces migrated concurrently when migrating several keyspaces (default: 4)
+     */
+    private int keyspaceConcurrency = 4;
+
+    /**
+     * Cache the applied migrations in memory, reloading them only when the metadata table was modified by another
+     * run (default: false)
+     */
+    private boolean historyCache = false;
+
+    /**
+     * Time to live in seconds of the lease electing the single instance that migrates a keyspace
+     * (default: 0, no lease is taken)
+     */
+    private int leaseTtl = 0;
+
     /**
      * The target version. Migrations with a higher version number will be ignored. (default: the latest version)
      */
@@ -95,6 +177,62 @@ public class MigrationConfigs {
         this.allowOutOfOrder = allowOutOfOrder;
     }
 
+    public String getScriptsCache() {
+        return scriptsCache;
+    }
+
+    public void setScriptsCache(String scriptsCache) {
+        this.scriptsCache = scriptsCache;
+    }
+
+    public int getResolverThreads() {
+        return resolverThreads;
+    }
+
+    public void setResolverThreads(int resolverThreads) {
+        this.resolverThreads = resolverThreads;
+    }
+
+    public int getAsyncWindow() {
+        return asyncWindow;
+    }
+
+    public void setAsyncWindow(int asyncWindow) {
+        this.asyncWindow = asyncWindow;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public int getKeyspaceConcurrency() {
+        return keyspaceConcurrency;
+    }
+
+    public void setKeyspaceConcurrency(int keyspaceConcurrency) {
+        this.keyspaceConcurrency = keyspaceConcurrency;
+    }
+
+    public boolean isHistoryCache() {
+        return historyCache;
+    }
+
+    public void setHistoryCache(boolean historyCache) {
+        this.historyCache = historyCache;
+    }
+
+    public int getLeaseTtl() {
+        return leaseTtl;
+    }
+
+    public void setLeaseTtl(int leaseTtl) {
+        this.leaseTtl = leaseTtl;
+    }
+
     public MigrationVersion getTarget() {
         return target;
     }
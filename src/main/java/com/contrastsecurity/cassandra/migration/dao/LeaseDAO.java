@@ -0,0 +1,149 @@
+package com.contrastsecurity.cassandra.migration.dao;
+
+import com.contrastsecurity.cassandra.migration.config.Keyspace;
+import com.contrastsecurity.cassandra.migration.logging.Log;
+import com.contrastsecurity.cassandra.migration.logging.LogFactory;
+import com.contrastsecurity.cassandra.migration.utils.CachePrepareStatement;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+
+/**
+ * Stores the migration lease of a keyspace: a single row of the lease table, written with lightweight transactions
+ * and expiring with its TTL unless renewed by its owner.
+ */
+public class LeaseDAO {
+
+    private static final Log LOG = LogFactory.getLog(LeaseDAO.class);
+    private static final String LEASE_TABLE_NAME_SUFFIX = "_lease";
+
+    /**
+     * Key of the lease row.
+     */
+    private static final String LEASE_NAME = "migration";
+
+    private Session session;
+    private Keyspace keyspace;
+    private String tableName;
+    private CachePrepareStatement cachePs;
+    private ConsistencyLevel lockConsistency;
+    private ConsistencyLevel serialConsistency;
+
+    /**
+     * Whether the lease table is known to exist.
+     */
+    private boolean tableExists;
+
+    /**
+     * Creates a new DAO.
+     *
+     * @param session           The session to use.
+     * @param keyspace          The keyspace holding the metadata table.
+     * @param tableName         The name of the metadata table. The lease table is named after it.
+     * @param lockConsistency   The consistency level of the lease statements.
+     * @param serialConsistency The serial consistency level of the lease statements.
+     */
+    public LeaseDAO(Session session, Keyspace keyspace, String tableName, ConsistencyLevel lockConsistency,
+                    ConsistencyLevel serialConsistency) {
+        this.session = session;
+        this.keyspace = keyspace;
+        this.tableName = tableName + LEASE_TABLE_NAME_SUFFIX;
+        this.cachePs = new CachePrepareStatement(session);
+        this.lockConsistency = lockConsistency;
+        this.serialConsistency = serialConsistency;
+    }
+
+    public Keyspace getKeyspace() {
+        return keyspace;
+    }
+
+    public void createTableIfNotExists() {
+        if (tableExists) {
+            return;
+        }
+
+        KeyspaceMetadata keyspaceMetadata = session.getCluster().getMetadata().getKeyspace(keyspace.getName());
+        if (keyspaceMetadata == null || keyspaceMetadata.getTable(tableName) == null) {
+            Statement statement = new SimpleStatement(
+                    "CREATE TABLE IF NOT EXISTS " + keyspace.getName() + "." + tableName + " (" +
+                            "  name text," +
+                            "  owner text," +
+                            "  PRIMARY KEY (name)" +
+                            ");");
+            statement.setConsistencyLevel(this.lockConsistency);
+            session.execute(statement);
+        }
+        tableExists = true;
+    }
+
+    /**
+     * Takes the lease if nobody holds it.
+     *
+     * @param owner      The id of the new owner.
+     * @param ttlSeconds The time to live of the lease.
+     * @return {@code true} if the lease was taken, {@code false} if it is held by another owner.
+     */
+    public boolean tryAcquire(String owner, int ttlSeconds) {
+        createTableIfNotExists();
+
+        PreparedStatement statement = cachePs.prepare(
+                "INSERT INTO " + keyspace.getName() + "." + tableName + " (name, owner) VALUES (?, ?)" +
+                        " IF NOT EXISTS USING TTL ?;");
+        statement.setConsistencyLevel(this.lockConsistency);
+        statement.setSerialConsistencyLevel(this.serialConsistency);
+        boolean applied = session.execute(statement.bind(LEASE_NAME, owner, ttlSeconds)).wasApplied();
+        LOG.debug((applied ? "Acquired" : "Could not acquire") + " lease " + tableName + " as " + owner);
+        return applied;
+    }
+
+    /**
+     * Extends the lease of this owner by a full time to live.
+     *
+     * @param owner      The id of the owner.
+     * @param ttlSeconds The new time to live of the lease.
+     * @return {@code true} if the lease was renewed, {@code false} if this owner no longer holds it.
+     */
+    public boolean renew(String owner, int ttlSeconds) {
+        PreparedStatement statement = cachePs.prepare(
+                "UPDATE " + keyspace.getName() + "." + tableName + " USING TTL ? SET owner = ? WHERE name = ?" +
+                        " IF owner = ?;");
+        statement.setConsistencyLevel(this.lockConsistency);
+        statement.setSerialConsistencyLevel(this.serialConsistency);
+        return session.execute(statement.bind(ttlSeconds, owner, LEASE_NAME, owner)).wasApplied();
+    }
+
+    /**
+     * Releases the lease, if still held by this owner.
+     *
+     * @param owner The id of the owner.
+     */
+    public void release(String owner) {
+        PreparedStatement statement = cachePs.prepare(
+                "DELETE FROM " + keyspace.getName() + "." + tableName + " WHERE name = ? IF owner = ?;");
+        statement.setConsistencyLevel(this.lockConsistency);
+        statement.setSerialConsistencyLevel(this.serialConsistency);
+        if (!session.execute(statement.bind(LEASE_NAME, owner)).wasApplied()) {
+            LOG.warn("Lease " + tableName + " was no longer held by " + owner + " when released");
+        }
+    }
+
+    /**
+     * Reads the current owner with a plain single-row read, without a lightweight transaction.
+     *
+     * @return The id of the current owner, {@code null} if the lease is free.
+     */
+    public String findOwner() {
+        createTableIfNotExists();
+
+        PreparedStatement statement = cachePs.prepare(
+                "SELECT owner FROM " + keyspace.getName() + "." + tableName + " WHERE name = ?;");
+        statement.setConsistencyLevel(this.lockConsistency);
+        statement.setIdempotent(true);
+        Row row = session.execute(statement.bind(LEASE_NAME)).one();
+        return row == null ? null : row.getString("owner");
+    }
+}
@@ -1,51 +1,155 @@
 package com.contrastsecurity.cassandra.migration.dao;
 
+import com.contrastsecurity.cassandra.migration.config.Consistency;
 import com.contrastsecurity.cassandra.migration.config.Keyspace;
 import com.contrastsecurity.cassandra.migration.config.MigrationType;
 import com.contrastsecurity.cassandra.migration.info.AppliedMigration;
+import com.contrastsecurity.cassandra.migration.info.MigrationDigest;
 import com.contrastsecurity.cassandra.migration.info.MigrationVersion;
 import com.contrastsecurity.cassandra.migration.logging.Log;
 import com.contrastsecurity.cassandra.migration.logging.LogFactory;
 import com.contrastsecurity.cassandra.migration.utils.CachePrepareStatement;
+import com.contrastsecurity.cassandra.migration.utils.Pair;
 import com.datastax.driver.core.*;
-import com.datastax.driver.core.exceptions.InvalidQueryException;
 import com.datastax.driver.core.querybuilder.QueryBuilder;
 import com.datastax.driver.core.querybuilder.Select;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.IdentityHashMap;
 import java.util.List;
-
-import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
 
 public class SchemaVersionDAO {
 
     private static final Log LOG = LogFactory.getLog(SchemaVersionDAO.class);
     private static final String COUNTS_TABLE_NAME_SUFFIX = "_counts";
+    private static final String STATE_TABLE_NAME_SUFFIX = "_state";
+
+    /**
+     * Key of the row holding the digest of the applied migrations in the state table.
+     */
+    private static final String DIGEST_STATE = "digest";
+
+    /**
+     * Name of the counter bumped by every recorded migration, used to detect changes to the metadata table.
+     */
+    private static final String EPOCH_COUNTER = "epoch";
+
+    /**
+     * Name of the counter bumped by every migration recorded by earlier versions, which do not know the epoch.
+     */
+    private static final String LEGACY_INSTALLED_RANK_COUNTER = "installed_rank";
 
     private Session session;
     private Keyspace keyspace;
     private String tableName;
     private CachePrepareStatement cachePs;
-    private ConsistencyLevel consistencyLevel;
+    private ConsistencyLevel historyReadConsistency;
+    private ConsistencyLevel historyWriteConsistency;
+    private ConsistencyLevel lockConsistency;
+    private ConsistencyLevel ddlConsistency;
+    private ConsistencyLevel serialConsistency;
+
+    /**
+     * Whether the metadata tables are known to exist.
+     */
+    private boolean tablesExist;
+
+    /**
+     * Whether the metadata table is known to have the installed_seq column.
+     */
+    private boolean installedSeqColumnExists;
+
+    /**
+     * Whether the state table is known to exist.
+     */
+    private boolean stateTableExists;
+
+    /**
+     * Whether the applied migrations are cached between reads.
+     */
+    private final boolean cacheEnabled;
+
+    /**
+     * The cached applied migrations, {@code null} until read.
+     */
+    private TreeMap<MigrationVersion, AppliedMigration> cachedMigrations;
+
+    /**
+     * The epoch of the metadata table the cached migrations correspond to.
+     */
+    private long cachedEpoch;
+
+    /**
+     * The epoch bump of the last recorded migration, still in flight.
+     */
+    private ResultSetFuture pendingEpochBump;
 
     public SchemaVersionDAO(Session session, Keyspace keyspace, String tableName) {
+        this(session, keyspace, tableName, false);
+    }
+
+    /**
+     * Creates a new DAO.
+     *
+     * @param session      The session to use.
+     * @param keyspace     The keyspace holding the metadata table.
+     * @param tableName    The name of the metadata table.
+     * @param cacheEnabled Whether to cache the applied migrations in memory. The cache is updated by every recorded
+     *                     migration and reloaded when the epoch counter of the metadata table shows a change made by
+     *                     another DAO.
+     */
+    public SchemaVersionDAO(Session session, Keyspace keyspace, String tableName, boolean cacheEnabled) {
+        this.cacheEnabled = cacheEnabled;
         this.session = session;
         this.keyspace = keyspace;
         this.tableName = tableName;
         this.cachePs = new CachePrepareStatement(session);
         //If running on a single host, don't force ConsistencyLevel.ALL
-        this.consistencyLevel =
+        ConsistencyLevel defaultConsistency =
                 session.getCluster().getMetadata().getAllHosts().size() > 1 ? ConsistencyLevel.ALL :  ConsistencyLevel.ONE;
+        Consistency consistency = keyspace.getConsistency() != null ? keyspace.getConsistency() : new Consistency();
+        this.historyReadConsistency = orDefault(consistency.getHistoryRead(), defaultConsistency);
+        this.historyWriteConsistency = orDefault(consistency.getHistoryWrite(), defaultConsistency);
+        this.lockConsistency = orDefault(consistency.getLock(), defaultConsistency);
+        this.ddlConsistency = orDefault(consistency.getDdl(), defaultConsistency);
+        this.serialConsistency = orDefault(consistency.getSerial(), ConsistencyLevel.SERIAL);
+    }
+
+    private static ConsistencyLevel orDefault(ConsistencyLevel consistencyLevel, ConsistencyLevel defaultLevel) {
+        return consistencyLevel != null ? consistencyLevel : defaultLevel;
     }
 
     public Keyspace getKeyspace() {
         return this.keyspace;
     }
 
+    /**
+     * @return The consistency level for the migration lock.
+     */
+    public ConsistencyLevel getLockConsistency() {
+        return lockConsistency;
+    }
+
+    /**
+     * @return The serial consistency level for lightweight transactions.
+     */
+    public ConsistencyLevel getSerialConsistency() {
+        return serialConsistency;
+    }
+
     public void createTablesIfNotExist() {
         if (tablesExist()) {
+            addInstalledSeqColumnIfNotExists();
             return;
         }
 
@@ -62,9 +166,10 @@ public class SchemaVersionDAO {
                         "  installed_on timestamp," +
                         "  execution_time int," +
                         "  success boolean," +
+                        "  installed_seq timeuuid," +
                         "  PRIMARY KEY (version)" +
                         ");");
-        statement.setConsistencyLevel(this.consistencyLevel);
+        statement.setConsistencyLevel(this.ddlConsistency);
         session.execute(statement);
 
         statement = new SimpleStatement(
@@ -73,66 +178,75 @@ public class SchemaVersionDAO {
                         "  count counter," +
                         "  PRIMARY KEY (name)" +
                         ");");
-        statement.setConsistencyLevel(this.consistencyLevel);
+        statement.setConsistencyLevel(this.ddlConsistency);
         session.execute(statement);
+
+        tablesExist = true;
+        installedSeqColumnExists = true;
     }
 
+    /**
+     * Checks whether the metadata tables exist, using the schema metadata maintained by the driver. Once found, they
+     * are assumed to exist for the life of this DAO.
+     *
+     * @return {@code true} if both the metadata table and its counts table exist.
+     */
     public boolean tablesExist() {
-        boolean schemaVersionTableExists = false;
-        boolean schemaVersionCountsTableExists = false;
-
-        Statement schemaVersionStatement = QueryBuilder
-                .select()
-                .countAll()
-                .from(keyspace.getName(), tableName);
-
-        Statement schemaVersionCountsStatement = QueryBuilder
-                .select()
-                .countAll()
-                .from(keyspace.getName(), tableName + COUNTS_TABLE_NAME_SUFFIX);
-
-        schemaVersionStatement.setConsistencyLevel(this.consistencyLevel);
-        schemaVersionCountsStatement.setConsistencyLevel(this.consistencyLevel);
+        if (tablesExist) {
+            return true;
+        }
 
-        try {
-            ResultSet resultsSchemaVersion = session.execute(schemaVersionStatement);
-            if (resultsSchemaVersion.one() != null) {
-                schemaVersionTableExists = true;
-            }
-        } catch (InvalidQueryException e) {
+        KeyspaceMetadata keyspaceMetadata = session.getCluster().getMetadata().getKeyspace(keyspace.getName());
+        if (keyspaceMetadata == null) {
+            LOG.debug("No keyspace found with a name of " + keyspace.getName());
+            return false;
+        }
+        if (keyspaceMetadata.getTable(tableName) == null) {
             LOG.debug("No schema version table found with a name of " + tableName);
+            return false;
         }
-
-        try {
-            ResultSet resultsSchemaVersionCounts = session.execute(schemaVersionCountsStatement);
-            if (resultsSchemaVersionCounts.one() != null) {
-                schemaVersionCountsTableExists = true;
-            }
-        } catch (InvalidQueryException e) {
+        if (keyspaceMetadata.getTable(tableName + COUNTS_TABLE_NAME_SUFFIX) == null) {
             LOG.debug("No schema version counts table found with a name of " + tableName + COUNTS_TABLE_NAME_SUFFIX);
+            return false;
         }
 
-        return schemaVersionTableExists && schemaVersionCountsTableExists;
+        tablesExist = true;
+        return true;
     }
 
-    public void addAppliedMigration(AppliedMigration appliedMigration) {
+    /**
+     * Records this migration in the metadata table with a single write. Neither its installed rank nor its version
+     * rank is stored: both are derived when the history is read, from the timeuuid assigned by the coordinator and
+     * from the position of the version among all recorded versions.
+     *
+     * <p>The row is written with a conditional {@code INSERT ... IF NOT EXISTS}, in a single round trip. Finding the
+     * version already recorded only reveals, once the migration was applied, that the history changed since it was
+     * read: by a concurrent migration run, or by an earlier attempt of this write that timed out. Keeping concurrent
+     * runs from applying the same migrations is the job of the migration lease.</p>
+     *
+     * @param appliedMigration The migration to record.
+     * @return {@code true} if the row was written, {@code false} if the version was already recorded and the history
+     * must be read again.
+     */
+    public boolean addAppliedMigration(AppliedMigration appliedMigration) {
         createTablesIfNotExist();
 
         MigrationVersion version = appliedMigration.getVersion();
 
-        int versionRank = calculateVersionRank(version);
         PreparedStatement statement = cachePs.prepare(
                 "INSERT INTO " + keyspace.getName() + "." + tableName +
-                        " (version_rank, installed_rank, version, description, type, script, checksum, installed_on," +
+                        " (installed_seq, version, description, type, script, checksum, installed_on," +
                         "  installed_by, execution_time, success)" +
                         " VALUES" +
-                        " (?, ?, ?, ?, ?, ?, ?, dateOf(now()), ?, ?, ?);"
+                        " (now(), ?, ?, ?, ?, ?, dateOf(now()), ?, ?, ?)" +
+                        " IF NOT EXISTS;"
         );
 
-        statement.setConsistencyLevel(this.consistencyLevel);
-        session.execute(statement.bind(
-                versionRank,
-                calculateInstalledRank(),
+        statement.setConsistencyLevel(this.historyWriteConsistency);
+        statement.setSerialConsistencyLevel(this.serialConsistency);
+        // Safe to retry: a retried write finds its own row and only causes the history to be read again
+        statement.setIdempotent(true);
+        ResultSet result = session.execute(statement.bind(
                 version.toString(),
                 appliedMigration.getDescription(),
                 appliedMigration.getType().name(),
@@ -142,7 +256,52 @@ public class SchemaVersionDAO {
                 appliedMigration.getExecutionTime(),
                 appliedMigration.isSuccess()
         ));
+        if (!result.wasApplied()) {
+            LOG.debug("Version " + version + " was already recorded in schema version table " + tableName);
+            cachedMigrations = null;
+            return false;
+        }
         LOG.debug("Schema version table " + tableName + " successfully updated to reflect changes");
+
+        // Bumped by every writer, whether it caches or not, so that the DAOs caching the history see the change
+        bumpEpoch();
+        if (cacheEnabled && cachedMigrations != null) {
+            int installedRank = 0;
+            for (AppliedMigration cachedMigration : cachedMigrations.values()) {
+                installedRank = Math.max(installedRank, cachedMigration.getInstalledRank());
+            }
+            cachedMigrations.put(version, new AppliedMigration(0, installedRank + 1, version,
+                    appliedMigration.getDescription(), appliedMigration.getType(), appliedMigration.getScript(),
+                    appliedMigration.getChecksum(), new Date(), appliedMigration.getInstalledBy(),
+                    appliedMigration.getExecutionTime(), appliedMigration.isSuccess()));
+            cachedEpoch++;
+        }
+        return true;
+    }
+
+    /**
+     * Removes this failed migration from the metadata table, so that it can be applied again. The row is only removed
+     * while it is still recorded as failed.
+     *
+     * @param version The version of the failed migration.
+     * @return {@code true} if the row was removed, {@code false} if the version is not recorded as failed.
+     */
+    public boolean removeFailedMigration(MigrationVersion version) {
+        PreparedStatement statement = cachePs.prepare(
+                "DELETE FROM " + keyspace.getName() + "." + tableName + " WHERE version = ? IF success = false;");
+        statement.setConsistencyLevel(this.historyWriteConsistency);
+        statement.setSerialConsistencyLevel(this.serialConsistency);
+        if (!session.execute(statement.bind(version.toString())).wasApplied()) {
+            return false;
+        }
+        LOG.debug("Removed failed version " + version + " from schema version table " + tableName);
+
+        bumpEpoch();
+        if (cacheEnabled && cachedMigrations != null) {
+            cachedMigrations.remove(version);
+            cachedEpoch++;
+        }
+        return true;
     }
 
     /**
@@ -155,9 +314,114 @@ public class SchemaVersionDAO {
             return new ArrayList<>();
         }
 
-        Select select = QueryBuilder
+        if (!cacheEnabled) {
+            return readAppliedMigrations();
+        }
+
+        // Read the epoch first: a change made while reading the table shows at the next check
+        long epoch = readEpoch();
+        if (cachedMigrations != null && epoch == cachedEpoch) {
+            return cachedAppliedMigrations();
+        }
+        if (cachedMigrations != null) {
+            LOG.debug("Schema version table " + tableName + " was modified, reloading applied migrations");
+        }
+
+        List<AppliedMigration> appliedMigrations = readAppliedMigrations();
+        cachedMigrations = new TreeMap<>();
+        for (AppliedMigration appliedMigration : appliedMigrations) {
+            cachedMigrations.put(appliedMigration.getVersion(), appliedMigration);
+        }
+        cachedEpoch = epoch;
+        return appliedMigrations;
+    }
+
+    /**
+     * @return The cached applied migrations, with version ranks matching the current set of versions.
+     */
+    private List<AppliedMigration> cachedAppliedMigrations() {
+        List<AppliedMigration> appliedMigrations = new ArrayList<>(cachedMigrations.size());
+        int versionRank = 0;
+        for (AppliedMigration m : cachedMigrations.values()) {
+            versionRank++;
+            appliedMigrations.add(m.getVersionRank() == versionRank ? m : new AppliedMigration(versionRank,
+                    m.getInstalledRank(), m.getVersion(), m.getDescription(), m.getType(), m.getScript(),
+                    m.getChecksum(), m.getInstalledOn(), m.getInstalledBy(), m.getExecutionTime(), m.isSuccess()));
+        }
+        return appliedMigrations;
+    }
+
+    /**
+     * Reads the epoch of the metadata table, after the pending bump of this DAO completed. The epoch is the sum of the
+     * epoch counter and of the installed rank counter still bumped by the writers running earlier versions.
+     *
+     * @return The epoch, {@code 0} if no migration was recorded since the counters exist.
+     */
+    private long readEpoch() {
+        awaitEpochBump();
+
+        PreparedStatement statement = cachePs.prepare(
+                "SELECT count FROM " + keyspace.getName() + "." + tableName + COUNTS_TABLE_NAME_SUFFIX +
+                        " WHERE name IN (?, ?);");
+        statement.setConsistencyLevel(this.historyReadConsistency);
+        statement.setIdempotent(true);
+        long epoch = 0;
+        for (Row row : session.execute(statement.bind(EPOCH_COUNTER, LEGACY_INSTALLED_RANK_COUNTER)).all()) {
+            epoch += row.getLong("count");
+        }
+        return epoch;
+    }
+
+    /**
+     * Bumps the epoch counter of the metadata table without waiting for the result. A failure is only logged: the
+     * DAOs caching the history then keep it until the next bump, and this DAO reloads it at its next read.
+     */
+    private void bumpEpoch() {
+        awaitEpochBump();
+        PreparedStatement statement = cachePs.prepare(
+                "UPDATE " + keyspace.getName() + "." + tableName + COUNTS_TABLE_NAME_SUFFIX +
+                        " SET count = count + 1 WHERE name = ?;");
+        statement.setConsistencyLevel(this.historyWriteConsistency);
+        ResultSetFuture future = session.executeAsync(statement.bind(EPOCH_COUNTER));
+        Futures.addCallback(future, new FutureCallback<ResultSet>() {
+            @Override
+            public void onSuccess(ResultSet result) {
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                LOG.warn("Unable to bump the epoch of schema version table " + tableName
+                        + ", other instances may not notice the recorded migration: " + t.getMessage());
+            }
+        });
+        pendingEpochBump = future;
+    }
+
+    /**
+     * Waits for the pending epoch bump of this DAO, if any, so that the epoch read next includes it. Its failure was
+     * already logged.
+     */
+    private void awaitEpochBump() {
+        if (pendingEpochBump != null) {
+            try {
+                Uninterruptibles.getUninterruptibly(pendingEpochBump);
+            } catch (ExecutionException e) {
+                LOG.debug("Ignoring failed epoch bump: " + e.getCause());
+            }
+            pendingEpochBump = null;
+        }
+    }
+
+    /**
+     * Reads the applied migrations from the metadata table.
+     *
+     * @return The applied migrations, sorted by version.
+     */
+    private List<AppliedMigration> readAppliedMigrations() {
+
+        boolean withInstalledSeq = installedSeqColumnExists();
+        Select.Selection selection = QueryBuilder
                 .select()
-                .column("version_rank")
                 .column("installed_rank")
                 .column("version")
                 .column("description")
@@ -167,111 +431,194 @@ public class SchemaVersionDAO {
                 .column("installed_on")
                 .column("installed_by")
                 .column("execution_time")
-                .column("success")
-                .from(keyspace.getName(), tableName);
-
-        select.setConsistencyLevel(this.consistencyLevel);
-        ResultSet results = session.execute(select);
-        List<AppliedMigration> resultsList = new ArrayList<>();
-        for (Row row : results) {
-            resultsList.add(new AppliedMigration(
-                    row.getInt("version_rank"),
-                    row.getInt("installed_rank"),
-                    MigrationVersion.fromVersion(row.getString("version")),
-                    row.getString("description"),
-                    MigrationType.valueOf(row.getString("type")),
-                    row.getString("script"),
-                    row.isNull("checksum") ? null : row.getInt("checksum"),
-                    row.getTimestamp("installed_on"),
-                    row.getString("installed_by"),
-                    row.getInt("execution_time"),
-                    row.getBool("success")
-            ));
-        }
-
-        //order by version_rank not necessary here as it eventually gets saved in TreeMap that uses natural ordering
+                .column("success");
+        if (withInstalledSeq) {
+            selection.column("installed_seq");
+        }
+        Select select = selection.from(keyspace.getName(), tableName);
+
+        select.setConsistencyLevel(this.historyReadConsistency);
+        select.setIdempotent(true);
+        List<Row> rows = session.execute(select).all();
+
+        // Rows written before installed_seq existed keep their stored installed rank,
+        // the others are ranked after them in the order the coordinators assigned their timeuuid
+        Map<Row, Integer> installedRanks = new IdentityHashMap<>();
+        int maxStoredInstalledRank = 0;
+        List<Row> sequencedRows = new ArrayList<>();
+        for (Row row : rows) {
+            if (row.isNull("installed_rank")) {
+                sequencedRows.add(row);
+            } else {
+                int installedRank = row.getInt("installed_rank");
+                maxStoredInstalledRank = Math.max(maxStoredInstalledRank, installedRank);
+                installedRanks.put(row, installedRank);
+            }
+        }
+        if (withInstalledSeq) {
+            Collections.sort(sequencedRows, new Comparator<Row>() {
+                @Override
+                public int compare(Row r1, Row r2) {
+                    return compareTimeUUIDs(r1.getUUID("installed_seq"), r2.getUUID("installed_seq"));
+                }
+            });
+        }
+        int installedRank = maxStoredInstalledRank;
+        for (Row row : sequencedRows) {
+            installedRanks.put(row, ++installedRank);
+        }
+
+        // The version rank is the position of the version among all recorded versions
+        List<Pair<MigrationVersion, Row>> versionedRows = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            versionedRows.add(Pair.of(MigrationVersion.fromVersion(row.getString("version")), row));
+        }
+        Collections.sort(versionedRows, new Comparator<Pair<MigrationVersion, Row>>() {
+            @Override
+            public int compare(Pair<MigrationVersion, Row> p1, Pair<MigrationVersion, Row> p2) {
+                return p1.getLeft().compareTo(p2.getLeft());
+            }
+        });
+
+        List<AppliedMigration> resultsList = new ArrayList<>(rows.size());
+        for (int i = 0; i < versionedRows.size(); i++) {
+            Row row = versionedRows.get(i).getRight();
+            resultsList.add(toAppliedMigration(row, versionedRows.get(i).getLeft(), i + 1, installedRanks.get(row)));
+        }
 
         return resultsList;
     }
 
+    private AppliedMigration toAppliedMigration(Row row, MigrationVersion version, int versionRank, int installedRank) {
+        return new AppliedMigration(
+                versionRank,
+                installedRank,
+                version,
+                row.getString("description"),
+                MigrationType.valueOf(row.getString("type")),
+                row.getString("script"),
+                row.isNull("checksum") ? null : row.getInt("checksum"),
+                row.getTimestamp("installed_on"),
+                row.getString("installed_by"),
+                row.getInt("execution_time"),
+                row.getBool("success")
+        );
+    }
+
     /**
-     * Calculates the installed rank for the new migration to be inserted.
-     *
-     * @return The installed rank.
+     * Orders timeuuids by their timestamp, then by clock sequence and node to break ties consistently.
+     * {@code null} is ordered first.
      */
-    private int calculateInstalledRank() {
-        Statement statement = new SimpleStatement(
-                "UPDATE " + keyspace.getName() + "." + tableName + COUNTS_TABLE_NAME_SUFFIX +
-                        " SET count = count + 1" +
-                        "WHERE name = 'installed_rank';");
-        session.execute(statement);
-        Select select = QueryBuilder
-                .select("count")
-                .from(tableName + COUNTS_TABLE_NAME_SUFFIX);
-        select.where(eq("name", "installed_rank"));
-        select.setConsistencyLevel(this.consistencyLevel);
-        ResultSet result = session.execute(select);
-        return (int) result.one().getLong("count");
+    private static int compareTimeUUIDs(UUID u1, UUID u2) {
+        if (u1 == null || u2 == null) {
+            return u1 == null ? (u2 == null ? 0 : -1) : 1;
+        }
+        int result = Long.compare(u1.timestamp(), u2.timestamp());
+        if (result == 0) {
+            result = Integer.compare(u1.clockSequence(), u2.clockSequence());
+        }
+        if (result == 0) {
+            result = Long.compare(u1.node(), u2.node());
+        }
+        return result;
     }
 
-    class MigrationMetaHolder {
-        private int versionRank;
+    /**
+     * Reads the digest of the applied migrations recorded by the last migration run, with a single point read.
+     *
+     * @return The recorded digest, {@code null} if none was recorded.
+     */
+    public MigrationDigest findMigrationDigest() {
+        if (!stateTableExists()) {
+            return null;
+        }
 
-        public MigrationMetaHolder(int versionRank) {
-            this.versionRank = versionRank;
+        PreparedStatement statement = cachePs.prepare(
+                "SELECT bucket_hashes, watermark FROM " + keyspace.getName() + "." + tableName + STATE_TABLE_NAME_SUFFIX +
+                        " WHERE name = ?;");
+        statement.setConsistencyLevel(this.historyReadConsistency);
+        statement.setIdempotent(true);
+        Row row = session.execute(statement.bind(DIGEST_STATE)).one();
+        if (row == null) {
+            return null;
         }
 
-        public int getVersionRank() {
-            return versionRank;
+        List<Long> storedBucketHashes = row.getList("bucket_hashes", Long.class);
+        if (storedBucketHashes.size() != MigrationDigest.BUCKET_COUNT) {
+            LOG.debug("Ignoring digest with " + storedBucketHashes.size() + " buckets in " + tableName + STATE_TABLE_NAME_SUFFIX);
+            return null;
         }
+        long[] bucketHashes = new long[storedBucketHashes.size()];
+        for (int i = 0; i < bucketHashes.length; i++) {
+            bucketHashes[i] = storedBucketHashes.get(i);
+        }
+        return new MigrationDigest(bucketHashes, MigrationVersion.fromVersion(row.getString("watermark")));
     }
 
     /**
-     * Calculate the rank for this new version about to be inserted.
+     * Records the digest of the applied migrations, replacing the previous one.
      *
-     * @param version The version to calculated for.
-     * @return The rank.
+     * @param digest The digest of the applied migrations.
      */
-    private int calculateVersionRank(MigrationVersion version) {
-        Statement statement = QueryBuilder
-                .select()
-                .column("version")
-                .column("version_rank")
-                .from(keyspace.getName(), tableName);
-        statement.setConsistencyLevel(this.consistencyLevel);
-        ResultSet versionRows = session.execute(statement);
-
-        List<MigrationVersion> migrationVersions = new ArrayList<>();
-        HashMap<String, MigrationMetaHolder> migrationMetaHolders = new HashMap<>();
-        for (Row versionRow : versionRows) {
-            migrationVersions.add(MigrationVersion.fromVersion(versionRow.getString("version")));
-            migrationMetaHolders.put(versionRow.getString("version"), new MigrationMetaHolder(
-                    versionRow.getInt("version_rank")
-            ));
-        }
-
-        Collections.sort(migrationVersions);
-
-        BatchStatement batchStatement = new BatchStatement();
-        PreparedStatement preparedStatement = cachePs.prepare(
-                "UPDATE " + keyspace.getName() + "." + tableName +
-                        " SET version_rank = ?" +
-                        " WHERE version = ?;");
-
-        for (int i = 0; i < migrationVersions.size(); i++) {
-            if (version.compareTo(migrationVersions.get(i)) < 0) {
-                for (int z = i; z < migrationVersions.size(); z++) {
-                    String migrationVersionStr = migrationVersions.get(z).getVersion();
-                    batchStatement.add(preparedStatement.bind(
-                            migrationMetaHolders.get(migrationVersionStr).getVersionRank() + 1,
-                            migrationVersionStr));
-                    batchStatement.setConsistencyLevel(this.consistencyLevel);
-                }
-                return i + 1;
-            }
+    public void saveMigrationDigest(MigrationDigest digest) {
+        if (!stateTableExists()) {
+            Statement statement = new SimpleStatement(
+                    "CREATE TABLE IF NOT EXISTS " + keyspace.getName() + "." + tableName + STATE_TABLE_NAME_SUFFIX + " (" +
+                            "  name text," +
+                            "  hash bigint," +
+                            "  watermark text," +
+                            "  bucket_hashes list<bigint>," +
+                            "  PRIMARY KEY (name)" +
+                            ");");
+            statement.setConsistencyLevel(this.ddlConsistency);
+            session.execute(statement);
+            stateTableExists = true;
+        }
+
+        List<Long> bucketHashes = new ArrayList<>(MigrationDigest.BUCKET_COUNT);
+        for (long bucketHash : digest.getBucketHashes()) {
+            bucketHashes.add(bucketHash);
+        }
+        PreparedStatement statement = cachePs.prepare(
+                "INSERT INTO " + keyspace.getName() + "." + tableName + STATE_TABLE_NAME_SUFFIX +
+                        " (name, hash, watermark, bucket_hashes) VALUES (?, ?, ?, ?);");
+        statement.setConsistencyLevel(this.historyWriteConsistency);
+        session.execute(statement.bind(DIGEST_STATE, digest.getHash(), digest.getWatermark().getVersion(), bucketHashes));
+        LOG.debug("Recorded migration digest " + digest + " in " + tableName + STATE_TABLE_NAME_SUFFIX);
+    }
+
+    private boolean stateTableExists() {
+        if (!stateTableExists) {
+            KeyspaceMetadata keyspaceMetadata = session.getCluster().getMetadata().getKeyspace(keyspace.getName());
+            stateTableExists = keyspaceMetadata != null
+                    && keyspaceMetadata.getTable(tableName + STATE_TABLE_NAME_SUFFIX) != null;
+        }
+        return stateTableExists;
+    }
+
+    /**
+     * Adds the installed_seq column to metadata tables created by earlier versions. Their rows keep their stored
+     * installed rank.
+     */
+    private void addInstalledSeqColumnIfNotExists() {
+        if (installedSeqColumnExists()) {
+            return;
         }
-        session.execute(batchStatement);
 
-        return migrationVersions.size() + 1;
+        LOG.info("Upgrading schema version table " + tableName + " with column installed_seq");
+        Statement statement = new SimpleStatement(
+                "ALTER TABLE " + keyspace.getName() + "." + tableName + " ADD installed_seq timeuuid;");
+        statement.setConsistencyLevel(this.ddlConsistency);
+        session.execute(statement);
+        installedSeqColumnExists = true;
+    }
+
+    private boolean installedSeqColumnExists() {
+        if (!installedSeqColumnExists) {
+            KeyspaceMetadata keyspaceMetadata = session.getCluster().getMetadata().getKeyspace(keyspace.getName());
+            TableMetadata tableMetadata = keyspaceMetadata == null ? null : keyspaceMetadata.getTable(tableName);
+            installedSeqColumnExists = tableMetadata != null && tableMetadata.getColumn("installed_seq") != null;
+        }
+        return installedSeqColumnExists;
     }
 }
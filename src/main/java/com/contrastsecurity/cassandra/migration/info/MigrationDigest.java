@@ -0,0 +1,183 @@
+package com.contrastsecurity.cassandra.migration.info;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Digest of a set of migrations: a two level hash tree over their versions and checksums, and the highest version
+ * of the set as watermark.
+ *
+ * <p>Each migration is hashed into one of {@link #BUCKET_COUNT} buckets chosen by its version. A bucket hash is the
+ * sum of the hashes of its migrations, so it does not depend on the order they were applied in. The root hash
+ * combines the bucket hashes. Two digests with a different root hash point at the buckets where the sets diverge.</p>
+ */
+public class MigrationDigest {
+    public static final int BUCKET_COUNT = 16;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long[] bucketHashes;
+    private final MigrationVersion watermark;
+    private final long hash;
+
+    /**
+     * Creates a digest from its stored form.
+     *
+     * @param bucketHashes The {@link #BUCKET_COUNT} bucket hashes.
+     * @param watermark    The highest version of the set, {@link MigrationVersion#EMPTY} for an empty set.
+     */
+    public MigrationDigest(long[] bucketHashes, MigrationVersion watermark) {
+        if (bucketHashes.length != BUCKET_COUNT) {
+            throw new IllegalArgumentException("Expected " + BUCKET_COUNT + " bucket hashes, got " + bucketHashes.length);
+        }
+        this.bucketHashes = bucketHashes.clone();
+        this.watermark = watermark;
+
+        long h = FNV_OFFSET_BASIS;
+        for (long bucketHash : bucketHashes) {
+            h = mix(h ^ bucketHash) * FNV_PRIME;
+        }
+        this.hash = h;
+    }
+
+    /**
+     * Computes the digest of the resolved migrations up to this target.
+     *
+     * @param resolvedMigrations The resolved migrations.
+     * @param target             The target version.
+     * @return The digest.
+     */
+    public static MigrationDigest ofResolved(Collection<ResolvedMigration> resolvedMigrations, MigrationVersion target) {
+        long[] bucketHashes = new long[BUCKET_COUNT];
+        MigrationVersion watermark = MigrationVersion.EMPTY;
+        for (ResolvedMigration resolvedMigration : resolvedMigrations) {
+            MigrationVersion version = resolvedMigration.getVersion();
+            if (version.compareTo(target) > 0) {
+                continue;
+            }
+            bucketHashes[bucketOf(version)] += hashOf(version, resolvedMigration.getChecksum());
+            if (version.compareTo(watermark) > 0) {
+                watermark = version;
+            }
+        }
+        return new MigrationDigest(bucketHashes, watermark);
+    }
+
+    /**
+     * Computes the digest of the successfully applied migrations.
+     *
+     * @param appliedMigrations The applied migrations.
+     * @return The digest.
+     */
+    public static MigrationDigest ofApplied(Collection<AppliedMigration> appliedMigrations) {
+        long[] bucketHashes = new long[BUCKET_COUNT];
+        MigrationVersion watermark = MigrationVersion.EMPTY;
+        for (AppliedMigration appliedMigration : appliedMigrations) {
+            if (!appliedMigration.isSuccess()) {
+                continue;
+            }
+            MigrationVersion version = appliedMigration.getVersion();
+            bucketHashes[bucketOf(version)] += hashOf(version, appliedMigration.getChecksum());
+            if (version.compareTo(watermark) > 0) {
+                watermark = version;
+            }
+        }
+        return new MigrationDigest(bucketHashes, watermark);
+    }
+
+    /**
+     * @param version A migration version.
+     * @return The bucket of this version.
+     */
+    public static int bucketOf(MigrationVersion version) {
+        return (int) (mix(fnv(version.toString())) >>> 60);
+    }
+
+    private static long hashOf(MigrationVersion version, Integer checksum) {
+        long h = fnv(version.toString());
+        h = (h ^ (checksum == null ? 0x9e3779b97f4a7c15L : checksum)) * FNV_PRIME;
+        return mix(h);
+    }
+
+    private static long fnv(String value) {
+        long h = FNV_OFFSET_BASIS;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xff)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    /**
+     * Final avalanche step of MurmurHash3.
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * @return The root hash of the tree.
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * @return The highest version of the set.
+     */
+    public MigrationVersion getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * @return The bucket hashes.
+     */
+    public long[] getBucketHashes() {
+        return bucketHashes.clone();
+    }
+
+    /**
+     * @param other Another digest.
+     * @return The buckets whose hash differs between both digests.
+     */
+    public List<Integer> divergingBuckets(MigrationDigest other) {
+        List<Integer> buckets = new ArrayList<>();
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (bucketHashes[i] != other.bucketHashes[i]) {
+                buckets.add(i);
+            }
+        }
+        return buckets;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        MigrationDigest that = (MigrationDigest) o;
+        return hash == that.hash && watermark.equals(that.watermark) && Arrays.equals(bucketHashes, that.bucketHashes);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return Long.toHexString(hash) + "@" + watermark;
+    }
+}
@@ -36,6 +36,11 @@ public class MigrationInfo implements Comparable<MigrationInfo> {
      */
     private final MigrationInfoContext context;
 
+    /**
+     * The state of the migration, computed on first access, once the context is complete.
+     */
+    private MigrationState state;
+
     /**
      * Creates a new MigrationInfoImpl.
      *
@@ -100,6 +105,13 @@ public class MigrationInfo implements Comparable<MigrationInfo> {
     }
 
     public MigrationState getState() {
+        if (state == null) {
+            state = computeState();
+        }
+        return state;
+    }
+
+    private MigrationState computeState() {
         if (appliedMigration == null) {
             if (resolvedMigration.getVersion().compareTo(context.baseline) < 0) {
                 return MigrationState.BELOW_BASELINE;
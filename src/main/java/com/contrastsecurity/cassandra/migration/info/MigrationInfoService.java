@@ -18,10 +18,35 @@ package com.contrastsecurity.cassandra.migration.info;
 import com.contrastsecurity.cassandra.migration.config.MigrationType;
 import com.contrastsecurity.cassandra.migration.dao.SchemaVersionDAO;
 import com.contrastsecurity.cassandra.migration.resolver.MigrationResolver;
+import com.contrastsecurity.cassandra.migration.resolver.ResolvedMigrationComparator;
 
 import java.util.*;
 
 public class MigrationInfoService {
+    private static final List<MigrationState> STATES_APPLIED = new ArrayList<MigrationState>();
+    private static final List<MigrationState> STATES_RESOLVED = new ArrayList<MigrationState>();
+    private static final List<MigrationState> STATES_FAILED = new ArrayList<MigrationState>();
+
+    static {
+        for (MigrationState state : MigrationState.values()) {
+            if (state.isApplied()) {
+                STATES_APPLIED.add(state);
+            }
+            if (state.isResolved()) {
+                STATES_RESOLVED.add(state);
+            }
+            if (state.isFailed()) {
+                STATES_FAILED.add(state);
+            }
+        }
+    }
+
+    private static final Comparator<AppliedMigration> APPLIED_MIGRATION_COMPARATOR = new Comparator<AppliedMigration>() {
+        @Override
+        public int compare(AppliedMigration o1, AppliedMigration o2) {
+            return o1.getVersion().compareTo(o2.getVersion());
+        }
+    };
 
     private final MigrationResolver migrationResolver;
 
@@ -50,6 +75,16 @@ public class MigrationInfoService {
      */
     private List<MigrationInfo> migrationInfos;
 
+    /**
+     * The migration infos of the last refresh, by state, in version order.
+     */
+    private Map<MigrationState, List<MigrationInfo>> migrationInfosByState;
+
+    /**
+     * The latest applied migration at the last refresh, {@code null} if none.
+     */
+    private MigrationInfo current;
+
     public MigrationInfoService(MigrationResolver migrationResolver, SchemaVersionDAO schemaVersionDAO, MigrationVersion target, boolean outOfOrder, boolean pendingOrFuture) {
         this.migrationResolver = migrationResolver;
         this.schemaVersionDAO = schemaVersionDAO;
@@ -67,6 +102,22 @@ public class MigrationInfoService {
 
         migrationInfos = mergeAvailableAndAppliedMigrations(availableMigrations, appliedMigrations);
 
+        // The state of each migration is computed once here, and the accessors only read the buckets
+        migrationInfosByState = new EnumMap<MigrationState, List<MigrationInfo>>(MigrationState.class);
+        current = null;
+        for (MigrationInfo migrationInfo : migrationInfos) {
+            MigrationState state = migrationInfo.getState();
+            List<MigrationInfo> bucket = migrationInfosByState.get(state);
+            if (bucket == null) {
+                bucket = new ArrayList<MigrationInfo>();
+                migrationInfosByState.put(state, bucket);
+            }
+            bucket.add(migrationInfo);
+            if (state.isApplied()) {
+                current = migrationInfo;
+            }
+        }
+
         if (MigrationVersion.CURRENT == target) {
             target = current().getVersion();
         }
@@ -75,9 +126,12 @@ public class MigrationInfoService {
     /**
      * Merges the available and the applied migrations to produce one fully aggregated and consolidated list.
      *
+     * <p>Both sides are sorted by version and merged in a single pass. When a side holds several migrations with the
+     * same version, the last one wins.</p>
+     *
      * @param resolvedMigrations The available migrations.
      * @param appliedMigrations  The applied migrations.
-     * @return The complete list of migrations.
+     * @return The complete list of migrations, sorted by version.
      */
     /* private -> testing */
     List<MigrationInfo> mergeAvailableAndAppliedMigrations(Collection<ResolvedMigration> resolvedMigrations, List<AppliedMigration> appliedMigrations) {
@@ -86,81 +140,84 @@ public class MigrationInfoService {
         context.pendingOrFuture = pendingOrFuture;
         context.target = target;
 
-        Map<MigrationVersion, ResolvedMigration> resolvedMigrationsMap = new TreeMap<MigrationVersion, ResolvedMigration>();
-        for (ResolvedMigration resolvedMigration : resolvedMigrations) {
-            MigrationVersion version = resolvedMigration.getVersion();
-            if (version.compareTo(context.lastResolved) > 0) {
-                context.lastResolved = version;
-            }
-            resolvedMigrationsMap.put(version, resolvedMigration);
+        List<ResolvedMigration> resolved = new ArrayList<ResolvedMigration>(resolvedMigrations);
+        Comparator<ResolvedMigration> resolvedMigrationComparator = new ResolvedMigrationComparator();
+        Collections.sort(resolved, resolvedMigrationComparator);
+        if (!resolved.isEmpty()) {
+            context.lastResolved = resolved.get(resolved.size() - 1).getVersion();
         }
 
-        Map<MigrationVersion, AppliedMigration> appliedMigrationsMap = new TreeMap<MigrationVersion, AppliedMigration>();
+        List<AppliedMigration> applied = new ArrayList<AppliedMigration>(appliedMigrations);
         for (AppliedMigration appliedMigration : appliedMigrations) {
-            MigrationVersion version = appliedMigration.getVersion();
-            if (version.compareTo(context.lastApplied) > 0) {
-                context.lastApplied = version;
-            }
             if (appliedMigration.getType() == MigrationType.SCHEMA) {
-                context.schema = version;
+                context.schema = appliedMigration.getVersion();
             }
             if (appliedMigration.getType() == MigrationType.BASELINE) {
-                context.baseline = version;
+                context.baseline = appliedMigration.getVersion();
             }
-            appliedMigrationsMap.put(version, appliedMigration);
         }
-
-        Set<MigrationVersion> allVersions = new HashSet<MigrationVersion>();
-        allVersions.addAll(resolvedMigrationsMap.keySet());
-        allVersions.addAll(appliedMigrationsMap.keySet());
-
-        List<MigrationInfo> migrationInfos = new ArrayList<>();
-        for (MigrationVersion version : allVersions) {
-            ResolvedMigration resolvedMigration = resolvedMigrationsMap.get(version);
-            AppliedMigration appliedMigration = appliedMigrationsMap.get(version);
-            migrationInfos.add(new MigrationInfo(resolvedMigration, appliedMigration, context));
+        Collections.sort(applied, APPLIED_MIGRATION_COMPARATOR);
+        if (!applied.isEmpty()) {
+            context.lastApplied = applied.get(applied.size() - 1).getVersion();
         }
 
-        Collections.sort(migrationInfos);
+        // The context is complete: the states of the infos can be computed from now on
+        List<MigrationInfo> migrationInfos = new ArrayList<MigrationInfo>(Math.max(resolved.size(), applied.size()));
+        int r = 0;
+        int a = 0;
+        while (r < resolved.size() || a < applied.size()) {
+            r = lastOfVersion(resolved, r, resolvedMigrationComparator);
+            a = lastOfVersion(applied, a, APPLIED_MIGRATION_COMPARATOR);
+            ResolvedMigration resolvedMigration = r < resolved.size() ? resolved.get(r) : null;
+            AppliedMigration appliedMigration = a < applied.size() ? applied.get(a) : null;
+
+            int compared = resolvedMigration == null ? 1 : appliedMigration == null ? -1
+                    : resolvedMigration.getVersion().compareTo(appliedMigration.getVersion());
+            if (compared < 0) {
+                migrationInfos.add(new MigrationInfo(resolvedMigration, null, context));
+                r++;
+            } else if (compared > 0) {
+                migrationInfos.add(new MigrationInfo(null, appliedMigration, context));
+                a++;
+            } else {
+                migrationInfos.add(new MigrationInfo(resolvedMigration, appliedMigration, context));
+                r++;
+                a++;
+            }
+        }
 
         return migrationInfos;
     }
 
+    /**
+     * Skips the migrations sharing the version of the one at this index, but the last one.
+     *
+     * @param migrations The migrations, sorted by version.
+     * @param index      The index of the current migration.
+     * @param comparator The comparator of the versions of the migrations.
+     * @return The index of the last migration with the same version.
+     */
+    private static <T> int lastOfVersion(List<T> migrations, int index, Comparator<? super T> comparator) {
+        while (index + 1 < migrations.size() && comparator.compare(migrations.get(index), migrations.get(index + 1)) == 0) {
+            index++;
+        }
+        return index;
+    }
+
     public MigrationInfo[] all() {
         return migrationInfos.toArray(new MigrationInfo[migrationInfos.size()]);
     }
 
     public MigrationInfo current() {
-        for (int i = migrationInfos.size() - 1; i >= 0; i--) {
-            MigrationInfo migrationInfo = migrationInfos.get(i);
-            if (migrationInfo.getState().isApplied()) {
-                return migrationInfo;
-            }
-        }
-
-        return null;
+        return current;
     }
 
     public MigrationInfo[] pending() {
-        List<MigrationInfo> pendingMigrations = new ArrayList<MigrationInfo>();
-        for (MigrationInfo migrationInfo : migrationInfos) {
-            if (MigrationState.PENDING == migrationInfo.getState()) {
-                pendingMigrations.add(migrationInfo);
-            }
-        }
-
-        return pendingMigrations.toArray(new MigrationInfo[pendingMigrations.size()]);
+        return withStates(Collections.singletonList(MigrationState.PENDING));
     }
 
     public MigrationInfo[] applied() {
-        List<MigrationInfo> appliedMigrations = new ArrayList<MigrationInfo>();
-        for (MigrationInfo migrationInfo : migrationInfos) {
-            if (migrationInfo.getState().isApplied()) {
-                appliedMigrations.add(migrationInfo);
-            }
-        }
-
-        return appliedMigrations.toArray(new MigrationInfo[appliedMigrations.size()]);
+        return withStates(STATES_APPLIED);
     }
 
     /**
@@ -169,14 +226,7 @@ public class MigrationInfoService {
      * @return The resolved migrations. An empty array if none.
      */
     public MigrationInfo[] resolved() {
-        List<MigrationInfo> resolvedMigrations = new ArrayList<MigrationInfo>();
-        for (MigrationInfo migrationInfo : migrationInfos) {
-            if (migrationInfo.getState().isResolved()) {
-                resolvedMigrations.add(migrationInfo);
-            }
-        }
-
-        return resolvedMigrations.toArray(new MigrationInfo[resolvedMigrations.size()]);
+        return withStates(STATES_RESOLVED);
     }
 
     /**
@@ -185,14 +235,7 @@ public class MigrationInfoService {
      * @return The failed migrations. An empty array if none.
      */
     public MigrationInfo[] failed() {
-        List<MigrationInfo> failedMigrations = new ArrayList<MigrationInfo>();
-        for (MigrationInfo migrationInfo : migrationInfos) {
-            if (migrationInfo.getState().isFailed()) {
-                failedMigrations.add(migrationInfo);
-            }
-        }
-
-        return failedMigrations.toArray(new MigrationInfo[failedMigrations.size()]);
+        return withStates(STATES_FAILED);
     }
 
     /**
@@ -201,15 +244,7 @@ public class MigrationInfoService {
      * @return The future migrations. An empty array if none.
      */
     public MigrationInfo[] future() {
-        List<MigrationInfo> futureMigrations = new ArrayList<MigrationInfo>();
-        for (MigrationInfo migrationInfo : migrationInfos) {
-            if ((migrationInfo.getState() == MigrationState.FUTURE_SUCCESS)
-                    || (migrationInfo.getState() == MigrationState.FUTURE_FAILED)) {
-                futureMigrations.add(migrationInfo);
-            }
-        }
-
-        return futureMigrations.toArray(new MigrationInfo[futureMigrations.size()]);
+        return withStates(Arrays.asList(MigrationState.FUTURE_SUCCESS, MigrationState.FUTURE_FAILED));
     }
 
     /**
@@ -218,14 +253,30 @@ public class MigrationInfoService {
      * @return The out of order migrations. An empty array if none.
      */
     public MigrationInfo[] outOfOrder() {
-        List<MigrationInfo> outOfOrderMigrations = new ArrayList<MigrationInfo>();
-        for (MigrationInfo migrationInfo : migrationInfos) {
-            if (migrationInfo.getState() == MigrationState.OUT_OF_ORDER) {
-                outOfOrderMigrations.add(migrationInfo);
+        return withStates(Collections.singletonList(MigrationState.OUT_OF_ORDER));
+    }
+
+    /**
+     * Collects the infos of the migrations in these states, from their buckets.
+     *
+     * @param states The states.
+     * @return The infos, in version order.
+     */
+    private MigrationInfo[] withStates(List<MigrationState> states) {
+        List<MigrationInfo> result = new ArrayList<MigrationInfo>();
+        int buckets = 0;
+        for (MigrationState state : states) {
+            List<MigrationInfo> bucket = migrationInfosByState.get(state);
+            if (bucket != null) {
+                result.addAll(bucket);
+                buckets++;
             }
         }
-
-        return outOfOrderMigrations.toArray(new MigrationInfo[outOfOrderMigrations.size()]);
+        if (buckets > 1) {
+            // The buckets are each sorted, but interleaved by version
+            Collections.sort(result);
+        }
+        return result.toArray(new MigrationInfo[result.size()]);
     }
 
     /**
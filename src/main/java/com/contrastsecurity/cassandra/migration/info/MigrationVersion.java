@@ -18,10 +18,17 @@ package com.contrastsecurity.cassandra.migration.info;
 import com.contrastsecurity.cassandra.migration.CassandraMigrationException;
 
 import java.math.BigInteger;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * A version of a migration, made of numeric parts separated by dots (or underscores).
+ *
+ * <p>The parts are packed in a {@code long[]}, without trailing zeros, and only versions with parts beyond the range
+ * of a {@code long} fall back to {@link BigInteger}. The hash code is computed once. Versions are immutable and
+ * {@link #fromVersion(String)} interns them, so that the versions of the resolved and applied migrations are parsed
+ * once.</p>
+ */
 public class MigrationVersion implements Comparable<MigrationVersion> {
 
     public static final MigrationVersion EMPTY = new MigrationVersion(null, "<< Empty Schema >>");
@@ -29,38 +36,172 @@ public class MigrationVersion implements Comparable<MigrationVersion> {
     public static final MigrationVersion CURRENT = new MigrationVersion(BigInteger.valueOf(-2), "<< Current Version >>");
 
     private static final String TABLE = "cassandra_migration_version";
-    private List<BigInteger> versionParts;
-    private String displayText;
 
-    private static Pattern splitPattern = Pattern.compile("\\.(?=\\d)");
+    private static final String LATEST_VERSION = Long.toString(Long.MAX_VALUE);
+
+    /**
+     * The maximum number of versions interned by {@link #fromVersion(String)}.
+     */
+    private static final int MAX_INTERNED = 16 * 1024;
+
+    private static final ConcurrentMap<String, MigrationVersion> INTERNED = new ConcurrentHashMap<>();
+
+    /**
+     * The parts of the version, without trailing zeros (but at least one part). {@code null} if a part does not fit in
+     * a long.
+     */
+    private final long[] parts;
+
+    /**
+     * The parts of the version, without trailing zeros, when a part does not fit in a long. {@code null} otherwise.
+     */
+    private final BigInteger[] bigParts;
+
+    private final int hash;
+    private final String displayText;
 
     public MigrationVersion(BigInteger version, String displayText) {
-        List<BigInteger> tmp = new ArrayList<>();
-        tmp.add(version);
+        if (version == null) {
+            this.parts = new long[0];
+            this.bigParts = null;
+        } else if (version.bitLength() < Long.SIZE) {
+            this.parts = new long[]{version.longValue()};
+            this.bigParts = null;
+        } else {
+            this.parts = null;
+            this.bigParts = new BigInteger[]{version};
+        }
         this.displayText = displayText;
-        init(tmp, displayText);
+        this.hash = computeHash();
     }
 
     private MigrationVersion(String version) {
-        String normalizedVersion = version.replace('_', '.');
-        init(tokenize(normalizedVersion), normalizedVersion);
+        this.displayText = version.replace('_', '.');
+
+        // Parsed by hand into longs, with a fallback to BigInteger for the parts that overflow
+        long[] longs = new long[count(displayText, '.') + 1];
+        BigInteger[] bigs = null;
+        int length = 0;
+        int start = 0;
+        for (int i = 0; i <= displayText.length(); i++) {
+            if (i < displayText.length() && displayText.charAt(i) != '.') {
+                continue;
+            }
+            if (i == start) {
+                throw invalidVersion();
+            }
+            long value = 0;
+            for (int j = start; j < i; j++) {
+                int digit = displayText.charAt(j) - '0';
+                if (digit < 0 || digit > 9) {
+                    throw invalidVersion();
+                }
+                if (value > (Long.MAX_VALUE - digit) / 10) {
+                    value = -1;
+                    break;
+                }
+                value = value * 10 + digit;
+            }
+            if (value < 0) {
+                if (bigs == null) {
+                    bigs = new BigInteger[longs.length];
+                    for (int k = 0; k < length; k++) {
+                        bigs[k] = BigInteger.valueOf(longs[k]);
+                    }
+                }
+                try {
+                    bigs[length] = new BigInteger(displayText.substring(start, i));
+                } catch (NumberFormatException e) {
+                    throw invalidVersion();
+                }
+            } else if (bigs != null) {
+                bigs[length] = BigInteger.valueOf(value);
+            }
+            longs[length++] = value;
+            start = i + 1;
+        }
+
+        // Trailing zeros do not count: 1.0 is 1
+        while (length > 1 && (bigs == null ? longs[length - 1] == 0 : bigs[length - 1].signum() == 0)) {
+            length--;
+        }
+        if (bigs == null) {
+            this.parts = length == longs.length ? longs : copyOf(longs, length);
+            this.bigParts = null;
+        } else {
+            this.parts = null;
+            this.bigParts = new BigInteger[length];
+            System.arraycopy(bigs, 0, this.bigParts, 0, length);
+        }
+        this.hash = computeHash();
     }
 
-    private void init(List<BigInteger> versionParts, String displayText) {
-        this.versionParts = versionParts;
-        this.displayText = displayText;
+    private CassandraMigrationException invalidVersion() {
+        return new CassandraMigrationException(
+                "Invalid version containing non-numeric characters. Only 0..9 and . are allowed. Invalid version: "
+                        + displayText);
+    }
+
+    private static int count(String string, char c) {
+        int count = 0;
+        for (int i = 0; i < string.length(); i++) {
+            if (string.charAt(i) == c) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static long[] copyOf(long[] longs, int length) {
+        long[] copy = new long[length];
+        System.arraycopy(longs, 0, copy, 0, length);
+        return copy;
+    }
+
+    /**
+     * Hashes the parts, so that a part has the same hash whether it is held as a long or as a BigInteger.
+     */
+    private int computeHash() {
+        int result = 1;
+        for (int i = 0; i < size(); i++) {
+            int partHash;
+            if (parts != null) {
+                partHash = hash(parts[i]);
+            } else if (bigParts[i].bitLength() < Long.SIZE) {
+                partHash = hash(bigParts[i].longValue());
+            } else {
+                partHash = bigParts[i].hashCode();
+            }
+            result = 31 * result + partHash;
+        }
+        return result;
+    }
+
+    private static int hash(long part) {
+        return (int) (part ^ (part >>> 32));
     }
 
     public static MigrationVersion fromVersion(String version) {
         if ("current".equalsIgnoreCase(version)) return CURRENT;
-        if (LATEST.getVersion().equals(version)) return LATEST;
+        if (LATEST_VERSION.equals(version)) return LATEST;
         if (version == null) return EMPTY;
-        return new MigrationVersion(version);
+
+        MigrationVersion migrationVersion = INTERNED.get(version);
+        if (migrationVersion == null) {
+            migrationVersion = new MigrationVersion(version);
+            if (INTERNED.size() < MAX_INTERNED) {
+                MigrationVersion interned = INTERNED.putIfAbsent(version, migrationVersion);
+                if (interned != null) {
+                    migrationVersion = interned;
+                }
+            }
+        }
+        return migrationVersion;
     }
 
     public String getVersion() {
-        if (this.equals(EMPTY)) return null;
-        if (this.equals(LATEST)) return Long.toString(Long.MAX_VALUE);
+        if (this == EMPTY) return null;
+        if (this == LATEST) return LATEST_VERSION;
         return displayText;
     }
 
@@ -79,12 +220,12 @@ public class MigrationVersion implements Comparable<MigrationVersion> {
 
         MigrationVersion version1 = (MigrationVersion) o;
 
-        return compareTo(version1) == 0;
+        return hash == version1.hash && compareTo(version1) == 0;
     }
 
     @Override
     public int hashCode() {
-        return versionParts == null ? 0 : versionParts.hashCode();
+        return hash;
     }
 
     @Override
@@ -93,16 +234,20 @@ public class MigrationVersion implements Comparable<MigrationVersion> {
             return 1;
         }
 
+        if (this == o) {
+            return 0;
+        }
+
         if (this == EMPTY) {
-            return o == EMPTY ? 0 : Integer.MIN_VALUE;
+            return Integer.MIN_VALUE;
         }
 
         if (this == CURRENT) {
-            return o == CURRENT ? 0 : Integer.MIN_VALUE;
+            return Integer.MIN_VALUE;
         }
 
         if (this == LATEST) {
-            return o == LATEST ? 0 : Integer.MAX_VALUE;
+            return Integer.MAX_VALUE;
         }
 
         if (o == EMPTY) {
@@ -116,11 +261,20 @@ public class MigrationVersion implements Comparable<MigrationVersion> {
         if (o == LATEST) {
             return Integer.MIN_VALUE;
         }
-        final List<BigInteger> elements1 = versionParts;
-        final List<BigInteger> elements2 = o.versionParts;
-        int largestNumberOfElements = Math.max(elements1.size(), elements2.size());
+
+        int largestNumberOfElements = Math.max(size(), o.size());
+        if (parts != null && o.parts != null) {
+            for (int i = 0; i < largestNumberOfElements; i++) {
+                int compared = Long.compare(i < parts.length ? parts[i] : 0, i < o.parts.length ? o.parts[i] : 0);
+                if (compared != 0) {
+                    return compared < 0 ? -1 : 1;
+                }
+            }
+            return 0;
+        }
+
         for (int i = 0; i < largestNumberOfElements; i++) {
-            final int compared = getOrZero(elements1, i).compareTo(getOrZero(elements2, i));
+            int compared = getOrZero(i).compareTo(o.getOrZero(i));
             if (compared != 0) {
                 return compared;
             }
@@ -128,35 +282,18 @@ public class MigrationVersion implements Comparable<MigrationVersion> {
         return 0;
     }
 
-    private BigInteger getOrZero(List<BigInteger> elements, int i) {
-        return i < elements.size() ? elements.get(i) : BigInteger.ZERO;
+    private int size() {
+        return parts != null ? parts.length : bigParts.length;
     }
 
-    public String getTable() {
-        return TABLE;
-    }
-
-    private void setVersion(String version) {
-        String normalizedVersion = version.replace('_', '.');
-        this.versionParts = tokenize(normalizedVersion);
-        this.displayText = normalizedVersion;
+    private BigInteger getOrZero(int i) {
+        if (i >= size()) {
+            return BigInteger.ZERO;
+        }
+        return parts != null ? BigInteger.valueOf(parts[i]) : bigParts[i];
     }
 
-    private List<BigInteger> tokenize(String str) {
-        List<BigInteger> numbers = new ArrayList<>();
-        for (String number : splitPattern.split(str)) {
-            try {
-                numbers.add(new BigInteger(number));
-            } catch (NumberFormatException e) {
-                throw new CassandraMigrationException(
-                        "Invalid version containing non-numeric characters. Only 0..9 and . are allowed. Invalid version: "
-                                + str);
-            }
-        }
-        for (int i = numbers.size() - 1; i > 0; i--) {
-            if (!numbers.get(i).equals(BigInteger.ZERO)) break;
-            numbers.remove(i);
-        }
-        return numbers;
+    public String getTable() {
+        return TABLE;
     }
 }
@@ -18,6 +18,8 @@ package com.contrastsecurity.cassandra.migration.info;
 import com.contrastsecurity.cassandra.migration.config.MigrationType;
 import com.contrastsecurity.cassandra.migration.resolver.MigrationExecutor;
 
+import java.util.Collection;
+
 /**
  * A migration available on the classpath.
  */
@@ -57,6 +59,12 @@ public class ResolvedMigration {
      */
     private MigrationExecutor executor;
 
+    /**
+     * The versions of the migrations this migration depends on, or {@code null} if it depends on every migration with
+     * a lower version.
+     */
+    private Collection<MigrationVersion> dependencies;
+
     public MigrationVersion getVersion() {
         return version;
     }
@@ -135,6 +143,18 @@ public class ResolvedMigration {
         this.executor = executor;
     }
 
+    public Collection<MigrationVersion> getDependencies() {
+        return dependencies;
+    }
+
+    /**
+     * @param dependencies The versions of the migrations this migration depends on, or {@code null} if it depends on
+     *                     every migration with a lower version.
+     */
+    public void setDependencies(Collection<MigrationVersion> dependencies) {
+        this.dependencies = dependencies;
+    }
+
     @SuppressWarnings("NullableProblems")
     public int compareTo(ResolvedMigration o) {
         return version.compareTo(o.version);
@@ -23,6 +23,9 @@ import com.contrastsecurity.cassandra.migration.resolver.cql.CqlMigrationResolve
 import com.contrastsecurity.cassandra.migration.resolver.java.JavaMigrationResolver;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * Facility for retrieving and sorting the available migrations from the classpath through the various migration
@@ -40,6 +43,16 @@ public class CompositeMigrationResolver implements MigrationResolver {
      */
     private List<ResolvedMigration> availableMigrations;
 
+    /**
+     * The cache of resolved Cql migrations, {@code null} if disabled.
+     */
+    private final ResolutionCache resolutionCache;
+
+    /**
+     * The number of threads resolving migrations (default: 1, migrations are resolved on the calling thread).
+     */
+    private int threads = 1;
+
     /**
      * Creates a new CompositeMigrationResolver.
      *
@@ -51,14 +64,56 @@ public class CompositeMigrationResolver implements MigrationResolver {
     public CompositeMigrationResolver(ClassLoader classLoader, ScriptsLocations locations,
                                       String encoding,
                                       MigrationResolver... customMigrationResolvers) {
+        this(classLoader, locations, encoding, 0, customMigrationResolvers);
+    }
+
+    /**
+     * Creates a new CompositeMigrationResolver.
+     *
+     * @param classLoader              The ClassLoader for loading migrations on the classpath.
+     * @param locations                The locations where migrations are located.
+     * @param encoding                 The encoding of Cql migrations.
+     * @param asyncWindow              The maximum number of statements in flight while executing Cql migrations.
+     * @param customMigrationResolvers Custom Migration Resolvers.
+     */
+    public CompositeMigrationResolver(ClassLoader classLoader, ScriptsLocations locations,
+                                      String encoding, int asyncWindow,
+                                      MigrationResolver... customMigrationResolvers) {
+        this(classLoader, locations, encoding, asyncWindow, null, customMigrationResolvers);
+    }
+
+    /**
+     * Creates a new CompositeMigrationResolver.
+     *
+     * @param classLoader              The ClassLoader for loading migrations on the classpath.
+     * @param locations                The locations where migrations are located.
+     * @param encoding                 The encoding of Cql migrations.
+     * @param asyncWindow              The maximum number of statements in flight while executing Cql migrations.
+     * @param resolutionCache          The cache of resolved Cql migrations, {@code null} to disable caching.
+     * @param customMigrationResolvers Custom Migration Resolvers.
+     */
+    public CompositeMigrationResolver(ClassLoader classLoader, ScriptsLocations locations,
+                                      String encoding, int asyncWindow, ResolutionCache resolutionCache,
+                                      MigrationResolver... customMigrationResolvers) {
+        this.resolutionCache = resolutionCache;
         for (ScriptsLocation location : locations.getLocations()) {
-            migrationResolvers.add(new CqlMigrationResolver(classLoader, location, encoding));
-            migrationResolvers.add(new JavaMigrationResolver(classLoader, location));
+            migrationResolvers.add(new CqlMigrationResolver(classLoader, location, encoding, asyncWindow, resolutionCache));
+            migrationResolvers.add(new JavaMigrationResolver(classLoader, location, encoding));
         }
 
         migrationResolvers.addAll(Arrays.asList(customMigrationResolvers));
     }
 
+    /**
+     * Sets the number of threads resolving migrations. The resolvers run concurrently, and the Cql resolvers further
+     * split their scripts between the threads.
+     *
+     * @param threads The number of threads (default: 1, migrations are resolved on the calling thread).
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
     /**
      * Finds all available migrations using all migration resolvers (cql, java, ...).
      *
@@ -82,14 +137,53 @@ public class CompositeMigrationResolver implements MigrationResolver {
      * @throws CassandraMigrationException when the available migrations have overlapping versions.
      */
     private List<ResolvedMigration> doFindAvailableMigrations() throws CassandraMigrationException {
-        List<ResolvedMigration> migrations = new ArrayList<ResolvedMigration>(collectMigrations(migrationResolvers));
+        List<ResolvedMigration> migrations = new ArrayList<ResolvedMigration>(collectMigrations(migrationResolvers, threads));
         Collections.sort(migrations, new ResolvedMigrationComparator());
 
         checkForIncompatibilities(migrations);
 
+        if (resolutionCache != null) {
+            resolutionCache.save();
+        }
         return migrations;
     }
 
+    /**
+     * Collects all the migrations for all migration resolvers, running the resolvers concurrently in a fork/join pool
+     * of this many threads. Their results are collected in the order of the resolvers.
+     *
+     * @param migrationResolvers The migration resolvers to check.
+     * @param threads            The number of threads.
+     * @return All migrations.
+     */
+    /* private -> for testing */
+    static Collection<ResolvedMigration> collectMigrations(Collection<MigrationResolver> migrationResolvers, int threads) {
+        if (threads <= 1) {
+            return collectMigrations(migrationResolvers);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<ForkJoinTask<Collection<ResolvedMigration>>> tasks = new ArrayList<ForkJoinTask<Collection<ResolvedMigration>>>();
+            for (final MigrationResolver migrationResolver : migrationResolvers) {
+                tasks.add(pool.submit(new Callable<Collection<ResolvedMigration>>() {
+                    @Override
+                    public Collection<ResolvedMigration> call() {
+                        return migrationResolver.resolveMigrations();
+                    }
+                }));
+            }
+
+            Set<ResolvedMigration> migrations = new HashSet<ResolvedMigration>();
+            for (ForkJoinTask<Collection<ResolvedMigration>> task : tasks) {
+                migrations.addAll(task.join());
+            }
+            return migrations;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
     /**
      * Collects all the migrations for all migration resolvers.
      *
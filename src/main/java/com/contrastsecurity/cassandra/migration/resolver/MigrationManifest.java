@@ -0,0 +1,280 @@
+package com.contrastsecurity.cassandra.migration.resolver;
+
+import com.contrastsecurity.cassandra.migration.CassandraMigrationException;
+import com.contrastsecurity.cassandra.migration.config.MigrationType;
+import com.contrastsecurity.cassandra.migration.config.ScriptsLocation;
+import com.contrastsecurity.cassandra.migration.info.MigrationVersion;
+import com.contrastsecurity.cassandra.migration.info.ResolvedMigration;
+import com.contrastsecurity.cassandra.migration.logging.Log;
+import com.contrastsecurity.cassandra.migration.logging.LogFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Manifest of the migrations of a classpath location, generated at build time, so that they are resolved at runtime
+ * without scanning the classpath nor reading the scripts.
+ *
+ * <p>The manifest is a text file named {@value #FILE_NAME} in the location, with one tab separated line per migration:
+ * its type, its script (relative to the location) or class, its version, description, checksum and dependencies. The
+ * manifests of every classpath entry holding the location are merged, so each artifact contributing migrations to the
+ * location must ship one: when an entry holding the location has none, the location is scanned instead, with a
+ * warning. A migration listed by several manifests is only kept once. Manifests generated for another encoding are
+ * ignored.</p>
+ */
+public class MigrationManifest {
+    private static final Log LOG = LogFactory.getLog(MigrationManifest.class);
+
+    /**
+     * The name of the manifest file in its location.
+     */
+    public static final String FILE_NAME = "cassandra-migration.manifest";
+
+    private static final String HEADER = "# cassandra-migration manifest v1 ";
+
+    private final List<Entry> entries;
+
+    private MigrationManifest(List<Entry> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Loads the manifests of this location.
+     *
+     * @param classLoader The ClassLoader to look the manifests up with.
+     * @param location    The location of the migrations.
+     * @param encoding    The encoding of the Cql migrations.
+     * @return The merged manifests, or {@code null} if the location has no usable manifest and must be scanned.
+     */
+    public static MigrationManifest load(ClassLoader classLoader, ScriptsLocation location, String encoding) {
+        if (!location.isClassPath()) {
+            return null;
+        }
+
+        String resourceName = location.getPath().isEmpty() ? FILE_NAME : location.getPath() + "/" + FILE_NAME;
+        Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+        try {
+            List<URL> urls = Collections.list(classLoader.getResources(resourceName));
+            if (urls.isEmpty()) {
+                return null;
+            }
+            URL withoutManifest = findEntryWithoutManifest(classLoader, location, urls);
+            if (withoutManifest != null) {
+                LOG.warn("Scanning location " + location + " as " + withoutManifest
+                        + " holds it without a migration manifest");
+                return null;
+            }
+            for (URL url : urls) {
+                if (!read(url, encoding, entries)) {
+                    LOG.debug("Ignoring migration manifest " + url + " generated by another version or for another encoding");
+                    return null;
+                }
+                LOG.debug("Loaded migration manifest " + url);
+            }
+        } catch (IOException | RuntimeException e) {
+            throw new CassandraMigrationException("Unable to read migration manifest of location: " + location, e);
+        }
+        return new MigrationManifest(new ArrayList<Entry>(entries.values()));
+    }
+
+    /**
+     * Finds a classpath entry holding this location without a manifest, whose migrations would be missed by the
+     * manifests of the other entries. Only the entries listing the location as a directory can be found this way.
+     *
+     * @param classLoader The ClassLoader to look the location up with.
+     * @param location    The location of the migrations.
+     * @param manifests   The manifests of the location.
+     * @return The location in the entry without a manifest, or {@code null} if every entry found has one.
+     */
+    private static URL findEntryWithoutManifest(ClassLoader classLoader, ScriptsLocation location, List<URL> manifests)
+            throws IOException {
+        Set<String> covered = new HashSet<String>();
+        for (URL manifest : manifests) {
+            String url = manifest.toExternalForm();
+            covered.add(url.substring(0, url.length() - FILE_NAME.length()));
+        }
+
+        Enumeration<URL> directories = classLoader.getResources(location.getPath());
+        while (directories.hasMoreElements()) {
+            URL directory = directories.nextElement();
+            String url = directory.toExternalForm();
+            if (!covered.contains(url.endsWith("/") ? url : url + "/")) {
+                return directory;
+            }
+        }
+        return null;
+    }
+
+    private static boolean read(URL url, String encoding, Map<String, Entry> entries) throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+            if (!(HEADER + encoding).equals(reader.readLine())) {
+                return false;
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 6) {
+                    throw new IOException("Corrupt migration manifest " + url + ": " + line);
+                }
+                Entry entry = new Entry(MigrationType.valueOf(fields[0]), ResolutionCache.unescape(fields[1]),
+                        MigrationVersion.fromVersion(ResolutionCache.unescape(fields[2])),
+                        ResolutionCache.unescape(fields[3]), fields[4].isEmpty() ? null : Integer.valueOf(fields[4]),
+                        ResolutionCache.parseDependencies(fields[5]));
+                // The same script or class listed by the manifest of another classpath entry
+                String key = entry.type + "\t" + entry.script;
+                if (!entries.containsKey(key)) {
+                    entries.put(key, entry);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the manifest of these migrations, resolved from this location, below this directory.
+     *
+     * @param outputDirectory The root of the classpath entry to write the manifest to, such as {@code target/classes}.
+     * @param location        The classpath location the migrations were resolved from.
+     * @param encoding        The encoding of the Cql migrations.
+     * @param migrations      The resolved Cql and Java migrations.
+     * @return The manifest file.
+     */
+    public static File write(File outputDirectory, ScriptsLocation location, String encoding,
+                             Collection<ResolvedMigration> migrations) {
+        File file = new File(outputDirectory, location.getPath().isEmpty() ? FILE_NAME : location.getPath() + "/" + FILE_NAME);
+        try {
+            File directory = file.getParentFile();
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Unable to create directory " + directory);
+            }
+            try (BufferedWriter writer = new BufferedWriter(
+                    new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+                writer.write(HEADER + encoding);
+                writer.newLine();
+                for (ResolvedMigration migration : migrations) {
+                    writer.write(migration.getType().name() + "\t" + ResolutionCache.escape(migration.getScript()) + "\t"
+                            + ResolutionCache.escape(migration.getVersion().toString()) + "\t"
+                            + ResolutionCache.escape(migration.getDescription()) + "\t"
+                            + (migration.getChecksum() == null ? "" : migration.getChecksum()) + "\t"
+                            + ResolutionCache.formatDependencies(migration.getDependencies()));
+                    writer.newLine();
+                }
+            }
+        } catch (IOException e) {
+            throw new CassandraMigrationException("Unable to write migration manifest " + file, e);
+        }
+        return file;
+    }
+
+    /**
+     * Checks whether this migration, resolved from this location, was found in this directory rather than in another
+     * classpath entry holding the location, such as a dependency.
+     *
+     * @param outputDirectory The root of the classpath entry the manifest is written to.
+     * @param location        The classpath location the migration was resolved from.
+     * @param migration       The resolved Cql or Java migration.
+     * @return {@code true} if its script or class file is in the directory.
+     */
+    public static boolean isIn(File outputDirectory, ScriptsLocation location, ResolvedMigration migration) {
+        String path;
+        if (migration.getType() == MigrationType.JAVA_DRIVER) {
+            path = migration.getScript().replace('.', '/') + ".class";
+        } else {
+            path = location.getPath().isEmpty() ? migration.getScript() : location.getPath() + "/" + migration.getScript();
+        }
+        return new File(outputDirectory, path).isFile();
+    }
+
+    /**
+     * @param type The type of migrations.
+     * @return The entries of the migrations of this type.
+     */
+    public List<Entry> getEntries(MigrationType type) {
+        List<Entry> result = new ArrayList<Entry>();
+        for (Entry entry : entries) {
+            if (entry.type == type) {
+                result.add(entry);
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * A migration listed in a manifest.
+     */
+    public static class Entry {
+        private final MigrationType type;
+        private final String script;
+        private final MigrationVersion version;
+        private final String description;
+        private final Integer checksum;
+        private final Collection<MigrationVersion> dependencies;
+
+        Entry(MigrationType type, String script, MigrationVersion version, String description, Integer checksum,
+              Collection<MigrationVersion> dependencies) {
+            this.type = type;
+            this.script = script;
+            this.version = version;
+            this.description = description;
+            this.checksum = checksum;
+            this.dependencies = dependencies;
+        }
+
+        /**
+         * @return The script of a Cql migration, relative to its location, or the class name of a Java migration.
+         */
+        public String getScript() {
+            return script;
+        }
+
+        public MigrationVersion getVersion() {
+            return version;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public Integer getChecksum() {
+            return checksum;
+        }
+
+        public Collection<MigrationVersion> getDependencies() {
+            return dependencies;
+        }
+
+        /**
+         * Creates the resolved migration described by this entry, without its physical location and executor.
+         *
+         * @return The resolved migration.
+         */
+        public ResolvedMigration toResolvedMigration() {
+            ResolvedMigration migration = new ResolvedMigration();
+            migration.setType(type);
+            migration.setScript(script);
+            migration.setVersion(version);
+            migration.setDescription(description);
+            migration.setChecksum(checksum);
+            migration.setDependencies(dependencies);
+            return migration;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.contrastsecurity.cassandra.migration.resolver;
+
+import com.contrastsecurity.cassandra.migration.info.MigrationVersion;
+import com.contrastsecurity.cassandra.migration.logging.Log;
+import com.contrastsecurity.cassandra.migration.logging.LogFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * On-disk cache of the information resolved from migration scripts, so that unchanged scripts are neither read nor
+ * hashed again.
+ *
+ * <p>Entries are keyed by the location of the script and only used when the fingerprint of the file holding it (path,
+ * size and modification time, see {@link com.contrastsecurity.cassandra.migration.utils.scanner.Resource#getFingerprint()})
+ * is unchanged. The whole cache is discarded when it was written by another format version or for another
+ * encoding.</p>
+ *
+ * <p>The cache is a text file with one tab separated line per script. It is replaced atomically, so that concurrent
+ * processes only ever read a complete cache.</p>
+ */
+public class ResolutionCache {
+    private static final Log LOG = LogFactory.getLog(ResolutionCache.class);
+
+    private static final String HEADER = "# cassandra-migration resolution cache v1 ";
+
+    /**
+     * Marks the absence of declared dependencies.
+     */
+    private static final String NO_DEPENDENCIES = "*";
+
+    private final File file;
+    private final String encoding;
+
+    /**
+     * The entries read from the cache file, {@code null} until loaded.
+     */
+    private Map<String, Entry> loadedEntries;
+
+    /**
+     * The entries used or added during this run. Only those are written back.
+     */
+    private final Map<String, Entry> usedEntries = new ConcurrentHashMap<>();
+
+    /**
+     * Whether the cache file must be rewritten.
+     */
+    private volatile boolean modified;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param file     The cache file. It does not need to exist.
+     * @param encoding The encoding the scripts are read with.
+     */
+    public ResolutionCache(File file, String encoding) {
+        this.file = file;
+        this.encoding = encoding;
+    }
+
+    /**
+     * Retrieves the cached information about this script.
+     *
+     * @param location    The location of the script.
+     * @param fingerprint The current fingerprint of the file holding the script.
+     * @return The cached information, or {@code null} if missing or outdated.
+     */
+    public Entry get(String location, String fingerprint) {
+        Entry entry = loadedEntries().get(location);
+        if (entry == null || !entry.fingerprint.equals(fingerprint)) {
+            return null;
+        }
+        usedEntries.put(location, entry);
+        return entry;
+    }
+
+    /**
+     * Caches the information resolved from this script.
+     *
+     * @param location The location of the script.
+     * @param entry    The resolved information.
+     */
+    public void put(String location, Entry entry) {
+        usedEntries.put(location, entry);
+        modified = true;
+    }
+
+    private synchronized Map<String, Entry> loadedEntries() {
+        if (loadedEntries == null) {
+            loadedEntries = load();
+        }
+        return loadedEntries;
+    }
+
+    private Map<String, Entry> load() {
+        Map<String, Entry> entries = new ConcurrentHashMap<>();
+        if (!file.isFile()) {
+            return entries;
+        }
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            if (!(HEADER + encoding).equals(reader.readLine())) {
+                LOG.debug("Ignoring resolution cache " + file + " written by another version or for another encoding");
+                return entries;
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 6) {
+                    LOG.debug("Ignoring corrupt resolution cache " + file);
+                    return new ConcurrentHashMap<>();
+                }
+                entries.put(unescape(fields[0]), new Entry(unescape(fields[1]),
+                        MigrationVersion.fromVersion(unescape(fields[2])), unescape(fields[3]),
+                        fields[4].isEmpty() ? null : Integer.valueOf(fields[4]), parseDependencies(fields[5])));
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("Ignoring unreadable resolution cache " + file + ": " + e.getMessage());
+            return new ConcurrentHashMap<>();
+        }
+        LOG.debug("Loaded " + entries.size() + " entries from resolution cache " + file);
+        return entries;
+    }
+
+    /**
+     * Writes the entries used during this run to the cache file, if any of them changed. Entries of scripts that
+     * were not resolved during this run are dropped.
+     */
+    public void save() {
+        if (!modified && usedEntries.size() == loadedEntries().size()) {
+            return;
+        }
+
+        File directory = file.getAbsoluteFile().getParentFile();
+        File tempFile = null;
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Unable to create directory " + directory);
+            }
+            tempFile = File.createTempFile(file.getName(), ".tmp", directory);
+            try (BufferedWriter writer = new BufferedWriter(
+                    new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8))) {
+                writer.write(HEADER + encoding);
+                writer.newLine();
+                for (Map.Entry<String, Entry> e : new TreeMap<>(usedEntries).entrySet()) {
+                    Entry entry = e.getValue();
+                    writer.write(escape(e.getKey()) + "\t" + escape(entry.fingerprint) + "\t"
+                            + escape(entry.version.toString()) + "\t" + escape(entry.description) + "\t"
+                            + (entry.checksum == null ? "" : entry.checksum) + "\t"
+                            + formatDependencies(entry.dependencies));
+                    writer.newLine();
+                }
+            }
+            try {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            modified = false;
+            LOG.debug("Saved " + usedEntries.size() + " entries to resolution cache " + file);
+        } catch (IOException e) {
+            // The cache is an optimization only: the next run resolves the scripts again
+            LOG.warn("Unable to save resolution cache " + file + ": " + e.getMessage());
+            if (tempFile != null && tempFile.exists() && !tempFile.delete()) {
+                tempFile.deleteOnExit();
+            }
+        }
+    }
+
+    static String formatDependencies(Collection<MigrationVersion> dependencies) {
+        if (dependencies == null) {
+            return NO_DEPENDENCIES;
+        }
+        StringBuilder builder = new StringBuilder();
+        for (MigrationVersion dependency : dependencies) {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(escape(dependency.toString()));
+        }
+        return builder.toString();
+    }
+
+    static List<MigrationVersion> parseDependencies(String field) {
+        if (NO_DEPENDENCIES.equals(field)) {
+            return null;
+        }
+        if (field.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<MigrationVersion> dependencies = new ArrayList<>();
+        for (String dependency : field.split(",")) {
+            dependencies.add(MigrationVersion.fromVersion(unescape(dependency)));
+        }
+        return dependencies;
+    }
+
+    static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                builder.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * The information resolved from a script.
+     */
+    public static class Entry {
+        private final String fingerprint;
+        private final MigrationVersion version;
+        private final String description;
+        private final Integer checksum;
+        private final Collection<MigrationVersion> dependencies;
+
+        /**
+         * @param fingerprint  The fingerprint of the file holding the script.
+         * @param version      The version of the migration.
+         * @param description  The description of the migration.
+         * @param checksum     The checksum of the script.
+         * @param dependencies The declared dependencies, {@code null} if none were declared.
+         */
+        public Entry(String fingerprint, MigrationVersion version, String description, Integer checksum,
+                     Collection<MigrationVersion> dependencies) {
+            this.fingerprint = fingerprint;
+            this.version = version;
+            this.description = description;
+            this.checksum = checksum;
+            this.dependencies = dependencies;
+        }
+
+        public MigrationVersion getVersion() {
+            return version;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public Integer getChecksum() {
+            return checksum;
+        }
+
+        public Collection<MigrationVersion> getDependencies() {
+            return dependencies;
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package com.contrastsecurity.cassandra.migration.resolver;
+
+import com.contrastsecurity.cassandra.migration.CassandraMigrationException;
+import com.contrastsecurity.cassandra.migration.config.MigrationType;
+import com.contrastsecurity.cassandra.migration.config.ScriptsLocation;
+import com.contrastsecurity.cassandra.migration.config.ScriptsLocations;
+import com.contrastsecurity.cassandra.migration.info.ResolvedMigration;
+import com.contrastsecurity.cassandra.migration.logging.Log;
+import com.contrastsecurity.cassandra.migration.logging.LogFactory;
+import com.contrastsecurity.cassandra.migration.resolver.cql.CqlMigrationResolver;
+import com.contrastsecurity.cassandra.migration.utils.scanner.filesystem.FileSystemResource;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Migration resolver watching the filesystem locations for cql scripts being added, changed or deleted.
+ *
+ * <p>The migrations are resolved once by the underlying resolver. Afterwards, {@link #awaitChanges()} waits for the
+ * scripts of the filesystem locations to change and only resolves the changed scripts again, so that each change is
+ * picked up without scanning the locations. Classpath locations and Java migrations are resolved once and not
+ * watched.</p>
+ */
+public class WatchingMigrationResolver implements MigrationResolver, Closeable {
+    private static final Log LOG = LogFactory.getLog(WatchingMigrationResolver.class);
+
+    /**
+     * How long a burst of events is collected after the first one, so that a file being written is resolved once.
+     */
+    private static final long DEBOUNCE_MILLIS = 50;
+
+    /**
+     * The resolver of the initial migrations.
+     */
+    private final MigrationResolver migrationResolver;
+
+    /**
+     * The resolvers of the scripts of each watched location, by the path of its root directory.
+     */
+    private final Map<Path, CqlMigrationResolver> cqlMigrationResolvers = new LinkedHashMap<Path, CqlMigrationResolver>();
+
+    private final WatchService watchService;
+
+    /**
+     * The watched directories, by their watch key.
+     */
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<WatchKey, Path>();
+
+    /**
+     * The migrations that are not watched, such as Java migrations and the scripts of classpath locations.
+     */
+    private final List<ResolvedMigration> staticMigrations = new ArrayList<ResolvedMigration>();
+
+    /**
+     * The migrations of the scripts of the watched locations, by the absolute path of their script. A migration only
+     * holds the location of its script, read when it is executed: a replaced or removed migration holds nothing to
+     * release.
+     */
+    private final Map<Path, ResolvedMigration> watchedMigrations = new HashMap<Path, ResolvedMigration>();
+
+    private boolean resolved;
+
+    /**
+     * Creates a new resolver, watching the filesystem locations among these.
+     *
+     * @param migrationResolver The resolver of the initial migrations of all locations.
+     * @param classLoader       The ClassLoader for loading migrations on the classpath.
+     * @param locations         The locations where migrations are located.
+     * @param encoding          The encoding of Cql migrations.
+     * @param asyncWindow       The maximum number of statements in flight while executing Cql migrations.
+     * @throws IOException when the filesystem locations could not be watched.
+     */
+    public WatchingMigrationResolver(MigrationResolver migrationResolver, ClassLoader classLoader,
+                                     ScriptsLocations locations, String encoding, int asyncWindow) throws IOException {
+        this.migrationResolver = migrationResolver;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        try {
+            for (ScriptsLocation location : locations.getLocations()) {
+                if (!location.isFileSystem()) {
+                    continue;
+                }
+                Path root = Paths.get(location.getPath());
+                if (!Files.isDirectory(root)) {
+                    throw new CassandraMigrationException("Invalid filesystem path: " + location.getPath());
+                }
+                cqlMigrationResolvers.put(root, new CqlMigrationResolver(classLoader, location, encoding, asyncWindow));
+                walk(root, false);
+                LOG.info("Watching location " + location + " for new migrations");
+            }
+        } catch (IOException | RuntimeException e) {
+            watchService.close();
+            throw e;
+        }
+        if (cqlMigrationResolvers.isEmpty()) {
+            LOG.warn("No filesystem location to watch for new migrations");
+        }
+    }
+
+    @Override
+    public synchronized List<ResolvedMigration> resolveMigrations() {
+        if (!resolved) {
+            for (ResolvedMigration migration : migrationResolver.resolveMigrations()) {
+                Path script = migration.getType() == MigrationType.CQL && migration.getPhysicalLocation() != null
+                        ? Paths.get(migration.getPhysicalLocation()).toAbsolutePath().normalize() : null;
+                if (script != null && findRoot(script) != null) {
+                    watchedMigrations.put(script, migration);
+                } else {
+                    staticMigrations.add(migration);
+                }
+            }
+            resolved = true;
+        }
+
+        List<ResolvedMigration> migrations = new ArrayList<ResolvedMigration>(staticMigrations);
+        migrations.addAll(watchedMigrations.values());
+        Collections.sort(migrations, new ResolvedMigrationComparator());
+        CompositeMigrationResolver.checkForIncompatibilities(migrations);
+        return migrations;
+    }
+
+    /**
+     * Waits for the scripts of the watched locations to change, and resolves the changed ones.
+     *
+     * @return {@code true} once a migration was added, changed or removed. {@code false} if there is nothing left to
+     * watch.
+     * @throws InterruptedException when interrupted while waiting.
+     */
+    public boolean awaitChanges() throws InterruptedException {
+        return awaitChanges(-1, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Waits at most this long for the scripts of the watched locations to change, and resolves the changed ones.
+     *
+     * @param timeout How long to wait, negative to wait forever.
+     * @param unit    The unit of the timeout.
+     * @return {@code true} once a migration was added, changed or removed. {@code false} if there is nothing left to
+     * watch or the timeout elapsed.
+     * @throws InterruptedException when interrupted while waiting.
+     */
+    /* private -> for testing */
+    boolean awaitChanges(long timeout, TimeUnit unit) throws InterruptedException {
+        resolveMigrations();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            while (!watchedDirectories.isEmpty()) {
+                WatchKey key;
+                if (timeout < 0) {
+                    key = watchService.take();
+                } else {
+                    key = watchService.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (key == null) {
+                        return false;
+                    }
+                }
+
+                // Collect the whole burst of events before resolving anything
+                Set<Path> changedPaths = new LinkedHashSet<Path>();
+                boolean overflow = false;
+                while (key != null) {
+                    overflow |= pollEvents(key, changedPaths);
+                    key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+
+                if (overflow ? rescan() : update(changedPaths)) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (ClosedWatchServiceException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Collects the paths of the events of this key and resets it.
+     *
+     * @param key          The signalled key.
+     * @param changedPaths The changed paths collected so far.
+     * @return {@code true} if events were lost and the locations must be scanned again.
+     */
+    private boolean pollEvents(WatchKey key, Set<Path> changedPaths) {
+        Path directory = watchedDirectories.get(key);
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+            } else if (directory != null) {
+                changedPaths.add(directory.resolve((Path) event.context()));
+            }
+        }
+        if (!key.reset()) {
+            // The directory was deleted
+            watchedDirectories.remove(key);
+        }
+        return overflow;
+    }
+
+    /**
+     * Resolves the scripts at these paths again.
+     *
+     * @param changedPaths The added, modified or deleted files and directories.
+     * @return {@code true} if a migration was added, changed or removed.
+     */
+    private synchronized boolean update(Set<Path> changedPaths) {
+        boolean changed = false;
+        for (Path path : changedPaths) {
+            if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                if (watchedDirectories.containsValue(path)) {
+                    // Its scripts signal their own changes
+                    continue;
+                }
+                try {
+                    changed |= walk(path, true);
+                } catch (IOException e) {
+                    LOG.warn("Unable to watch directory " + path + ": " + e.getMessage());
+                }
+            } else if (Files.isRegularFile(path)) {
+                changed |= resolve(path);
+            } else {
+                changed |= remove(path);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Resolves all the scripts of the watched locations again, after events were lost.
+     *
+     * @return {@code true} if a migration was added, changed or removed.
+     */
+    private synchronized boolean rescan() {
+        LOG.debug("Missed filesystem events, scanning the watched locations again");
+        Map<Path, ResolvedMigration> previous = new HashMap<Path, ResolvedMigration>(watchedMigrations);
+        watchedMigrations.clear();
+        for (Path root : cqlMigrationResolvers.keySet()) {
+            try {
+                walk(root, true);
+            } catch (IOException e) {
+                throw new CassandraMigrationException("Unable to scan filesystem path: " + root, e);
+            }
+        }
+        return !previous.keySet().equals(watchedMigrations.keySet()) || changedChecksum(previous);
+    }
+
+    private boolean changedChecksum(Map<Path, ResolvedMigration> previous) {
+        for (Map.Entry<Path, ResolvedMigration> entry : watchedMigrations.entrySet()) {
+            if (!sameMigration(previous.get(entry.getKey()), entry.getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Registers this directory and its subdirectories with the watch service.
+     *
+     * @param directory The directory.
+     * @param resolve   Whether to resolve the scripts found in the directory as well.
+     * @return {@code true} if a migration was added or changed.
+     * @throws IOException when the directory could not be walked.
+     */
+    private boolean walk(Path directory, final boolean resolve) throws IOException {
+        final boolean[] changed = {false};
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                if (!watchedDirectories.containsValue(dir)) {
+                    watchedDirectories.put(dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), dir);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (resolve) {
+                    changed[0] |= resolve(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return changed[0];
+    }
+
+    /**
+     * Resolves the migration of this file, if it is a script of a watched location.
+     *
+     * @param file The file.
+     * @return {@code true} if its migration was added or changed.
+     */
+    private boolean resolve(Path file) {
+        Path root = findRoot(file.toAbsolutePath().normalize());
+        if (root == null || !CqlMigrationResolver.isMigrationScript(file.getFileName().toString())) {
+            return false;
+        }
+
+        Path script = file.toAbsolutePath().normalize();
+        ResolvedMigration migration;
+        try {
+            migration = cqlMigrationResolvers.get(root).resolveMigration(
+                    new FileSystemResource(root.resolve(root.toAbsolutePath().normalize().relativize(script)).toString()));
+        } catch (CassandraMigrationException e) {
+            LOG.warn("Unable to resolve migration " + script + ": " + e.getMessage());
+            return remove(script);
+        }
+
+        ResolvedMigration previous = watchedMigrations.get(script);
+        if (sameMigration(previous, migration)) {
+            // Keeps the migration handed out already
+            return false;
+        }
+        watchedMigrations.put(script, migration);
+        LOG.info((previous == null ? "Found new migration " : "Found changed migration ") + migration.getScript());
+        return true;
+    }
+
+    /**
+     * Removes the migrations of this deleted script, or of the scripts of this deleted directory.
+     *
+     * @param path The deleted file or directory.
+     * @return {@code true} if a migration was removed.
+     */
+    private boolean remove(Path path) {
+        Path removed = path.toAbsolutePath().normalize();
+        boolean changed = false;
+        for (Iterator<Map.Entry<Path, ResolvedMigration>> it = watchedMigrations.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Path, ResolvedMigration> entry = it.next();
+            if (entry.getKey().startsWith(removed)) {
+                LOG.info("Removed migration " + entry.getValue().getScript());
+                it.remove();
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Finds the root of the watched location holding this script.
+     *
+     * @param script The absolute path of the script.
+     * @return The root, as configured, {@code null} if the script is not in a watched location.
+     */
+    private Path findRoot(Path script) {
+        for (Path root : cqlMigrationResolvers.keySet()) {
+            if (script.startsWith(root.toAbsolutePath().normalize())) {
+                return root;
+            }
+        }
+        return null;
+    }
+
+    private static boolean sameMigration(ResolvedMigration previous, ResolvedMigration migration) {
+        return previous != null
+                && previous.getVersion().equals(migration.getVersion())
+                && (previous.getChecksum() == null ? migration.getChecksum() == null
+                : previous.getChecksum().equals(migration.getChecksum()));
+    }
+
+    /**
+     * Stops watching the locations.
+     *
+     * @throws IOException when the watch service could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+}
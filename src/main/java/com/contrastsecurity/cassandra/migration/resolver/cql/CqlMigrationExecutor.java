@@ -22,6 +22,11 @@ public class CqlMigrationExecutor implements MigrationExecutor {
      */
     private final String encoding;
 
+    /**
+     * The maximum number of statements in flight while executing the cql script.
+     */
+    private final int asyncWindow;
+
     /**
      * Creates a new cql script migration based on this cql script.
      *
@@ -29,13 +34,25 @@ public class CqlMigrationExecutor implements MigrationExecutor {
      * @param encoding          The encoding of this Cql migration.
      */
     public CqlMigrationExecutor(Resource cqlScriptResource, String encoding) {
+        this(cqlScriptResource, encoding, 0);
+    }
+
+    /**
+     * Creates a new cql script migration based on this cql script.
+     *
+     * @param cqlScriptResource The resource containing the cql script.
+     * @param encoding          The encoding of this Cql migration.
+     * @param asyncWindow       The maximum number of statements in flight (0 or 1 to execute them one at a time).
+     */
+    public CqlMigrationExecutor(Resource cqlScriptResource, String encoding, int asyncWindow) {
         this.cqlScriptResource = cqlScriptResource;
         this.encoding = encoding;
+        this.asyncWindow = asyncWindow;
     }
 
     @Override
     public void execute(Session session) {
         CqlScript cqlScript = new CqlScript(cqlScriptResource, encoding);
-        cqlScript.execute(session);
+        cqlScript.execute(session, asyncWindow);
     }
 }
@@ -1,20 +1,36 @@
 package com.contrastsecurity.cassandra.migration.resolver.cql;
 
+import com.contrastsecurity.cassandra.migration.CassandraMigrationException;
 import com.contrastsecurity.cassandra.migration.config.MigrationType;
 import com.contrastsecurity.cassandra.migration.config.ScriptsLocation;
 import com.contrastsecurity.cassandra.migration.info.MigrationVersion;
 import com.contrastsecurity.cassandra.migration.info.ResolvedMigration;
 import com.contrastsecurity.cassandra.migration.resolver.MigrationInfoHelper;
+import com.contrastsecurity.cassandra.migration.resolver.MigrationManifest;
 import com.contrastsecurity.cassandra.migration.resolver.MigrationResolver;
+import com.contrastsecurity.cassandra.migration.resolver.ResolutionCache;
 import com.contrastsecurity.cassandra.migration.resolver.ResolvedMigrationComparator;
 import com.contrastsecurity.cassandra.migration.utils.Pair;
+import com.contrastsecurity.cassandra.migration.utils.StringUtils;
 import com.contrastsecurity.cassandra.migration.utils.scanner.Resource;
 import com.contrastsecurity.cassandra.migration.utils.scanner.Scanner;
+import com.contrastsecurity.cassandra.migration.utils.scanner.classpath.ClassPathResource;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
 
 /**
  * Migration resolver for cql files on the classpath. The cql files must have names like
@@ -37,6 +53,26 @@ public class CqlMigrationResolver implements MigrationResolver {
      */
     private final String encoding;
 
+    /**
+     * The maximum number of statements in flight while executing cql migrations.
+     */
+    private final int asyncWindow;
+
+    /**
+     * The cache of resolved scripts, {@code null} if disabled.
+     */
+    private final ResolutionCache resolutionCache;
+
+    /**
+     * The ClassLoader for loading migrations on the classpath.
+     */
+    private final ClassLoader classLoader;
+
+    /**
+     * Whether the manifest of the location is used when present (default: true).
+     */
+    private boolean useManifest = true;
+
     /**
      * The prefix for cql migrations
      */
@@ -53,6 +89,17 @@ public class CqlMigrationResolver implements MigrationResolver {
      */
     private final static String CQL_MIGRATION_SUFFIX = ".cql";
 
+    /**
+     * The directive declaring the dependencies of a cql migration in its leading comments.
+     * eg: -- @depends: 1.1, 1.2
+     */
+    private final static Pattern DEPENDS_DIRECTIVE = Pattern.compile("^--\\s*@depends\\s*:?(.*)$");
+
+    /**
+     * The size of the buffer scripts are read through when computing their checksum.
+     */
+    private final static int BUFFER_SIZE = 8192;
+
     /**
      * Creates a new instance.
      *
@@ -61,27 +108,117 @@ public class CqlMigrationResolver implements MigrationResolver {
      * @param encoding    The encoding of the .cql file.
      */
     public CqlMigrationResolver(ClassLoader classLoader, ScriptsLocation location, String encoding) {
+        this(classLoader, location, encoding, 0);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param classLoader The ClassLoader for loading migrations on the classpath.
+     * @param location    The location on the classpath where to migrations are located.
+     * @param encoding    The encoding of the .cql file.
+     * @param asyncWindow The maximum number of statements in flight while executing the migrations.
+     */
+    public CqlMigrationResolver(ClassLoader classLoader, ScriptsLocation location, String encoding, int asyncWindow) {
+        this(classLoader, location, encoding, asyncWindow, null);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param classLoader     The ClassLoader for loading migrations on the classpath.
+     * @param location        The location on the classpath where to migrations are located.
+     * @param encoding        The encoding of the .cql file.
+     * @param asyncWindow     The maximum number of statements in flight while executing the migrations.
+     * @param resolutionCache The cache of resolved scripts, {@code null} to read and hash every script.
+     */
+    public CqlMigrationResolver(ClassLoader classLoader, ScriptsLocation location, String encoding, int asyncWindow,
+                                ResolutionCache resolutionCache) {
         this.scanner = new Scanner(classLoader);
+        this.classLoader = classLoader;
         this.location = location;
         this.encoding = encoding;
+        this.asyncWindow = asyncWindow;
+        this.resolutionCache = resolutionCache;
+    }
+
+    /**
+     * @param useManifest Whether the {@link MigrationManifest} of the location is used when present, instead of
+     *                    scanning the location and reading the scripts. (default: true)
+     */
+    public void setUseManifest(boolean useManifest) {
+        this.useManifest = useManifest;
     }
 
     public List<ResolvedMigration> resolveMigrations() {
         List<ResolvedMigration> migrations = new ArrayList<>();
 
-        Resource[] resources = scanner.scanForResources(location, CQL_MIGRATION_PREFIX, CQL_MIGRATION_SUFFIX);
-        for (Resource resource : resources) {
-            ResolvedMigration resolvedMigration = extractMigrationInfo(resource);
-            resolvedMigration.setPhysicalLocation(resource.getLocationOnDisk());
-            resolvedMigration.setExecutor(new CqlMigrationExecutor(resource, encoding));
+        MigrationManifest manifest = useManifest ? MigrationManifest.load(classLoader, location, encoding) : null;
+        if (manifest != null) {
+            for (MigrationManifest.Entry entry : manifest.getEntries(MigrationType.CQL)) {
+                String resourceLocation = location.getPath().isEmpty()
+                        ? entry.getScript() : location.getPath() + "/" + entry.getScript();
+                Resource resource = new ClassPathResource(resourceLocation, classLoader);
+                ResolvedMigration resolvedMigration = entry.toResolvedMigration();
+                resolvedMigration.setPhysicalLocation(resource.getLocationOnDisk());
+                resolvedMigration.setExecutor(new CqlMigrationExecutor(resource, encoding, asyncWindow));
+                migrations.add(resolvedMigration);
+            }
+            Collections.sort(migrations, new ResolvedMigrationComparator());
+            return migrations;
+        }
 
-            migrations.add(resolvedMigration);
+        Resource[] resources = scanner.scanForResources(location, CQL_MIGRATION_PREFIX, CQL_MIGRATION_SUFFIX);
+        if (ForkJoinTask.inForkJoinPool() && resources.length > 1) {
+            // Read and hash the scripts with the other threads of the pool
+            List<ForkJoinTask<ResolvedMigration>> tasks = new ArrayList<>(resources.length);
+            for (final Resource resource : resources) {
+                tasks.add(ForkJoinTask.adapt(new Callable<ResolvedMigration>() {
+                    @Override
+                    public ResolvedMigration call() {
+                        return resolveMigration(resource);
+                    }
+                }));
+            }
+            for (ForkJoinTask<ResolvedMigration> task : ForkJoinTask.invokeAll(tasks)) {
+                migrations.add(task.join());
+            }
+        } else {
+            for (Resource resource : resources) {
+                migrations.add(resolveMigration(resource));
+            }
         }
 
         Collections.sort(migrations, new ResolvedMigrationComparator());
         return migrations;
     }
 
+    /**
+     * Checks whether this file name is the one of a cql migration, such as V1__Description.cql.
+     *
+     * @param fileName The file name, without its directory.
+     * @return {@code true} if it is.
+     */
+    public static boolean isMigrationScript(String fileName) {
+        return fileName.startsWith(CQL_MIGRATION_PREFIX) && fileName.endsWith(CQL_MIGRATION_SUFFIX)
+                && fileName.length() > CQL_MIGRATION_PREFIX.length() + CQL_MIGRATION_SUFFIX.length();
+    }
+
+    /**
+     * Resolves the migration of this script of the location, without scanning the location.
+     *
+     * @param resource The cql script, below the location.
+     * @return The resolved migration.
+     */
+    public ResolvedMigration resolveMigration(Resource resource) {
+        // The checksum is computed by streaming the script; the executor only opens it again if it runs, so that
+        // nothing is held for the migrations that are already applied
+        ResolvedMigration resolvedMigration = extractMigrationInfo(resource);
+        resolvedMigration.setPhysicalLocation(resource.getLocationOnDisk());
+        resolvedMigration.setExecutor(new CqlMigrationExecutor(resource, encoding, asyncWindow));
+        return resolvedMigration;
+    }
+
     /**
      * Extracts the migration info for this resource.
      *
@@ -89,6 +226,21 @@ public class CqlMigrationResolver implements MigrationResolver {
      * @return The migration info.
      */
     private ResolvedMigration extractMigrationInfo(Resource resource) {
+        String fingerprint = resolutionCache == null ? null : resource.getFingerprint();
+        if (fingerprint != null) {
+            ResolutionCache.Entry entry = resolutionCache.get(resource.getLocation(), fingerprint);
+            if (entry != null) {
+                ResolvedMigration migration = new ResolvedMigration();
+                migration.setVersion(entry.getVersion());
+                migration.setDescription(entry.getDescription());
+                migration.setScript(extractScriptName(resource));
+                migration.setChecksum(entry.getChecksum());
+                migration.setDependencies(entry.getDependencies());
+                migration.setType(MigrationType.CQL);
+                return migration;
+            }
+        }
+
         ResolvedMigration migration = new ResolvedMigration();
 
         Pair<MigrationVersion, String> info =
@@ -99,11 +251,84 @@ public class CqlMigrationResolver implements MigrationResolver {
 
         migration.setScript(extractScriptName(resource));
 
-        migration.setChecksum(calculateChecksum(resource.loadAsBytes()));
+        // Single pass over the script: its leading comments are parsed while its bytes go through the checksum
+        try (CheckedInputStream inputStream = new CheckedInputStream(resource.openStream(), new CRC32())) {
+            migration.setDependencies(extractDependencies(
+                    new BufferedReader(new InputStreamReader(inputStream, Charset.forName(encoding)))));
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (inputStream.read(buffer) != -1) {
+                // Only the checksum of the remaining bytes is needed
+            }
+            migration.setChecksum((int) inputStream.getChecksum().getValue());
+        } catch (IOException e) {
+            throw new CassandraMigrationException("Unable to read cql script: " + resource.getLocation(), e);
+        }
         migration.setType(MigrationType.CQL);
+
+        if (fingerprint != null) {
+            resolutionCache.put(resource.getLocation(), new ResolutionCache.Entry(fingerprint, migration.getVersion(),
+                    migration.getDescription(), migration.getChecksum(), migration.getDependencies()));
+        }
         return migration;
     }
 
+    /**
+     * Extracts the dependencies declared with a {@code -- @depends:} directive in the leading comments of this script.
+     * An empty directive declares the migration as independent of any other.
+     *
+     * @param cqlScriptSource The cql script to analyse.
+     * @return The declared dependencies, or {@code null} if the migration depends on every migration with a lower
+     * version.
+     */
+    /* private -> for testing */
+    static List<MigrationVersion> extractDependencies(String cqlScriptSource) {
+        try {
+            return extractDependencies(new StringReader(cqlScriptSource));
+        } catch (IOException e) {
+            throw new CassandraMigrationException("Unable to read cql script", e);
+        }
+    }
+
+    /**
+     * Extracts the dependencies declared in the leading comments of the script read by this reader. Reading stops at
+     * the first character that does not belong to a leading comment.
+     *
+     * @param reader The reader positioned at the start of the script.
+     * @return The declared dependencies, or {@code null} if the migration depends on every migration with a lower
+     * version.
+     * @throws IOException when the script could not be read.
+     */
+    private static List<MigrationVersion> extractDependencies(Reader reader) throws IOException {
+        while (true) {
+            int c;
+            do {
+                c = reader.read();
+            } while (c != -1 && (Character.isWhitespace(c) || c == '\uFEFF'));
+            if (c != '-' || reader.read() != '-') {
+                return null;
+            }
+
+            StringBuilder line = new StringBuilder("--");
+            while ((c = reader.read()) != -1 && c != '\n' && c != '\r') {
+                line.append((char) c);
+            }
+
+            Matcher matcher = DEPENDS_DIRECTIVE.matcher(line.toString().trim());
+            if (matcher.matches()) {
+                List<MigrationVersion> dependencies = new ArrayList<>();
+                for (String version : StringUtils.tokenizeToStringArray(matcher.group(1), ",")) {
+                    if (StringUtils.hasText(version)) {
+                        dependencies.add(MigrationVersion.fromVersion(version));
+                    }
+                }
+                return dependencies;
+            }
+            if (c == -1) {
+                return null;
+            }
+        }
+    }
+
     /**
      * Extracts the script name from this resource.
      *
@@ -117,16 +342,4 @@ public class CqlMigrationResolver implements MigrationResolver {
 
         return resource.getLocation().substring(location.getPath().length() + 1);
     }
-
-    /**
-     * Calculates the checksum of these bytes.
-     *
-     * @param bytes The bytes to calculate the checksum for.
-     * @return The crc-32 checksum of the bytes.
-     */
-    private static int calculateChecksum(byte[] bytes) {
-        final CRC32 crc32 = new CRC32();
-        crc32.update(bytes);
-        return (int) crc32.getValue();
-    }
 }
@@ -3,6 +3,7 @@ package com.contrastsecurity.cassandra.migration.resolver.java;
 import com.contrastsecurity.cassandra.migration.CassandraMigrationException;
 import com.contrastsecurity.cassandra.migration.api.JavaMigration;
 import com.contrastsecurity.cassandra.migration.resolver.MigrationExecutor;
+import com.contrastsecurity.cassandra.migration.utils.ClassUtils;
 import com.datastax.driver.core.Session;
 
 /**
@@ -10,9 +11,19 @@ import com.datastax.driver.core.Session;
  */
 public class JavaMigrationExecutor implements MigrationExecutor {
     /**
-     * The JavaMigration to execute.
+     * The class of the JavaMigration to execute, {@code null} if created from an instance.
      */
-    private final JavaMigration javaMigration;
+    private final Class<?> migrationClass;
+
+    /**
+     * The ClassLoader to instantiate the migration class with.
+     */
+    private final ClassLoader classLoader;
+
+    /**
+     * The JavaMigration to execute, {@code null} until instantiated.
+     */
+    private JavaMigration javaMigration;
 
     /**
      * Creates a new JdbcMigrationExecutor.
@@ -20,13 +31,42 @@ public class JavaMigrationExecutor implements MigrationExecutor {
      * @param javaMigration The JdbcMigration to execute.
      */
     public JavaMigrationExecutor(JavaMigration javaMigration) {
+        this.migrationClass = null;
+        this.classLoader = null;
         this.javaMigration = javaMigration;
     }
 
+    /**
+     * Creates a new JavaMigrationExecutor, instantiating the migration once, when first needed.
+     *
+     * @param migrationClass The class of the JavaMigration to execute.
+     * @param classLoader    The ClassLoader to instantiate it with.
+     */
+    public JavaMigrationExecutor(Class<?> migrationClass, ClassLoader classLoader) {
+        this.migrationClass = migrationClass;
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * @return The JavaMigration to execute, instantiated on first call.
+     * @throws CassandraMigrationException when the migration could not be instantiated.
+     */
+    public synchronized JavaMigration getJavaMigration() {
+        if (javaMigration == null) {
+            try {
+                javaMigration = ClassUtils.instantiate(migrationClass.getName(), classLoader);
+            } catch (Exception e) {
+                throw new CassandraMigrationException("Unable to instantiate class: " + migrationClass.getName(), e);
+            }
+        }
+        return javaMigration;
+    }
+
     @Override
     public void execute(Session session) {
+        JavaMigration migration = getJavaMigration();
         try {
-            javaMigration.migrate(session);
+            migration.migrate(session);
         } catch (Exception e) {
             throw new CassandraMigrationException("Migration failed !", e);
         }
@@ -17,6 +17,7 @@ package com.contrastsecurity.cassandra.migration.resolver.java;
 
 import com.contrastsecurity.cassandra.migration.CassandraMigrationException;
 import com.contrastsecurity.cassandra.migration.api.MigrationChecksumProvider;
+import com.contrastsecurity.cassandra.migration.api.MigrationDependencyProvider;
 import com.contrastsecurity.cassandra.migration.api.MigrationInfoProvider;
 import com.contrastsecurity.cassandra.migration.api.JavaMigration;
 import com.contrastsecurity.cassandra.migration.config.MigrationType;
@@ -24,6 +25,7 @@ import com.contrastsecurity.cassandra.migration.config.ScriptsLocation;
 import com.contrastsecurity.cassandra.migration.info.MigrationVersion;
 import com.contrastsecurity.cassandra.migration.info.ResolvedMigration;
 import com.contrastsecurity.cassandra.migration.resolver.MigrationInfoHelper;
+import com.contrastsecurity.cassandra.migration.resolver.MigrationManifest;
 import com.contrastsecurity.cassandra.migration.resolver.MigrationResolver;
 import com.contrastsecurity.cassandra.migration.resolver.ResolvedMigrationComparator;
 import com.contrastsecurity.cassandra.migration.utils.ClassUtils;
@@ -50,6 +52,16 @@ public class JavaMigrationResolver implements MigrationResolver {
      */
     private ClassLoader classLoader;
 
+    /**
+     * The encoding of Cql migrations, identifying the manifest generated for them.
+     */
+    private final String encoding;
+
+    /**
+     * Whether the manifest of the location is used when present (default: true).
+     */
+    private boolean useManifest = true;
+
     /**
      * Creates a new instance.
      *
@@ -57,8 +69,28 @@ public class JavaMigrationResolver implements MigrationResolver {
      * @param classLoader The ClassLoader for loading migrations on the classpath.
      */
     public JavaMigrationResolver(ClassLoader classLoader, ScriptsLocation location) {
+        this(classLoader, location, "UTF-8");
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param location    The base package on the classpath where to migrations are located.
+     * @param classLoader The ClassLoader for loading migrations on the classpath.
+     * @param encoding    The encoding of Cql migrations, identifying the manifest of the location.
+     */
+    public JavaMigrationResolver(ClassLoader classLoader, ScriptsLocation location, String encoding) {
         this.location = location;
         this.classLoader = classLoader;
+        this.encoding = encoding;
+    }
+
+    /**
+     * @param useManifest Whether the {@link MigrationManifest} of the location is used when present, instead of
+     *                    scanning the location. (default: true)
+     */
+    public void setUseManifest(boolean useManifest) {
+        this.useManifest = useManifest;
     }
 
     public List<ResolvedMigration> resolveMigrations() {
@@ -69,13 +101,27 @@ public class JavaMigrationResolver implements MigrationResolver {
         }
 
         try {
+            MigrationManifest manifest = useManifest ? MigrationManifest.load(classLoader, location, encoding) : null;
+            if (manifest != null) {
+                for (MigrationManifest.Entry entry : manifest.getEntries(MigrationType.JAVA_DRIVER)) {
+                    Class<?> clazz = Class.forName(entry.getScript(), false, classLoader);
+                    ResolvedMigration migrationInfo = entry.toResolvedMigration();
+                    migrationInfo.setPhysicalLocation(ClassUtils.getLocationOnDisk(clazz));
+                    migrationInfo.setExecutor(new JavaMigrationExecutor(clazz, classLoader));
+                    migrations.add(migrationInfo);
+                }
+                Collections.sort(migrations, new ResolvedMigrationComparator());
+                return migrations;
+            }
+
             Class<?>[] classes = new Scanner(classLoader).scanForClasses(location, JavaMigration.class);
             for (Class<?> clazz : classes) {
-                JavaMigration javaMigration = ClassUtils.instantiate(clazz.getName(), classLoader);
-
-                ResolvedMigration migrationInfo = extractMigrationInfo(javaMigration);
+                // Migrations named by convention are only instantiated when executed
+                JavaMigrationExecutor executor = new JavaMigrationExecutor(clazz, classLoader);
+                ResolvedMigration migrationInfo = providesInfo(clazz)
+                        ? extractMigrationInfo(executor.getJavaMigration()) : extractMigrationInfo(clazz, null);
                 migrationInfo.setPhysicalLocation(ClassUtils.getLocationOnDisk(clazz));
-                migrationInfo.setExecutor(new JavaMigrationExecutor(javaMigration));
+                migrationInfo.setExecutor(executor);
 
                 migrations.add(migrationInfo);
             }
@@ -87,6 +133,18 @@ public class JavaMigrationResolver implements MigrationResolver {
         return migrations;
     }
 
+    /**
+     * Checks whether the info of this migration class is provided by its instances rather than by its name.
+     *
+     * @param clazz The migration class.
+     * @return {@code true} if an instance is needed to extract the migration info.
+     */
+    private boolean providesInfo(Class<?> clazz) {
+        return MigrationChecksumProvider.class.isAssignableFrom(clazz)
+                || MigrationInfoProvider.class.isAssignableFrom(clazz)
+                || MigrationDependencyProvider.class.isAssignableFrom(clazz);
+    }
+
     /**
      * Extracts the migration info from this migration.
      *
@@ -94,6 +152,17 @@ public class JavaMigrationResolver implements MigrationResolver {
      * @return The migration info.
      */
     ResolvedMigration extractMigrationInfo(JavaMigration javaMigration) {
+        return extractMigrationInfo(javaMigration.getClass(), javaMigration);
+    }
+
+    /**
+     * Extracts the migration info from this migration class.
+     *
+     * @param clazz         The migration class to analyse.
+     * @param javaMigration An instance of the class, {@code null} if it does not provide any info.
+     * @return The migration info.
+     */
+    private ResolvedMigration extractMigrationInfo(Class<?> clazz, JavaMigration javaMigration) {
         Integer checksum = null;
         if (javaMigration instanceof MigrationChecksumProvider) {
             MigrationChecksumProvider checksumProvider = (MigrationChecksumProvider) javaMigration;
@@ -112,12 +181,12 @@ public class JavaMigrationResolver implements MigrationResolver {
         } else {
             Pair<MigrationVersion, String> info =
                     MigrationInfoHelper.extractVersionAndDescription(
-                            ClassUtils.getShortName(javaMigration.getClass()), "V", "__", "");
+                            ClassUtils.getShortName(clazz), "V", "__", "");
             version = info.getLeft();
             description = info.getRight();
         }
 
-        String script = javaMigration.getClass().getName();
+        String script = clazz.getName();
 
 
         ResolvedMigration resolvedMigration = new ResolvedMigration();
@@ -126,6 +195,9 @@ public class JavaMigrationResolver implements MigrationResolver {
         resolvedMigration.setScript(script);
         resolvedMigration.setChecksum(checksum);
         resolvedMigration.setType(MigrationType.JAVA_DRIVER);
+        if (javaMigration instanceof MigrationDependencyProvider) {
+            resolvedMigration.setDependencies(((MigrationDependencyProvider) javaMigration).getDependencies());
+        }
         return resolvedMigration;
     }
 }
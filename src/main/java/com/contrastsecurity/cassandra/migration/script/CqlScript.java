@@ -18,42 +18,49 @@ package com.contrastsecurity.cassandra.migration.script;
 import com.contrastsecurity.cassandra.migration.CassandraMigrationException;
 import com.contrastsecurity.cassandra.migration.logging.Log;
 import com.contrastsecurity.cassandra.migration.logging.LogFactory;
-import com.contrastsecurity.cassandra.migration.utils.StringUtils;
 import com.contrastsecurity.cassandra.migration.utils.scanner.Resource;
 import com.datastax.driver.core.Session;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.Reader;
+import java.io.InputStreamReader;
 import java.io.StringReader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Cql script containing a series of statements terminated by a delimiter (eg: ;).
  * Single-line (--) and multi-line (/* * /) comments are stripped and ignored.
+ *
+ * <p>Scripts are parsed while they are executed, so that only the statements being executed are held in memory.</p>
  */
 public class CqlScript {
     private static final Log LOG = LogFactory.getLog(CqlScript.class);
 
     /**
-     * The cql statements contained in this script.
+     * The source of this script, {@code null} if read from a resource.
      */
-    private final List<String> cqlStatements;
+    private final String cqlScriptSource;
 
     /**
      * The resource containing the statements.
      */
     private final Resource resource;
 
+    /**
+     * The encoding of the resource.
+     */
+    private final String encoding;
+
     /**
      * Creates a new cql script from this source.
      *
      * @param cqlScriptSource The cql script as a text block with all placeholders already replaced.
      */
     public CqlScript(String cqlScriptSource) {
-        this.cqlStatements = parse(cqlScriptSource);
+        this.cqlScriptSource = cqlScriptSource;
         this.resource = null;
+        this.encoding = null;
     }
 
     /**
@@ -63,19 +70,27 @@ public class CqlScript {
      * @param encoding          The encoding to use.
      */
     public CqlScript(Resource cqlScriptResource, String encoding) {
-        String cqlScriptSource = cqlScriptResource.loadAsString(encoding);
-        this.cqlStatements = parse(cqlScriptSource);
-
+        this.cqlScriptSource = null;
         this.resource = cqlScriptResource;
+        this.encoding = encoding;
     }
 
     /**
-     * For increased testability.
+     * For increased testability. This parses the whole script in memory.
      *
      * @return The cql statements contained in this script.
      */
     public List<String> getCqlStatements() {
-        return cqlStatements;
+        List<String> statements = new ArrayList<>();
+        try (CqlStatementParser parser = openParser()) {
+            String cqlStatement;
+            while ((cqlStatement = parser.next()) != null) {
+                statements.add(cqlStatement);
+            }
+        } catch (IOException e) {
+            throw parseFailure(e);
+        }
+        return statements;
     }
 
     /**
@@ -90,104 +105,72 @@ public class CqlScript {
      * @param session Cassandra session
      */
     public void execute(final Session session) {
-        for (String cqlStatement : cqlStatements) {
-            LOG.debug("Executing CQL: " + cqlStatement);
-            session.execute(cqlStatement);
-        }
+        execute(session, 1);
     }
 
     /**
-     * Parses this script source into statements.
+     * Executes this script against the database, pipelining DML statements.
      *
-     * @param cqlScriptSource The script source to parse.
-     * @return The parsed statements.
-     */
-    /* private -> for testing */
-    List<String> parse(String cqlScriptSource) {
-        return linesToStatements(readLines(new StringReader(cqlScriptSource)));
-    }
-
-    /**
-     * Turns these lines in a series of statements.
-     *
-     * @param lines The lines to analyse.
-     * @return The statements contained in these lines (in order).
+     * @param session     Cassandra session
+     * @param asyncWindow The maximum number of statements in flight. {@code 1} or less executes the statements one at
+     *                    a time.
+     * @throws CassandraMigrationException when a statement failed, naming its line number.
+     * @see PipelinedStatementExecutor
      */
-    /* private -> for testing */
-    List<String> linesToStatements(List<String> lines) {
-        List<String> statements = new ArrayList<>();
-
-        Delimiter nonStandardDelimiter = null;
-        CqlStatementBuilder cqlStatementBuilder = new CqlStatementBuilder();
-        for (int lineNumber = 1; lineNumber <= lines.size(); lineNumber++) {
-            String line = lines.get(lineNumber - 1);
-
-            if (cqlStatementBuilder.isEmpty()) {
-                if (!StringUtils.hasText(line)) {
-                    // Skip empty line between statements.
+    public void execute(final Session session, int asyncWindow) {
+        PipelinedStatementExecutor executor =
+                asyncWindow > 1 ? new PipelinedStatementExecutor(session, asyncWindow) : null;
+        try (CqlStatementParser parser = openParser()) {
+            String cqlStatement;
+            while ((cqlStatement = parser.next()) != null) {
+                if (executor != null) {
+                    executor.execute(cqlStatement, parser.getLineNumber());
                     continue;
                 }
 
-                Delimiter newDelimiter = cqlStatementBuilder.extractNewDelimiterFromLine(line);
-                if (newDelimiter != null) {
-                    nonStandardDelimiter = newDelimiter;
-                    // Skip this line as it was an explicit delimiter change directive outside of any statements.
-                    continue;
-                }
-
-                cqlStatementBuilder.setLineNumber(lineNumber);
-
-                // Start a new statement, marking it with this line number.
-                if (nonStandardDelimiter != null) {
-                    cqlStatementBuilder.setDelimiter(nonStandardDelimiter);
+                LOG.debug("Executing CQL: " + cqlStatement);
+                try {
+                    session.execute(cqlStatement);
+                } catch (RuntimeException e) {
+                    throw new CassandraMigrationException("Unable to execute CQL at line " + parser.getLineNumber()
+                            + ": " + cqlStatement, e);
                 }
             }
-
-            cqlStatementBuilder.addLine(line);
-
-            if (cqlStatementBuilder.isTerminated()) {
-                String cqlStatement = cqlStatementBuilder.getCqlStatement();
-                statements.add(cqlStatement);
-                LOG.debug("Found statement: " + cqlStatement);
-
-                cqlStatementBuilder = new CqlStatementBuilder();
-            } else if (cqlStatementBuilder.canDiscard()) {
-                cqlStatementBuilder = new CqlStatementBuilder();
+            if (executor != null) {
+                executor.flush();
+            }
+        } catch (IOException e) {
+            throw parseFailure(e);
+        } finally {
+            if (executor != null) {
+                // Does nothing once flushed; otherwise no request may be left running when this method exits.
+                executor.drain();
             }
         }
-
-        // Catch any statements not followed by delimiter.
-        if (!cqlStatementBuilder.isEmpty()) {
-            statements.add(cqlStatementBuilder.getCqlStatement());
-        }
-
-        return statements;
     }
 
     /**
-     * Parses the textual data provided by this reader into a list of lines.
+     * Parses this script source into statements.
      *
-     * @param reader The reader for the textual data.
-     * @return The list of lines (in order).
-     * @throws IllegalStateException Thrown when the textual data parsing failed.
+     * @param cqlScriptSource The script source to parse.
+     * @return The parsed statements.
      */
-    private List<String> readLines(Reader reader) {
-        List<String> lines = new ArrayList<String>();
-
-        BufferedReader bufferedReader = new BufferedReader(reader);
-        String line;
+    /* private -> for testing */
+    List<String> parse(String cqlScriptSource) {
+        return new CqlScript(cqlScriptSource).getCqlStatements();
+    }
 
-        try {
-            while ((line = bufferedReader.readLine()) != null) {
-                lines.add(line);
-            }
-        } catch (IOException e) {
-            String message = resource == null ?
-                    "Unable to parse lines" :
-                    "Unable to parse " + resource.getLocation() + " (" + resource.getLocationOnDisk() + ")";
-            throw new CassandraMigrationException(message, e);
+    private CqlStatementParser openParser() {
+        if (resource == null) {
+            return new CqlStatementParser(new StringReader(cqlScriptSource));
         }
+        return new CqlStatementParser(new InputStreamReader(resource.openStream(), Charset.forName(encoding)));
+    }
 
-        return lines;
+    private CassandraMigrationException parseFailure(IOException e) {
+        String message = resource == null ?
+                "Unable to parse lines" :
+                "Unable to parse " + resource.getLocation() + " (" + resource.getLocationOnDisk() + ")";
+        return new CassandraMigrationException(message, e);
     }
 }
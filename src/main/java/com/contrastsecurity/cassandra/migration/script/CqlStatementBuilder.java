@@ -15,13 +15,13 @@
  */
 package com.contrastsecurity.cassandra.migration.script;
 
-import com.contrastsecurity.cassandra.migration.utils.StringUtils;
-
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Builds a CQL statement, one line at a time.
+ *
+ * <p>Each line is scanned once, character by character, by a small state machine tracking string literals,
+ * {@code $$} blocks and comments across lines. The statement is terminated by a line ending with the delimiter outside
+ * of any of those.</p>
  */
 public class CqlStatementBuilder {
     /**
@@ -45,30 +45,15 @@ public class CqlStatementBuilder {
     private boolean terminated;
 
     /**
-     * Are we currently inside a ' multi-line string literal.
-     */
-    private boolean insideQuoteStringLiteral = false;
-
-    /**
-     * Are we currently inside an alternate multi-line string literal.
+     * The state of the lexer at the end of the last processed line.
      */
-    private boolean insideAlternateQuoteStringLiteral = false;
-
-    /**
-     * The alternate quote that is expected to close the string literal.
-     */
-    private String alternateQuote;
+    private LexerState state = LexerState.CODE;
 
     /**
      * Whether the last processed line ended with a single line -- comment.
      */
     private boolean lineEndsWithSingleLineComment = false;
 
-    /**
-     * Are we inside a multi-line /*  *&#47; comment.
-     */
-    private boolean insideMultiLineComment = false;
-
     /**
      * Whether a non-comment part of a statement has already been seen.
      */
@@ -86,6 +71,13 @@ public class CqlStatementBuilder {
         return new Delimiter(";", false);
     }
 
+    /**
+     * @return The initial line number of this statement.
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
     /**
      * @param lineNumber The initial line number of this statement.
      */
@@ -136,26 +128,6 @@ public class CqlStatementBuilder {
         return null;
     }
 
-    /**
-     * Checks whether this line is in fact a directive disguised as a comment.
-     *
-     * @param line The line to analyse.
-     * @return {@code true} if it is a directive that should be processed by the database, {@code false} if not.
-     */
-    public boolean isCommentDirective(String line) {
-        return false;
-    }
-
-    /**
-     * Checks whether this line is just a single-line comment outside a statement or not.
-     *
-     * @param line The line to analyse.
-     * @return {@code true} if it is, {@code false} if not.
-     */
-    protected boolean isSingleLineComment(String line) {
-        return line.startsWith("--");
-    }
-
     /**
      * Adds this line to the current statement being built.
      *
@@ -167,70 +139,93 @@ public class CqlStatementBuilder {
         } else {
             statement.append("\n");
         }
-
-        String lineSimplified = simplifyLine(line);
-
-        applyStateChanges(lineSimplified);
-        if (endWithOpenMultilineStringLiteral() || insideMultiLineComment) {
-            statement.append(line);
-            return;
-        }
-
-        delimiter = changeDelimiterIfNecessary(lineSimplified, delimiter);
-
         statement.append(line);
 
-        if (isCommentDirective(lineSimplified)) {
-            nonCommentStatementPartSeen = true;
+        scan(line);
+        if (endWithOpenMultilineStringLiteral() || state == LexerState.MULTI_LINE_COMMENT) {
+            return;
         }
 
-        if (!lineEndsWithSingleLineComment && lineTerminatesStatement(lineSimplified, delimiter)) {
+        if (!lineEndsWithSingleLineComment && lineTerminatesStatement(line, delimiter)) {
             stripDelimiter(statement, delimiter);
             terminated = true;
         }
     }
 
     /**
-     * Checks whether the statement currently ends with an open multiline string literal.
+     * Runs the lexer over this line, carrying its state over from the previous line.
      *
-     * @return {@code true} if it does, {@code false} if it doesn't.
-     */
-    /* protected -> for testing */ boolean endWithOpenMultilineStringLiteral() {
-        return insideQuoteStringLiteral || insideAlternateQuoteStringLiteral;
-    }
-
-    /**
-     * @return Whether the current statement is only closed comments so far and can be discarded.
+     * @param line The line that was just added to the statement.
      */
-    public boolean canDiscard() {
-        return !insideAlternateQuoteStringLiteral && !insideQuoteStringLiteral && !insideMultiLineComment && !nonCommentStatementPartSeen;
+    private void scan(String line) {
+        lineEndsWithSingleLineComment = false;
+        int length = line.length();
+        for (int i = 0; i < length; i++) {
+            char c = line.charAt(i);
+            char next = i + 1 < length ? line.charAt(i + 1) : 0;
+            switch (state) {
+                case CODE:
+                    if (c == '-' && next == '-') {
+                        lineEndsWithSingleLineComment = true;
+                        return;
+                    } else if (c == '/' && next == '*') {
+                        state = LexerState.MULTI_LINE_COMMENT;
+                        i++;
+                    } else if (c == '\'') {
+                        state = LexerState.QUOTE_STRING_LITERAL;
+                        nonCommentStatementPartSeen = true;
+                    } else if (c == '$' && next == '$') {
+                        state = LexerState.DOLLAR_STRING_LITERAL;
+                        nonCommentStatementPartSeen = true;
+                        i++;
+                    } else if (!Character.isWhitespace(c)) {
+                        nonCommentStatementPartSeen = true;
+                    }
+                    break;
+                case QUOTE_STRING_LITERAL:
+                    if (c == '\'') {
+                        if (next == '\'') {
+                            // Escaped quote
+                            i++;
+                        } else {
+                            state = LexerState.CODE;
+                        }
+                    }
+                    break;
+                case DOLLAR_STRING_LITERAL:
+                    if (c == '$' && next == '$') {
+                        state = LexerState.CODE;
+                        i++;
+                    }
+                    break;
+                case MULTI_LINE_COMMENT:
+                    if (c == '*' && next == '/') {
+                        state = LexerState.CODE;
+                        i++;
+                    }
+                    break;
+            }
+        }
     }
 
     /**
-     * Simplifies this line to make it easier to parse.
+     * Checks whether the statement currently ends with an open multiline string literal.
      *
-     * @param line The line to simplify.
-     * @return The simplified line.
+     * @return {@code true} if it does, {@code false} if it doesn't.
      */
-    protected String simplifyLine(String line) {
-        return removeEscapedQuotes(line).replace("--", " -- ").replaceAll("\\s+", " ").trim().toUpperCase();
+    /* protected -> for testing */ boolean endWithOpenMultilineStringLiteral() {
+        return state == LexerState.QUOTE_STRING_LITERAL || state == LexerState.DOLLAR_STRING_LITERAL;
     }
 
     /**
-     * Checks whether this line in the cql script indicates that the statement delimiter will be different from the
-     * current one. Useful for database-specific stored procedures and block constructs.
-     *
-     * @param line      The simplified line to analyse.
-     * @param delimiter The current delimiter.
-     * @return The new delimiter to use (can be the same as the current one) or {@code null} for no delimiter.
+     * @return Whether the current statement is only closed comments so far and can be discarded.
      */
-    @SuppressWarnings({"UnusedDeclaration"})
-    protected Delimiter changeDelimiterIfNecessary(String line, Delimiter delimiter) {
-        return delimiter;
+    public boolean canDiscard() {
+        return state == LexerState.CODE && !nonCommentStatementPartSeen;
     }
 
     /**
-     * Checks whether this line terminates the current statement.
+     * Checks whether this line terminates the current statement, ignoring case and surrounding whitespace.
      *
      * @param line      The line to check.
      * @param delimiter The current delimiter.
@@ -241,13 +236,24 @@ public class CqlStatementBuilder {
             return false;
         }
 
-        String upperCaseDelimiter = delimiter.getDelimiter().toUpperCase();
+        String delimiterString = delimiter.getDelimiter();
+        int end = line.length();
+        while (end > 0 && Character.isWhitespace(line.charAt(end - 1))) {
+            end--;
+        }
+        int start = end - delimiterString.length();
+        if (start < 0 || !line.regionMatches(true, start, delimiterString, 0, delimiterString.length())) {
+            return false;
+        }
 
         if (delimiter.isAloneOnLine()) {
-            return line.equals(upperCaseDelimiter);
+            for (int i = 0; i < start; i++) {
+                if (!Character.isWhitespace(line.charAt(i))) {
+                    return false;
+                }
+            }
         }
-
-        return line.endsWith(upperCaseDelimiter);
+        return true;
     }
 
     /**
@@ -270,186 +276,26 @@ public class CqlStatementBuilder {
     }
 
     /**
-     * Extracts the alternate open quote from this token (if any).
-     *
-     * @param token The token to check.
-     * @return The alternate open quote. {@code null} if none.
-     */
-    protected String extractAlternateOpenQuote(String token) {
-        return null;
-    }
-
-    /**
-     * Computes the alternate closing quote for this open quote.
-     *
-     * @param openQuote The alternate open quote.
-     * @return The close quote.
-     */
-    protected String computeAlternateCloseQuote(String openQuote) {
-        return openQuote;
-    }
-
-    /**
-     * Applies any state changes resulting from this line being added.
-     *
-     * @param line The line that was just added to the statement.
-     */
-    protected void applyStateChanges(String line) {
-        //Ignore all special characters that naturally occur in CQL, but are not opening or closing string literals
-        String[] tokens = StringUtils.tokenizeToStringArray(line, " @<>;:=|(),+{}");
-
-        List<TokenType> delimitingTokens = extractStringLiteralDelimitingTokens(tokens);
-
-        lineEndsWithSingleLineComment = false;
-        for (TokenType delimitingToken : delimitingTokens) {
-            if (!insideQuoteStringLiteral && !insideAlternateQuoteStringLiteral
-                    && TokenType.MULTI_LINE_COMMENT.equals(delimitingToken)) {
-                insideMultiLineComment = !insideMultiLineComment;
-            }
-
-            if (!insideQuoteStringLiteral && !insideAlternateQuoteStringLiteral && !insideMultiLineComment
-                    && TokenType.SINGLE_LINE_COMMENT.equals(delimitingToken)) {
-                lineEndsWithSingleLineComment = true;
-                return;
-            }
-
-            if (!insideMultiLineComment && !insideQuoteStringLiteral &&
-                    TokenType.ALTERNATE_QUOTE.equals(delimitingToken)) {
-                insideAlternateQuoteStringLiteral = !insideAlternateQuoteStringLiteral;
-            }
-
-            if (!insideMultiLineComment && !insideAlternateQuoteStringLiteral &&
-                    TokenType.QUOTE.equals(delimitingToken)) {
-                insideQuoteStringLiteral = !insideQuoteStringLiteral;
-            }
-
-            if (!insideMultiLineComment && !insideQuoteStringLiteral && !insideAlternateQuoteStringLiteral &&
-                    TokenType.OTHER.equals(delimitingToken)) {
-                nonCommentStatementPartSeen = true;
-            }
-        }
-    }
-
-    /**
-     * Extract the type of all tokens that potentially delimit string literals.
-     *
-     * @param tokens The tokens to analyse.
-     * @return The list of potentially delimiting string literals token types per token. Tokens that do not have any
-     * impact on string delimiting are discarded.
-     */
-    private List<TokenType> extractStringLiteralDelimitingTokens(String[] tokens) {
-        List<TokenType> delimitingTokens = new ArrayList<TokenType>();
-        for (String token : tokens) {
-            String cleanToken = cleanToken(token);
-            boolean handled = false;
-
-            if (alternateQuote == null) {
-                String alternateQuoteFromToken = extractAlternateOpenQuote(cleanToken);
-                if (alternateQuoteFromToken != null) {
-                    String closeQuote = computeAlternateCloseQuote(alternateQuoteFromToken);
-                    if (cleanToken.length() >= (alternateQuoteFromToken.length() + closeQuote.length())
-                            && cleanToken.startsWith(alternateQuoteFromToken) && cleanToken.endsWith(closeQuote)) {
-                        //Skip $$abc$$, ...
-                        continue;
-                    }
-
-                    alternateQuote = closeQuote;
-                    delimitingTokens.add(TokenType.ALTERNATE_QUOTE);
-
-                    continue;
-                }
-            }
-            if ((alternateQuote != null) && cleanToken.endsWith(alternateQuote)) {
-                alternateQuote = null;
-                delimitingTokens.add(TokenType.ALTERNATE_QUOTE);
-                continue;
-            }
-
-            if ((cleanToken.length() >= 2) && cleanToken.startsWith("'") && cleanToken.endsWith("'")) {
-                //Skip '', 'abc', ...
-                continue;
-            }
-            if ((cleanToken.length() >= 4) && cleanToken.startsWith("/*") && cleanToken.endsWith("*/")) {
-                //Skip /**/, /*comment*/, ...
-                continue;
-            }
-
-            if (isSingleLineComment(cleanToken)) {
-                delimitingTokens.add(TokenType.SINGLE_LINE_COMMENT);
-                handled = true;
-            }
-
-            if (cleanToken.startsWith("/*")) {
-                delimitingTokens.add(TokenType.MULTI_LINE_COMMENT);
-                handled = true;
-            } else if (cleanToken.startsWith("'")) {
-                delimitingTokens.add(TokenType.QUOTE);
-                handled = true;
-            }
-
-            if (!cleanToken.startsWith("/*") && cleanToken.endsWith("*/")) {
-                delimitingTokens.add(TokenType.MULTI_LINE_COMMENT);
-                handled = true;
-            } else if (!cleanToken.startsWith("'") && cleanToken.endsWith("'")) {
-                delimitingTokens.add(TokenType.QUOTE);
-                handled = true;
-            }
-
-            if (!handled) {
-                delimitingTokens.add(TokenType.OTHER);
-            }
-        }
-
-        return delimitingTokens;
-    }
-
-    /**
-     * Removes escaped quotes from this token.
-     *
-     * @param token The token to parse.
-     * @return The cleaned token.
-     */
-    protected String removeEscapedQuotes(String token) {
-        return StringUtils.replaceAll(token, "''", "");
-    }
-
-    /**
-     * Performs additional cleanup on this token, such as removing charset casting that prefixes string literals.
-     * Must be implemented in dialect specific sub classes.
-     *
-     * @param token The token to clean.
-     * @return The cleaned token.
-     */
-    protected String cleanToken(String token) {
-        return token;
-    }
-
-    /**
-     * The types of tokens relevant for string delimiter related parsing.
+     * The states of the lexer.
      */
-    private static enum TokenType {
-        /**
-         * Some other token.
-         */
-        OTHER,
-
+    private enum LexerState {
         /**
-         * Token opens or closes a ' string literal
+         * Plain CQL, outside of any literal or comment.
          */
-        QUOTE,
+        CODE,
 
         /**
-         * Token opens or closes an alternate string literal
+         * Inside a ' string literal.
          */
-        ALTERNATE_QUOTE,
+        QUOTE_STRING_LITERAL,
 
         /**
-         * Token starts end of line comment
+         * Inside a $$ string literal, such as the body of a function.
          */
-        SINGLE_LINE_COMMENT,
+        DOLLAR_STRING_LITERAL,
 
         /**
-         * Token opens or closes multi-line comment
+         * Inside a multi-line /*  *&#47; comment.
          */
         MULTI_LINE_COMMENT
     }
@@ -0,0 +1,113 @@
+package com.contrastsecurity.cassandra.migration.script;
+
+import com.contrastsecurity.cassandra.migration.logging.Log;
+import com.contrastsecurity.cassandra.migration.logging.LogFactory;
+import com.contrastsecurity.cassandra.migration.utils.StringUtils;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Splits a cql script into statements while reading it, one statement at a time.
+ *
+ * <p>Only the statement being built is held in memory, whatever the size of the script.</p>
+ */
+public class CqlStatementParser implements Closeable {
+    private static final Log LOG = LogFactory.getLog(CqlStatementParser.class);
+
+    private final BufferedReader reader;
+
+    /**
+     * The number of lines read so far.
+     */
+    private int lineNumber;
+
+    /**
+     * The line number the last returned statement starts at.
+     */
+    private int statementLineNumber;
+
+    /**
+     * The delimiter set by an explicit delimiter change directive, {@code null} for the default one.
+     */
+    private Delimiter nonStandardDelimiter;
+
+    /**
+     * Creates a new parser.
+     *
+     * @param reader The reader of the script. It is closed with this parser.
+     */
+    public CqlStatementParser(Reader reader) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    }
+
+    /**
+     * Reads the next statement of the script.
+     *
+     * @return The statement, with its delimiter stripped off, or {@code null} at the end of the script.
+     * @throws IOException when the script could not be read.
+     */
+    public String next() throws IOException {
+        CqlStatementBuilder cqlStatementBuilder = new CqlStatementBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+
+            if (cqlStatementBuilder.isEmpty()) {
+                if (!StringUtils.hasText(line)) {
+                    // Skip empty line between statements.
+                    continue;
+                }
+
+                Delimiter newDelimiter = cqlStatementBuilder.extractNewDelimiterFromLine(line);
+                if (newDelimiter != null) {
+                    nonStandardDelimiter = newDelimiter;
+                    // Skip this line as it was an explicit delimiter change directive outside of any statements.
+                    continue;
+                }
+
+                cqlStatementBuilder.setLineNumber(lineNumber);
+
+                // Start a new statement, marking it with this line number.
+                if (nonStandardDelimiter != null) {
+                    cqlStatementBuilder.setDelimiter(nonStandardDelimiter);
+                }
+            }
+
+            cqlStatementBuilder.addLine(line);
+
+            if (cqlStatementBuilder.isTerminated()) {
+                return found(cqlStatementBuilder);
+            } else if (cqlStatementBuilder.canDiscard()) {
+                cqlStatementBuilder = new CqlStatementBuilder();
+            }
+        }
+
+        // Catch any statement not followed by delimiter.
+        if (!cqlStatementBuilder.isEmpty()) {
+            return found(cqlStatementBuilder);
+        }
+        return null;
+    }
+
+    private String found(CqlStatementBuilder cqlStatementBuilder) {
+        statementLineNumber = cqlStatementBuilder.getLineNumber();
+        String cqlStatement = cqlStatementBuilder.getCqlStatement();
+        LOG.debug("Found statement at line " + statementLineNumber + ": " + cqlStatement);
+        return cqlStatement;
+    }
+
+    /**
+     * @return The line number the last returned statement starts at.
+     */
+    public int getLineNumber() {
+        return statementLineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
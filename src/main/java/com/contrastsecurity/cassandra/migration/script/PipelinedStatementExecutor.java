@@ -0,0 +1,177 @@
+package com.contrastsecurity.cassandra.migration.script;
+
+import com.contrastsecurity.cassandra.migration.CassandraMigrationException;
+import com.contrastsecurity.cassandra.migration.logging.Log;
+import com.contrastsecurity.cassandra.migration.logging.LogFactory;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Executes cql statements asynchronously, keeping a bounded window of requests in flight.
+ *
+ * <p>Only plain DML is pipelined. Every other statement (DDL, SELECT, lightweight transactions, updates reading the
+ * current value of a column such as list appends) acts as a barrier: all in-flight requests are completed before it
+ * is executed synchronously.</p>
+ *
+ * <p>Execution stops on the first failure. The requests still in flight are awaited and a
+ * {@link CassandraMigrationException} naming the failing statement is thrown.</p>
+ */
+public class PipelinedStatementExecutor {
+    private static final Log LOG = LogFactory.getLog(PipelinedStatementExecutor.class);
+
+    /**
+     * Lightweight transactions: {@code IF NOT EXISTS}, {@code IF EXISTS} or {@code IF col = ...}.
+     */
+    private static final Pattern CONDITIONAL = Pattern.compile("\\sIF\\s", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Assignments depending on the current value of a column: {@code col = col + ...} or {@code col = [...] + col}.
+     */
+    private static final Pattern SELF_REFERENCING =
+            Pattern.compile("(\\w+)\\s*=\\s*(\\1\\s*[+-]|[\\[{].*[\\]}]\\s*\\+\\s*\\1\\b)", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Element accesses: {@code SET l[1] = ...} or {@code DELETE l[1] FROM ...}. Writing a list element by index reads
+     * the list first, so it depends on the appends still in flight. Map elements are matched as well, conservatively.
+     */
+    private static final Pattern ELEMENT_ACCESS = Pattern.compile("\\b\\w+\\s*\\[");
+
+    private final Session session;
+
+    /**
+     * The maximum number of requests in flight.
+     */
+    private final int window;
+
+    /**
+     * The requests in flight, oldest first.
+     */
+    private final Deque<InFlight> inFlight = new ArrayDeque<>();
+
+    /**
+     * Creates a new executor.
+     *
+     * @param session The session to execute the statements with.
+     * @param window  The maximum number of requests in flight.
+     */
+    public PipelinedStatementExecutor(Session session, int window) {
+        this.session = session;
+        this.window = Math.max(1, window);
+    }
+
+    /**
+     * Executes this statement, asynchronously if it can be pipelined.
+     *
+     * @param cqlStatement The statement to execute.
+     * @throws CassandraMigrationException when this or an earlier statement failed.
+     */
+    public void execute(String cqlStatement) {
+        execute(cqlStatement, 0);
+    }
+
+    /**
+     * Executes this statement, asynchronously if it can be pipelined.
+     *
+     * @param cqlStatement The statement to execute.
+     * @param lineNumber   The line number of the statement in its script, reported on failure.
+     * @throws CassandraMigrationException when this or an earlier statement failed.
+     */
+    public void execute(String cqlStatement, int lineNumber) {
+        if (!isPipelinable(cqlStatement)) {
+            flush();
+            LOG.debug("Executing CQL: " + cqlStatement);
+            try {
+                session.execute(cqlStatement);
+            } catch (RuntimeException e) {
+                throw failure(cqlStatement, lineNumber, e);
+            }
+            return;
+        }
+
+        if (inFlight.size() >= window) {
+            await(inFlight.removeFirst());
+        }
+
+        LOG.debug("Executing CQL asynchronously: " + cqlStatement);
+        inFlight.addLast(new InFlight(cqlStatement, lineNumber, session.executeAsync(cqlStatement)));
+    }
+
+    /**
+     * Waits for all requests in flight to complete.
+     *
+     * @throws CassandraMigrationException when one of them failed.
+     */
+    public void flush() {
+        while (!inFlight.isEmpty()) {
+            await(inFlight.removeFirst());
+        }
+    }
+
+    /**
+     * Waits for this request. On failure, the remaining requests are drained before the failure is reported.
+     *
+     * @param request The request to wait for.
+     */
+    private void await(InFlight request) {
+        try {
+            request.future.getUninterruptibly();
+        } catch (RuntimeException e) {
+            drain();
+            throw failure(request.cqlStatement, request.lineNumber, e);
+        }
+    }
+
+    /**
+     * Waits for the remaining requests, ignoring their outcome. Used when giving up on a script, so that no request
+     * is still running once the failure is reported.
+     */
+    public void drain() {
+        while (!inFlight.isEmpty()) {
+            InFlight request = inFlight.removeFirst();
+            try {
+                request.future.getUninterruptibly();
+            } catch (RuntimeException e) {
+                LOG.debug("Statement also failed: " + request.cqlStatement + " (" + e.getMessage() + ")");
+            }
+        }
+    }
+
+    private CassandraMigrationException failure(String cqlStatement, int lineNumber, RuntimeException cause) {
+        String location = lineNumber > 0 ? " at line " + lineNumber : "";
+        return new CassandraMigrationException("Unable to execute CQL" + location + ": " + cqlStatement, cause);
+    }
+
+    /**
+     * Checks whether this statement can be sent without waiting for the statements before it.
+     *
+     * @param cqlStatement The statement to check.
+     * @return {@code true} for plain DML, {@code false} for anything that must act as a barrier.
+     */
+    /* private -> for testing */
+    static boolean isPipelinable(String cqlStatement) {
+        String upper = cqlStatement.trim().toUpperCase(Locale.ENGLISH);
+        if (!(upper.startsWith("INSERT") || upper.startsWith("UPDATE") || upper.startsWith("DELETE")
+                || upper.startsWith("BEGIN"))) {
+            return false;
+        }
+        return !CONDITIONAL.matcher(cqlStatement).find() && !SELF_REFERENCING.matcher(cqlStatement).find()
+                && !ELEMENT_ACCESS.matcher(cqlStatement).find();
+    }
+
+    private static class InFlight {
+        private final String cqlStatement;
+        private final int lineNumber;
+        private final ResultSetFuture future;
+
+        InFlight(String cqlStatement, int lineNumber, ResultSetFuture future) {
+            this.cqlStatement = cqlStatement;
+            this.lineNumber = lineNumber;
+            this.future = future;
+        }
+    }
+}
@@ -15,6 +15,8 @@
  */
 package com.contrastsecurity.cassandra.migration.utils.scanner;
 
+import java.io.InputStream;
+
 public interface Resource {
     /**
      * @return The location of the resource on the classpath (path and filename).
@@ -43,8 +45,23 @@ public interface Resource {
      */
     byte[] loadAsBytes();
 
+    /**
+     * Opens a stream over the contents of this resource, to process it without loading it in memory.
+     *
+     * @return The stream. It must be closed by the caller.
+     */
+    InputStream openStream();
+
     /**
      * @return The filename of this resource, without the path.
      */
     String getFilename();
+
+    /**
+     * Retrieves a fingerprint of the file holding this resource: its path, size and modification time. The fingerprint
+     * changes whenever the file is modified.
+     *
+     * @return The fingerprint, or {@code null} if this resource is not held by a file.
+     */
+    String getFingerprint();
 }
@@ -0,0 +1,166 @@
+package com.contrastsecurity.cassandra.migration.utils.scanner.classpath;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The header of a class file: its name, access flags, superclass and interfaces, as read from the constant pool and
+ * the interface table without loading the class.
+ */
+class ClassFileInfo {
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final int ACC_INTERFACE = 0x0200;
+    private static final int ACC_ABSTRACT = 0x0400;
+    private static final int ACC_ENUM = 0x4000;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELD_REF = 9;
+    private static final int CONSTANT_METHOD_REF = 10;
+    private static final int CONSTANT_INTERFACE_METHOD_REF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private final String name;
+    private final int accessFlags;
+    private final String superName;
+    private final String[] interfaceNames;
+
+    private ClassFileInfo(String name, int accessFlags, String superName, String[] interfaceNames) {
+        this.name = name;
+        this.accessFlags = accessFlags;
+        this.superName = superName;
+        this.interfaceNames = interfaceNames;
+    }
+
+    /**
+     * Reads the header of the class file read by this stream. Only the constant pool and the interface table are
+     * read, the stream is not closed.
+     *
+     * @param inputStream The stream positioned at the start of the class file.
+     * @return The header.
+     * @throws IOException when the stream could not be read or is not a class file.
+     */
+    static ClassFileInfo read(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(inputStream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        in.readUnsignedShort(); // minor version
+        in.readUnsignedShort(); // major version
+
+        int constantPoolCount = in.readUnsignedShort();
+        // Only the UTF-8 entries and the name indexes of the class entries are kept
+        String[] utf8 = new String[constantPoolCount];
+        int[] classNameIndexes = new int[constantPoolCount];
+        for (int i = 1; i < constantPoolCount; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    utf8[i] = in.readUTF();
+                    break;
+                case CONSTANT_CLASS:
+                    classNameIndexes[i] = in.readUnsignedShort();
+                    break;
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    skip(in, 2);
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    skip(in, 3);
+                    break;
+                case CONSTANT_INTEGER:
+                case CONSTANT_FLOAT:
+                case CONSTANT_FIELD_REF:
+                case CONSTANT_METHOD_REF:
+                case CONSTANT_INTERFACE_METHOD_REF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    skip(in, 4);
+                    break;
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    skip(in, 8);
+                    // 8 byte constants take two entries
+                    i++;
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag + " at entry " + i);
+            }
+        }
+
+        int accessFlags = in.readUnsignedShort();
+        String name = className(utf8, classNameIndexes, in.readUnsignedShort());
+        String superName = className(utf8, classNameIndexes, in.readUnsignedShort());
+        String[] interfaceNames = new String[in.readUnsignedShort()];
+        for (int i = 0; i < interfaceNames.length; i++) {
+            interfaceNames[i] = className(utf8, classNameIndexes, in.readUnsignedShort());
+        }
+        return new ClassFileInfo(name, accessFlags, superName, interfaceNames);
+    }
+
+    private static void skip(DataInputStream in, int count) throws IOException {
+        if (in.skipBytes(count) != count) {
+            throw new IOException("Truncated class file");
+        }
+    }
+
+    private static String className(String[] utf8, int[] classNameIndexes, int index) throws IOException {
+        if (index == 0) {
+            return null;
+        }
+        if (index >= classNameIndexes.length || classNameIndexes[index] == 0
+                || utf8[classNameIndexes[index]] == null) {
+            throw new IOException("Invalid class reference at entry " + index);
+        }
+        return utf8[classNameIndexes[index]].replace('/', '.');
+    }
+
+    /**
+     * @return The fully qualified name of the class.
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return The fully qualified name of the superclass, {@code null} for {@code java.lang.Object}.
+     */
+    String getSuperName() {
+        return superName;
+    }
+
+    /**
+     * @return The fully qualified names of the directly implemented interfaces, or extended ones for an interface.
+     */
+    String[] getInterfaceNames() {
+        return interfaceNames;
+    }
+
+    /**
+     * @return Whether this class can not be instantiated as is: an interface, an abstract class, an enum, or an
+     * anonymous or local class (whose binary name ends with {@code $} followed by a digit).
+     */
+    boolean isNonInstantiable() {
+        if ((accessFlags & (ACC_INTERFACE | ACC_ABSTRACT | ACC_ENUM)) != 0) {
+            return true;
+        }
+        int dollar = name.lastIndexOf('$');
+        return dollar >= 0 && dollar + 1 < name.length() && Character.isDigit(name.charAt(dollar + 1));
+    }
+}
@@ -20,7 +20,10 @@ import com.contrastsecurity.cassandra.migration.utils.FileCopyUtils;
 import com.contrastsecurity.cassandra.migration.utils.scanner.Resource;
 
 import java.io.*;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLConnection;
 import java.net.URLDecoder;
 import java.nio.charset.Charset;
 
@@ -98,10 +101,47 @@ public class ClassPathResource implements Comparable<ClassPathResource>, Resourc
         }
     }
 
+    public InputStream openStream() {
+        InputStream inputStream = classLoader.getResourceAsStream(location);
+        if (inputStream == null) {
+            throw new CassandraMigrationException("Unable to obtain inputstream for resource: " + location);
+        }
+        return inputStream;
+    }
+
     public String getFilename() {
         return location.substring(location.lastIndexOf("/") + 1);
     }
 
+    public String getFingerprint() {
+        URL url = getUrl();
+        if (url == null) {
+            return null;
+        }
+        try {
+            if ("file".equals(url.getProtocol())) {
+                File file = new File(url.toURI());
+                return file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+            }
+            if ("jar".equals(url.getProtocol())) {
+                // The entries of a jar change with the jar itself
+                URLConnection connection = url.openConnection();
+                if (connection instanceof JarURLConnection) {
+                    JarURLConnection jarConnection = (JarURLConnection) connection;
+                    URL jarFileUrl = jarConnection.getJarFileURL();
+                    if ("file".equals(jarFileUrl.getProtocol())) {
+                        File file = new File(jarFileUrl.toURI());
+                        return file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified()
+                                + "!" + jarConnection.getEntryName();
+                    }
+                }
+            }
+        } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+        return null;
+    }
+
     public boolean exists() {
         return getUrl() != null;
     }
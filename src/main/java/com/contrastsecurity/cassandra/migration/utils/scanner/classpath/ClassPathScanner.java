@@ -18,13 +18,13 @@ package com.contrastsecurity.cassandra.migration.utils.scanner.classpath;
 import com.contrastsecurity.cassandra.migration.CassandraMigrationException;
 import com.contrastsecurity.cassandra.migration.logging.Log;
 import com.contrastsecurity.cassandra.migration.logging.LogFactory;
-import com.contrastsecurity.cassandra.migration.utils.ClassUtils;
 import com.contrastsecurity.cassandra.migration.utils.FeatureDetector;
 import com.contrastsecurity.cassandra.migration.utils.UrlUtils;
 import com.contrastsecurity.cassandra.migration.utils.scanner.Resource;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.lang.reflect.Modifier;
+import java.io.InputStream;
 import java.net.URL;
 import java.net.URLDecoder;
 import java.util.*;
@@ -74,6 +74,9 @@ public class ClassPathScanner {
      * Scans the classpath for concrete classes under the specified package implementing this interface.
      * Non-instantiable abstract classes are filtered out.
      *
+     * <p>The class files are matched on their bytecode, following their superclasses and interfaces through the
+     * constant pool, so that only the matching classes get loaded. They are loaded without being initialized.</p>
+     *
      * @param location             The location (package) in the classpath to start scanning.
      *                             Subpackages are also scanned.
      * @param implementedInterface The interface the matching classes should implement.
@@ -84,34 +87,100 @@ public class ClassPathScanner {
         LOG.debug("Scanning for classes at '" + location + "' (Implementing: '" + implementedInterface.getName() + "')");
 
         List<Class<?>> classes = new ArrayList<Class<?>>();
+        Map<String, Boolean> subtypes = new HashMap<String, Boolean>();
 
         Set<String> resourceNames = findResourceNames(location, "", ".class");
         for (String resourceName : resourceNames) {
             String className = toClassName(resourceName);
-            Class<?> clazz = classLoader.loadClass(className);
+            ClassFileInfo classFileInfo = readClassFile(className);
+            if (classFileInfo == null) {
+                throw new CassandraMigrationException("Unable to read class file: " + resourceName);
+            }
 
-            if (Modifier.isAbstract(clazz.getModifiers()) || clazz.isEnum() || clazz.isAnonymousClass()) {
+            if (classFileInfo.isNonInstantiable()) {
                 LOG.debug("Skipping non-instantiable class: " + className);
                 continue;
             }
 
-            if (!implementedInterface.isAssignableFrom(clazz)) {
+            if (!isSubtype(classFileInfo, implementedInterface, subtypes)) {
                 continue;
             }
 
-            try {
-                ClassUtils.instantiate(className, classLoader);
-            } catch (Exception e) {
-                throw new CassandraMigrationException("Unable to instantiate class: " + className, e);
-            }
-
-            classes.add(clazz);
+            classes.add(Class.forName(className, false, classLoader));
             LOG.debug("Found class: " + className);
         }
 
         return classes.toArray(new Class<?>[classes.size()]);
     }
 
+    /**
+     * Checks whether this class extends or implements this type, reading the class files of its supertypes. Only the
+     * supertypes whose class file is not available, such as the ones of the JDK, are loaded.
+     *
+     * @param classFileInfo The class to check.
+     * @param type          The type to look for.
+     * @param subtypes      The supertypes already checked, by name.
+     * @return {@code true} if the class is a subtype of this type.
+     */
+    private boolean isSubtype(ClassFileInfo classFileInfo, Class<?> type, Map<String, Boolean> subtypes) {
+        List<String> supertypeNames = new ArrayList<String>();
+        if (classFileInfo.getSuperName() != null) {
+            supertypeNames.add(classFileInfo.getSuperName());
+        }
+        supertypeNames.addAll(Arrays.asList(classFileInfo.getInterfaceNames()));
+
+        for (String supertypeName : supertypeNames) {
+            if (isSubtype(supertypeName, type, subtypes)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isSubtype(String className, Class<?> type, Map<String, Boolean> subtypes) {
+        if (className.equals(type.getName())) {
+            return true;
+        }
+        Boolean subtype = subtypes.get(className);
+        if (subtype != null) {
+            return subtype;
+        }
+        // Guards against cycles in broken hierarchies
+        subtypes.put(className, false);
+
+        ClassFileInfo classFileInfo = className.startsWith("java.") ? null : readClassFile(className);
+        if (classFileInfo != null) {
+            subtype = isSubtype(classFileInfo, type, subtypes);
+        } else {
+            try {
+                subtype = type.isAssignableFrom(Class.forName(className, false, classLoader));
+            } catch (ClassNotFoundException | LinkageError e) {
+                subtype = false;
+            }
+        }
+        subtypes.put(className, subtype);
+        return subtype;
+    }
+
+    /**
+     * Reads the header of the class file of this class.
+     *
+     * @param className The fully qualified class name.
+     * @return The header, or {@code null} if the class file is not available or could not be read.
+     */
+    private ClassFileInfo readClassFile(String className) {
+        InputStream inputStream = classLoader.getResourceAsStream(className.replace('.', '/') + ".class");
+        if (inputStream == null) {
+            return null;
+        }
+        try (InputStream classFile = new BufferedInputStream(inputStream)) {
+            return ClassFileInfo.read(classFile);
+        } catch (IOException e) {
+            LOG.debug("Unable to read class file of " + className + ": " + e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Converts this resource name to a fully qualified class name.
      *
@@ -20,10 +20,7 @@ import java.net.JarURLConnection;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
-import java.util.Enumeration;
 import java.util.Set;
-import java.util.TreeSet;
-import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
 /**
@@ -31,12 +28,18 @@ import java.util.jar.JarFile;
  */
 public class JarFileClassPathLocationScanner implements ClassPathLocationScanner {
     public Set<String> findResourceNames(String location, URL locationUrl) throws IOException {
+        // Jars on disk are indexed once for the whole JVM
+        JarIndex.Root root = JarIndex.forUrl(locationUrl);
+        if (root != null) {
+            return root.findResourceNames(location);
+        }
+
         JarFile jarFile = getJarFromUrl(locationUrl);
 
         try {
             // For Tomcat and non-expanded WARs.
             String prefix = jarFile.getName().toLowerCase().endsWith(".war") ? "WEB-INF/classes/" : "";
-            return findResourceNamesFromJarFile(jarFile, prefix, location);
+            return new JarIndex.Root(JarIndex.of(jarFile), prefix).findResourceNames(location);
         } finally {
             jarFile.close();
         }
@@ -80,28 +83,4 @@ public class JarFileClassPathLocationScanner implements ClassPathLocationScanner
 
         return new JarFile(urlFile);
     }
-
-    /**
-     * Finds all the resource names contained in this directory within this jar file.
-     *
-     * @param jarFile  The jar file.
-     * @param prefix   The prefix to ignore within the jar file.
-     * @param location The location to look under.
-     * @return The resource names.
-     * @throws IOException when reading the jar file failed.
-     */
-    private Set<String> findResourceNamesFromJarFile(JarFile jarFile, String prefix, String location) throws IOException {
-        String toScan = prefix + location + (location.endsWith("/") ? "" : "/");
-        Set<String> resourceNames = new TreeSet<String>();
-
-        Enumeration<JarEntry> entries = jarFile.entries();
-        while (entries.hasMoreElements()) {
-            String entryName = entries.nextElement().getName();
-            if (entryName.startsWith(toScan)) {
-                resourceNames.add(entryName.substring(prefix.length()));
-            }
-        }
-
-        return resourceNames;
-    }
 }
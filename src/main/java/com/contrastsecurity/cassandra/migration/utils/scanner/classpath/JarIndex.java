@@ -0,0 +1,241 @@
+package com.contrastsecurity.cassandra.migration.utils.scanner.classpath;
+
+import com.contrastsecurity.cassandra.migration.logging.Log;
+import com.contrastsecurity.cassandra.migration.logging.LogFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+
+/**
+ * Index of the entries of a jar, grouped by directory, so that the resources below a location are found without
+ * walking the whole jar.
+ *
+ * <p>Indexes are shared by all scanners of the JVM: a jar is only walked once, until it is modified. Nested jars of
+ * fat jar layouts ({@code app.jar!/BOOT-INF/lib/lib.jar!/}) are indexed as well, as are directories used as class path
+ * roots inside a jar ({@code app.jar!/BOOT-INF/classes!/}).</p>
+ */
+class JarIndex {
+    private static final Log LOG = LogFactory.getLog(JarIndex.class);
+
+    /**
+     * The indexes of the jars scanned so far, by path (including the nested jars).
+     */
+    private static final ConcurrentMap<String, JarIndex> INDEXES = new ConcurrentHashMap<String, JarIndex>();
+
+    /**
+     * The size and modification time of the jar file on disk when indexed.
+     */
+    private final long length;
+    private final long lastModified;
+
+    /**
+     * The names of the entries, by directory (with a trailing slash).
+     */
+    private final NavigableMap<String, List<String>> entriesByDirectory = new TreeMap<String, List<String>>();
+
+    private JarIndex(long length, long lastModified) {
+        this.length = length;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Finds the index of the jar holding the location at this URL, building it if needed.
+     *
+     * @param locationUrl The URL of a location inside a jar, such as {@code jar:file:/app.jar!/db/migration}.
+     * @return The index of the innermost jar holding the location, along with the directory inside of it that is the
+     * root of the class path. {@code null} if the jar is not a file on disk.
+     * @throws IOException when the jar could not be read.
+     */
+    static Root forUrl(URL locationUrl) throws IOException {
+        String[] segments = locationUrl.getFile().split("!/");
+        if (segments.length < 2) {
+            return null;
+        }
+        File file = toFile(segments[0]);
+        if (file == null || !file.isFile()) {
+            return null;
+        }
+
+        // The segments between the jar and the location are nested jars or class path roots inside the jar
+        List<String> nestedJars = new ArrayList<String>();
+        String directory = "";
+        for (int i = 1; i < segments.length - 1; i++) {
+            if (segments[i].toLowerCase().endsWith(".jar")) {
+                nestedJars.add(directory + segments[i]);
+                directory = "";
+            } else {
+                directory += segments[i] + "/";
+            }
+        }
+        String innermost = nestedJars.isEmpty() ? file.getName() : nestedJars.get(nestedJars.size() - 1);
+        if (directory.isEmpty() && innermost.toLowerCase().endsWith(".war")) {
+            // For Tomcat and non-expanded WARs.
+            directory = "WEB-INF/classes/";
+        }
+
+        String key = file.getCanonicalPath() + (nestedJars.isEmpty() ? "" : "!/" + join(nestedJars));
+        JarIndex index = INDEXES.get(key);
+        if (index == null || index.length != file.length() || index.lastModified != file.lastModified()) {
+            index = build(file, nestedJars);
+            INDEXES.put(key, index);
+        }
+        return new Root(index, directory);
+    }
+
+    /**
+     * Builds an index for this jar, read directly by this jar file.
+     *
+     * @param jarFile The jar file.
+     * @return The index, not shared.
+     */
+    static JarIndex of(JarFile jarFile) {
+        JarIndex index = new JarIndex(0, 0);
+        index.addAll(jarFile);
+        return index;
+    }
+
+    private static JarIndex build(File file, List<String> nestedJars) throws IOException {
+        long length = file.length();
+        long lastModified = file.lastModified();
+        LOG.debug("Indexing jar: " + file + (nestedJars.isEmpty() ? "" : "!/" + join(nestedJars)));
+
+        try (JarFile jarFile = new JarFile(file)) {
+            if (nestedJars.isEmpty()) {
+                JarIndex index = new JarIndex(length, lastModified);
+                index.addAll(jarFile);
+                return index;
+            }
+
+            JarEntry entry = jarFile.getJarEntry(nestedJars.get(0));
+            if (entry == null) {
+                throw new IOException("Unable to find nested jar " + nestedJars.get(0) + " in " + file);
+            }
+            try (InputStream inputStream = jarFile.getInputStream(entry)) {
+                JarInputStream jarInputStream = new JarInputStream(inputStream);
+                for (int i = 1; i < nestedJars.size(); i++) {
+                    jarInputStream = openNestedJar(jarInputStream, nestedJars.get(i));
+                }
+
+                JarIndex index = new JarIndex(length, lastModified);
+                JarEntry nestedEntry;
+                while ((nestedEntry = jarInputStream.getNextJarEntry()) != null) {
+                    index.add(nestedEntry.getName());
+                }
+                return index;
+            }
+        }
+    }
+
+    private static JarInputStream openNestedJar(JarInputStream jarInputStream, String name) throws IOException {
+        JarEntry entry;
+        while ((entry = jarInputStream.getNextJarEntry()) != null) {
+            if (entry.getName().equals(name)) {
+                return new JarInputStream(jarInputStream);
+            }
+        }
+        throw new IOException("Unable to find nested jar " + name);
+    }
+
+    private static File toFile(String jarUrl) {
+        if (!jarUrl.startsWith("file:")) {
+            return new File(jarUrl);
+        }
+        try {
+            return new File(new URL(jarUrl).toURI().getSchemeSpecificPart());
+        } catch (IOException | URISyntaxException e) {
+            // Fallback for URLs that are not valid URIs (should hardly ever happen).
+            return new File(jarUrl.substring("file:".length()));
+        }
+    }
+
+    private static String join(List<String> nestedJars) {
+        StringBuilder builder = new StringBuilder();
+        for (String nestedJar : nestedJars) {
+            if (builder.length() > 0) {
+                builder.append("!/");
+            }
+            builder.append(nestedJar);
+        }
+        return builder.toString();
+    }
+
+    private void add(String entryName) {
+        if (entryName.endsWith("/")) {
+            return;
+        }
+        String directory = entryName.substring(0, entryName.lastIndexOf('/') + 1);
+        List<String> entries = entriesByDirectory.get(directory);
+        if (entries == null) {
+            entries = new ArrayList<String>();
+            entriesByDirectory.put(directory, entries);
+        }
+        entries.add(entryName);
+    }
+
+    private void addAll(JarFile jarFile) {
+        Enumeration<JarEntry> entries = jarFile.entries();
+        while (entries.hasMoreElements()) {
+            add(entries.nextElement().getName());
+        }
+    }
+
+    /**
+     * Finds the names of the entries below this directory.
+     *
+     * @param directory The directory, with a trailing slash.
+     * @return The entry names, in the order of their directories.
+     */
+    List<String> findEntryNames(String directory) {
+        List<String> entryNames = new ArrayList<String>();
+        // Every directory starting with this prefix sorts between the prefix and the prefix followed by the last char
+        for (Map.Entry<String, List<String>> entries
+                : entriesByDirectory.subMap(directory, true, directory + Character.MAX_VALUE, false).entrySet()) {
+            entryNames.addAll(entries.getValue());
+        }
+        return entryNames;
+    }
+
+    /**
+     * A jar index along with the directory inside the jar that is the root of the class path.
+     */
+    static class Root {
+        private final JarIndex index;
+        private final String directory;
+
+        Root(JarIndex index, String directory) {
+            this.index = index;
+            this.directory = directory;
+        }
+
+        /**
+         * Finds the names of the resources below this location.
+         *
+         * @param location The location on the class path.
+         * @return The names of the resources, relative to the root of the class path.
+         */
+        Set<String> findResourceNames(String location) {
+            String toScan = directory + location + (location.endsWith("/") ? "" : "/");
+            Set<String> resourceNames = new TreeSet<String>();
+            for (String entryName : index.findEntryNames(toScan)) {
+                resourceNames.add(entryName.substring(directory.length()));
+            }
+            return resourceNames;
+        }
+    }
+}
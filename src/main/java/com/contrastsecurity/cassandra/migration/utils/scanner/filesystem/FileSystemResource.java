@@ -32,6 +32,11 @@ public class FileSystemResource implements Resource, Comparable<FileSystemResour
      */
     private File location;
 
+    /**
+     * The fingerprint of the file as it was scanned, {@code null} to read it from the file.
+     */
+    private final String scannedFingerprint;
+
     /**
      * Creates a new ClassPathResource.
      *
@@ -39,6 +44,19 @@ public class FileSystemResource implements Resource, Comparable<FileSystemResour
      */
     public FileSystemResource(String location) {
         this.location = new File(location);
+        this.scannedFingerprint = null;
+    }
+
+    /**
+     * Creates a new resource with the attributes read while scanning its directory.
+     *
+     * @param location     The location of the resource on the filesystem.
+     * @param size         The size of the file.
+     * @param lastModified The modification time of the file, in milliseconds.
+     */
+    FileSystemResource(String location, long size, long lastModified) {
+        this.location = new File(location);
+        this.scannedFingerprint = this.location.getAbsolutePath() + ":" + size + ":" + lastModified;
     }
 
     /**
@@ -88,6 +106,14 @@ public class FileSystemResource implements Resource, Comparable<FileSystemResour
         }
     }
 
+    public InputStream openStream() {
+        try {
+            return new FileInputStream(location);
+        } catch (IOException e) {
+            throw new CassandraMigrationException("Unable to open filesystem resource: " + location.getPath(), e);
+        }
+    }
+
     /**
      * @return The filename of this resource, without the path.
      */
@@ -95,6 +121,13 @@ public class FileSystemResource implements Resource, Comparable<FileSystemResour
         return location.getName();
     }
 
+    public String getFingerprint() {
+        if (scannedFingerprint != null) {
+            return scannedFingerprint;
+        }
+        return location.getAbsolutePath() + ":" + location.length() + ":" + location.lastModified();
+    }
+
     @SuppressWarnings("NullableProblems")
     public int compareTo(FileSystemResource o) {
         return location.compareTo(o.location);
@@ -20,13 +20,23 @@ import com.contrastsecurity.cassandra.migration.logging.Log;
 import com.contrastsecurity.cassandra.migration.logging.LogFactory;
 import com.contrastsecurity.cassandra.migration.utils.scanner.Resource;
 
-import java.io.File;
 import java.io.IOException;
-import java.util.Set;
-import java.util.TreeSet;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * FileSystem scanner.
+ *
+ * <p>Directories are walked with a {@link DirectoryStream}, filtering the file names while walking, so that only the
+ * matching files are kept. When called from a fork/join pool, the subdirectories are walked in parallel by the threads
+ * of the pool.</p>
  */
 public class FileSystemScanner {
     private static final Log LOG = LogFactory.getLog(FileSystemScanner.class);
@@ -38,89 +48,93 @@ public class FileSystemScanner {
      * @param path   The path in the filesystem to start searching. Subdirectories are also searched.
      * @param prefix The prefix of the resource names to match.
      * @param suffix The suffix of the resource names to match.
-     * @return The resources that were found.
+     * @return The resources that were found, sorted by path.
      * @throws IOException when the location could not be scanned.
      */
     public Resource[] scanForResources(String path, String prefix, String suffix) throws IOException {
         LOG.debug("Scanning for filesystem resources at '" + path + "' (Prefix: '" + prefix + "', Suffix: '" + suffix + "')");
 
-        if (!new File(path).isDirectory()) {
+        Path root = Paths.get(path);
+        if (!Files.isDirectory(root)) {
             throw new CassandraMigrationException("Invalid filesystem path: " + path);
         }
 
-        Set<Resource> resources = new TreeSet<Resource>();
-
-        Set<String> resourceNames = findResourceNames(path, prefix, suffix);
-        for (String resourceName : resourceNames) {
-            resources.add(new FileSystemResource(resourceName));
-            LOG.debug("Found filesystem resource: " + resourceName);
+        List<FileSystemResource> resources = new ScanTask(root, prefix, suffix).invoke();
+        Collections.sort(resources);
+        for (FileSystemResource resource : resources) {
+            LOG.debug("Found filesystem resource: " + resource.getLocation());
         }
-
         return resources.toArray(new Resource[resources.size()]);
     }
 
     /**
-     * Finds the resources names present at this location and below on the classpath starting with this prefix and
-     * ending with this suffix.
+     * Checks whether this file name starts with this prefix and ends with this suffix.
      *
-     * @param path   The path on the classpath to scan.
-     * @param prefix The filename prefix to match.
-     * @param suffix The filename suffix to match.
-     * @return The resource names.
-     * @throws IOException when scanning this location failed.
+     * @param fileName The file name.
+     * @param prefix   The prefix to match.
+     * @param suffix   The suffix to match.
+     * @return {@code true} if it does.
      */
-    private Set<String> findResourceNames(String path, String prefix, String suffix) throws IOException {
-        Set<String> resourceNames = findResourceNamesFromFileSystem(path, new File(path));
-        return filterResourceNames(resourceNames, prefix, suffix);
+    private static boolean matches(String fileName, String prefix, String suffix) {
+        return fileName.startsWith(prefix) && fileName.endsWith(suffix)
+                && (fileName.length() > (prefix.length() + suffix.length()));
     }
 
     /**
-     * Finds all the resource names contained in this file system folder.
-     *
-     * @param scanRootLocation The root location of the scan on disk.
-     * @param folder           The folder to look for resources under on disk.
-     * @return The resource names;
-     * @throws IOException when the folder could not be read.
+     * Walks a directory, forking a task per subdirectory when running in a fork/join pool.
      */
-    @SuppressWarnings("ConstantConditions")
-    private Set<String> findResourceNamesFromFileSystem(String scanRootLocation, File folder) throws IOException {
-        LOG.debug("Scanning for resources in path: " + folder.getPath() + " (" + scanRootLocation + ")");
+    private static class ScanTask extends RecursiveTask<List<FileSystemResource>> {
+        private static final long serialVersionUID = 1L;
 
-        Set<String> resourceNames = new TreeSet<String>();
+        private final Path directory;
+        private final String prefix;
+        private final String suffix;
 
-        File[] files = folder.listFiles();
-        for (File file : files) {
-            if (file.canRead()) {
-                if (file.isDirectory()) {
-                    resourceNames.addAll(findResourceNamesFromFileSystem(scanRootLocation, file));
-                } else {
-                    resourceNames.add(file.getPath());
-                }
-            }
+        ScanTask(Path directory, String prefix, String suffix) {
+            this.directory = directory;
+            this.prefix = prefix;
+            this.suffix = suffix;
         }
 
-        return resourceNames;
-    }
+        @Override
+        protected List<FileSystemResource> compute() {
+            LOG.debug("Scanning for resources in path: " + directory);
 
-    /**
-     * Filters this list of resource names to only include the ones whose filename matches this prefix and this suffix.
-     *
-     * @param resourceNames The names to filter.
-     * @param prefix        The prefix to match.
-     * @param suffix        The suffix to match.
-     * @return The filtered names set.
-     */
-    private Set<String> filterResourceNames(Set<String> resourceNames, String prefix, String suffix) {
-        Set<String> filteredResourceNames = new TreeSet<String>();
-        for (String resourceName : resourceNames) {
-            String fileName = resourceName.substring(resourceName.lastIndexOf(File.separator) + 1);
-            if (fileName.startsWith(prefix) && fileName.endsWith(suffix)
-                    && (fileName.length() > (prefix + suffix).length())) {
-                filteredResourceNames.add(resourceName);
+            List<FileSystemResource> resources = new ArrayList<FileSystemResource>();
+            List<ScanTask> subdirectories = new ArrayList<ScanTask>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                    } catch (IOException e) {
+                        LOG.debug("Skipping unreadable path: " + entry);
+                        continue;
+                    }
+
+                    if (attributes.isDirectory()) {
+                        if (Files.isReadable(entry)) {
+                            subdirectories.add(new ScanTask(entry, prefix, suffix));
+                        }
+                    } else if (matches(entry.getFileName().toString(), prefix, suffix) && Files.isReadable(entry)) {
+                        resources.add(new FileSystemResource(entry.toString(), attributes.size(),
+                                attributes.lastModifiedTime().toMillis()));
+                    }
+                }
+            } catch (IOException e) {
+                throw new CassandraMigrationException("Unable to scan filesystem path: " + directory, e);
+            }
+
+            if (inForkJoinPool() && subdirectories.size() > 0) {
+                for (ScanTask subdirectory : invokeAll(subdirectories)) {
+                    resources.addAll(subdirectory.join());
+                }
             } else {
-                LOG.debug("Filtering out resource: " + resourceName + " (filename: " + fileName + ")");
+                for (ScanTask subdirectory : subdirectories) {
+                    resources.addAll(subdirectory.compute());
+                }
             }
+            return resources;
         }
-        return filteredResourceNames;
     }
 }
@@ -14,6 +14,8 @@ import org.junit.Test;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.List;
 
 import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -178,6 +180,25 @@ public class CassandraMigrationIT extends BaseIT {
 		}
 	}
 
+	@Test
+	public void testMigrateKeyspaces() {
+		String[] scriptsLocations = { "migration/integ", "migration/integ/java" };
+		CassandraMigration cm = new CassandraMigration();
+		cm.getConfigs().setScriptsLocations(scriptsLocations);
+		cm.setKeyspace(getKeyspace());
+
+		List<KeyspaceMigrationResult> results =
+				cm.migrate(Arrays.asList(CASSANDRA__KEYSPACE, "cassandra_migration_missing"));
+		assertThat(results.size(), is(2));
+		assertThat(results.get(0).getKeyspaceName(), is(CASSANDRA__KEYSPACE));
+		assertThat(results.get(0).isSuccess(), is(true));
+		assertThat(results.get(0).getMigrationsApplied(), is(4));
+		assertThat(results.get(1).isSuccess(), is(false));
+
+		results = cm.migrate(Arrays.asList(CASSANDRA__KEYSPACE));
+		assertThat(results.get(0).getMigrationsApplied(), is(0));
+	}
+
 	static boolean runCmdTestCompleted = false;
 	static boolean runCmdTestSuccess = false;
 
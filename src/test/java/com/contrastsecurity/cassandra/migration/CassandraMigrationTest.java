@@ -0,0 +1,119 @@
+package com.contrastsecurity.cassandra.migration;
+
+import com.contrastsecurity.cassandra.migration.config.Keyspace;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.Session;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CassandraMigrationTest {
+    private static final CassandraMigration.Action<Session> GET_SESSION = new CassandraMigration.Action<Session>() {
+        @Override
+        public Session execute(Session session) {
+            return session;
+        }
+    };
+
+    @Test
+    public void externalSessionIsReusedAndNotClosed() {
+        Session session = mock(Session.class);
+        when(session.getLoggedKeyspace()).thenReturn("ks");
+
+        CassandraMigration cm = new CassandraMigration();
+        cm.setKeyspace(createKeyspace("ks"));
+        cm.setSession(session);
+
+        assertSame(session, cm.execute(GET_SESSION));
+        assertSame(session, cm.execute(GET_SESSION));
+        cm.close();
+
+        verify(session, never()).close();
+    }
+
+    @Test
+    public void keyspaceNameDefaultsToLoggedKeyspaceOfSession() {
+        Session session = mock(Session.class);
+        when(session.getLoggedKeyspace()).thenReturn("ks");
+
+        CassandraMigration cm = new CassandraMigration();
+        cm.setKeyspace(createKeyspace(null));
+        cm.setSession(session);
+
+        assertSame(session, cm.execute(GET_SESSION));
+    }
+
+    @Test
+    public void keptOpenConnectionOnExternalCluster() {
+        Session session = mock(Session.class);
+        when(session.getLoggedKeyspace()).thenReturn("ks");
+        Cluster cluster = createCluster("ks");
+        when(cluster.connect("ks")).thenReturn(session);
+
+        CassandraMigration cm = new CassandraMigration();
+        cm.setKeyspace(createKeyspace("ks"));
+        cm.setCluster(cluster);
+        cm.setKeepConnectionOpen(true);
+
+        assertSame(session, cm.execute(GET_SESSION));
+        assertSame(session, cm.execute(GET_SESSION));
+        verify(cluster, times(1)).connect("ks");
+        verify(session, never()).close();
+
+        cm.close();
+        verify(session).close();
+        verify(cluster, never()).close();
+    }
+
+    @Test
+    public void connectionOnExternalClusterIsClosedAfterEachCall() {
+        Session session = mock(Session.class);
+        when(session.getLoggedKeyspace()).thenReturn("ks");
+        Cluster cluster = createCluster("ks");
+        when(cluster.connect("ks")).thenReturn(session);
+
+        CassandraMigration cm = new CassandraMigration();
+        cm.setKeyspace(createKeyspace("ks"));
+        cm.setCluster(cluster);
+
+        cm.execute(GET_SESSION);
+        cm.execute(GET_SESSION);
+        verify(cluster, times(2)).connect("ks");
+        verify(session, times(2)).close();
+        verify(cluster, never()).close();
+    }
+
+    @Test(expected = CassandraMigrationException.class)
+    public void missingKeyspace() {
+        CassandraMigration cm = new CassandraMigration();
+        cm.setKeyspace(createKeyspace("other"));
+        cm.setCluster(createCluster("ks"));
+
+        cm.execute(GET_SESSION);
+    }
+
+    private Keyspace createKeyspace(String name) {
+        Keyspace keyspace = new Keyspace();
+        keyspace.setName(name);
+        return keyspace;
+    }
+
+    private Cluster createCluster(String keyspaceName) {
+        KeyspaceMetadata keyspaceMetadata = mock(KeyspaceMetadata.class);
+        when(keyspaceMetadata.getName()).thenReturn(keyspaceName);
+        Metadata metadata = mock(Metadata.class);
+        when(metadata.getKeyspaces()).thenReturn(Collections.singletonList(keyspaceMetadata));
+        Cluster cluster = mock(Cluster.class);
+        when(cluster.getMetadata()).thenReturn(metadata);
+        return cluster;
+    }
+}
@@ -0,0 +1,104 @@
+package com.contrastsecurity.cassandra.migration.action;
+
+import com.contrastsecurity.cassandra.migration.CassandraMigrationException;
+import com.contrastsecurity.cassandra.migration.info.MigrationInfo;
+import com.contrastsecurity.cassandra.migration.info.MigrationInfoContext;
+import com.contrastsecurity.cassandra.migration.info.MigrationVersion;
+import com.contrastsecurity.cassandra.migration.info.ResolvedMigration;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class MigrationGraphTest {
+    @Test
+    public void undeclaredDependenciesAreSequential() {
+        MigrationGraph graph = new MigrationGraph(Arrays.asList(
+                createMigrationInfo("1", null),
+                createMigrationInfo("2", null),
+                createMigrationInfo("3", null)), knownVersions("1", "2", "3"));
+
+        assertEquals(Collections.singletonList(0), graph.roots());
+        assertEquals(Collections.singletonList(1), graph.complete(0));
+        assertEquals(Collections.singletonList(2), graph.complete(1));
+        assertEquals(Collections.<Integer>emptyList(), graph.complete(2));
+    }
+
+    @Test
+    public void independentBranches() {
+        MigrationGraph graph = new MigrationGraph(Arrays.asList(
+                createMigrationInfo("1", versions()),
+                createMigrationInfo("2", versions()),
+                createMigrationInfo("3", versions("1")),
+                createMigrationInfo("4", null)), knownVersions("1", "2", "3", "4"));
+
+        assertEquals(Arrays.asList(0, 1), graph.roots());
+        assertEquals(Collections.singletonList(2), graph.complete(0));
+        assertEquals(Collections.<Integer>emptyList(), graph.complete(2));
+        assertEquals(Collections.singletonList(3), graph.complete(1));
+    }
+
+    @Test
+    public void dependencyOnAppliedVersion() {
+        MigrationGraph graph = new MigrationGraph(Arrays.asList(
+                createMigrationInfo("2", versions("1")),
+                createMigrationInfo("3", versions("1"))), knownVersions("1", "2", "3"));
+
+        assertEquals(Arrays.asList(0, 1), graph.roots());
+    }
+
+    @Test(expected = CassandraMigrationException.class)
+    public void dependencyOnHigherVersion() {
+        new MigrationGraph(Arrays.asList(
+                createMigrationInfo("1", versions("2")),
+                createMigrationInfo("2", versions())), knownVersions("1", "2"));
+    }
+
+    @Test(expected = CassandraMigrationException.class)
+    public void dependencyOnUnknownVersion() {
+        new MigrationGraph(Arrays.asList(
+                createMigrationInfo("2", versions("1.5")),
+                createMigrationInfo("3", versions())), knownVersions("1", "2", "3"));
+    }
+
+    @Test
+    public void undeclaredDependenciesWaitForBranchesSinceThePreviousOne() {
+        MigrationGraph graph = new MigrationGraph(Arrays.asList(
+                createMigrationInfo("1", null),
+                createMigrationInfo("2", versions("1")),
+                createMigrationInfo("3", versions()),
+                createMigrationInfo("4", null),
+                createMigrationInfo("5", null)), knownVersions("1", "2", "3", "4", "5"));
+
+        assertEquals(Arrays.asList(0, 2), graph.roots());
+        assertEquals(Collections.singletonList(1), graph.complete(0));
+        assertEquals(Collections.<Integer>emptyList(), graph.complete(2));
+        assertEquals(Collections.singletonList(3), graph.complete(1));
+        assertEquals(Collections.singletonList(4), graph.complete(3));
+    }
+
+    private List<MigrationVersion> versions(String... versions) {
+        List<MigrationVersion> result = new ArrayList<>();
+        for (String version : versions) {
+            result.add(MigrationVersion.fromVersion(version));
+        }
+        return result;
+    }
+
+    private Set<MigrationVersion> knownVersions(String... versions) {
+        return new HashSet<>(versions(versions));
+    }
+
+    private MigrationInfo createMigrationInfo(String version, List<MigrationVersion> dependencies) {
+        ResolvedMigration resolvedMigration = new ResolvedMigration();
+        resolvedMigration.setVersion(MigrationVersion.fromVersion(version));
+        resolvedMigration.setDependencies(dependencies);
+        return new MigrationInfo(resolvedMigration, null, new MigrationInfoContext());
+    }
+}
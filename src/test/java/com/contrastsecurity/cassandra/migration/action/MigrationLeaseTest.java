@@ -0,0 +1,108 @@
+package com.contrastsecurity.cassandra.migration.action;
+
+import com.contrastsecurity.cassandra.migration.config.Keyspace;
+import com.contrastsecurity.cassandra.migration.dao.LeaseDAO;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MigrationLeaseTest {
+    @Test
+    public void acquireRenewAndRelease() {
+        LeaseDAO leaseDAO = createLeaseDAO();
+        when(leaseDAO.tryAcquire(anyString(), anyInt())).thenReturn(true);
+        when(leaseDAO.renew(anyString(), anyInt())).thenReturn(true);
+
+        MigrationLease lease = new MigrationLease(leaseDAO, 60);
+        assertTrue(lease.tryAcquire());
+        assertTrue(lease.isHeld());
+        verify(leaseDAO).tryAcquire(lease.getOwner(), 60);
+
+        lease.renew();
+        assertTrue(lease.isHeld());
+        verify(leaseDAO).renew(lease.getOwner(), 60);
+
+        lease.close();
+        assertFalse(lease.isHeld());
+        verify(leaseDAO).release(lease.getOwner());
+    }
+
+    @Test
+    public void lostLeaseIsNotReleased() {
+        LeaseDAO leaseDAO = createLeaseDAO();
+        when(leaseDAO.tryAcquire(anyString(), anyInt())).thenReturn(true);
+        when(leaseDAO.renew(anyString(), anyInt())).thenReturn(false);
+
+        MigrationLease lease = new MigrationLease(leaseDAO, 60);
+        assertTrue(lease.tryAcquire());
+        lease.renew();
+        assertFalse(lease.isHeld());
+
+        lease.close();
+        verify(leaseDAO, never()).release(anyString());
+    }
+
+    @Test
+    public void leaseIsLostWhenRenewalsKeepFailing() throws Exception {
+        LeaseDAO leaseDAO = createLeaseDAO();
+        when(leaseDAO.tryAcquire(anyString(), anyInt())).thenReturn(true);
+        when(leaseDAO.renew(anyString(), anyInt())).thenThrow(new IllegalStateException("timeout"));
+
+        MigrationLease lease = new MigrationLease(leaseDAO, 1);
+        assertTrue(lease.tryAcquire());
+        lease.renew();
+        assertTrue(lease.isHeld());
+
+        // Past the TTL minus its safety margin
+        Thread.sleep(900);
+        assertFalse(lease.isHeld());
+        lease.close();
+    }
+
+    @Test
+    public void failedReleaseIsIgnored() {
+        LeaseDAO leaseDAO = createLeaseDAO();
+        when(leaseDAO.tryAcquire(anyString(), anyInt())).thenReturn(true);
+        doThrow(new IllegalStateException("unavailable")).when(leaseDAO).release(anyString());
+
+        MigrationLease lease = new MigrationLease(leaseDAO, 60);
+        assertTrue(lease.tryAcquire());
+        lease.close();
+
+        assertFalse(lease.isHeld());
+        verify(leaseDAO).release(lease.getOwner());
+    }
+
+    @Test
+    public void waitsUntilReleased() {
+        LeaseDAO leaseDAO = createLeaseDAO();
+        when(leaseDAO.tryAcquire(anyString(), anyInt())).thenReturn(false);
+        when(leaseDAO.findOwner()).thenReturn("other", "other", null);
+
+        MigrationLease lease = new MigrationLease(leaseDAO, 60, 1, 2);
+        assertFalse(lease.tryAcquire());
+        lease.awaitRelease();
+
+        verify(leaseDAO, times(3)).findOwner();
+        lease.close();
+        verify(leaseDAO, never()).release(anyString());
+    }
+
+    private LeaseDAO createLeaseDAO() {
+        Keyspace keyspace = new Keyspace();
+        keyspace.setName("test");
+
+        LeaseDAO leaseDAO = mock(LeaseDAO.class);
+        when(leaseDAO.getKeyspace()).thenReturn(keyspace);
+        return leaseDAO;
+    }
+}
@@ -0,0 +1,232 @@
+package com.contrastsecurity.cassandra.migration.action;
+
+import com.contrastsecurity.cassandra.migration.CassandraMigrationException;
+import com.contrastsecurity.cassandra.migration.config.Keyspace;
+import com.contrastsecurity.cassandra.migration.config.MigrationType;
+import com.contrastsecurity.cassandra.migration.dao.SchemaVersionDAO;
+import com.contrastsecurity.cassandra.migration.info.AppliedMigration;
+import com.contrastsecurity.cassandra.migration.info.MigrationDigest;
+import com.contrastsecurity.cassandra.migration.info.MigrationInfo;
+import com.contrastsecurity.cassandra.migration.info.MigrationVersion;
+import com.contrastsecurity.cassandra.migration.info.ResolvedMigration;
+import com.contrastsecurity.cassandra.migration.resolver.MigrationExecutor;
+import com.contrastsecurity.cassandra.migration.resolver.MigrationResolver;
+import com.datastax.driver.core.Session;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MigrationPlannerTest {
+    @Test
+    public void planIsBuiltFromASingleSnapshot() {
+        SchemaVersionDAO dao = createSchemaVersionDAO(Collections.<AppliedMigration>emptyList());
+
+        MigrationPlanner planner = new MigrationPlanner(createMigrationResolver(1, 2, 3), dao, MigrationVersion.LATEST, false);
+        planner.refresh();
+
+        MigrationInfo migration;
+        List<String> applied = new ArrayList<>();
+        while ((migration = planner.next()) != null) {
+            planner.recordApplied(createAppliedMigration(migration.getVersion()));
+            applied.add(migration.getVersion().toString());
+            assertFalse(planner.isStale());
+        }
+
+        assertEquals(Arrays.asList("1", "2", "3"), applied);
+        assertEquals("3", planner.getCurrentVersion().toString());
+        verify(dao, times(1)).findAppliedMigrations();
+    }
+
+    @Test
+    public void concurrentWriterTriggersRefresh() {
+        SchemaVersionDAO dao = createSchemaVersionDAO(Collections.<AppliedMigration>emptyList());
+        when(dao.addAppliedMigration(any(AppliedMigration.class))).thenReturn(false);
+
+        MigrationPlanner planner = new MigrationPlanner(createMigrationResolver(1, 2, 3), dao, MigrationVersion.LATEST, false);
+        planner.refresh();
+
+        MigrationInfo migration = planner.next();
+        assertEquals("1", migration.getVersion().toString());
+        planner.recordApplied(createAppliedMigration(migration.getVersion()));
+        assertTrue(planner.isStale());
+
+        // Meanwhile another run applied 1 and 2
+        when(dao.findAppliedMigrations()).thenReturn(Arrays.asList(
+                createAppliedMigration(MigrationVersion.fromVersion("1")),
+                createAppliedMigration(MigrationVersion.fromVersion("2"))));
+        planner.refresh();
+
+        assertFalse(planner.isStale());
+        assertEquals("2", planner.getCurrentVersion().toString());
+        assertEquals("3", planner.next().getVersion().toString());
+        assertNull(planner.next());
+        verify(dao, times(2)).findAppliedMigrations();
+    }
+
+    @Test
+    public void migrateReadsHistoryOnce() {
+        SchemaVersionDAO dao = createSchemaVersionDAO(Collections.<AppliedMigration>emptyList());
+
+        Migrate migrate = new Migrate(createMigrationResolver(1, 2, 3, 4), MigrationVersion.LATEST, dao,
+                mock(Session.class), "sa", false);
+
+        assertEquals(4, migrate.run());
+        verify(dao, times(1)).findAppliedMigrations();
+        verify(dao, times(4)).addAppliedMigration(any(AppliedMigration.class));
+    }
+
+    @Test
+    public void matchingDigestSkipsHistoryRead() {
+        SchemaVersionDAO dao = createSchemaVersionDAO(Collections.<AppliedMigration>emptyList());
+        MigrationResolver migrationResolver = createMigrationResolver(1, 2);
+
+        // First run: no digest recorded yet
+        assertEquals(2, new Migrate(migrationResolver, MigrationVersion.LATEST, dao, mock(Session.class), "sa", false).run());
+        ArgumentCaptor<MigrationDigest> digest = ArgumentCaptor.forClass(MigrationDigest.class);
+        verify(dao).saveMigrationDigest(digest.capture());
+        assertEquals(MigrationDigest.ofResolved(migrationResolver.resolveMigrations(), MigrationVersion.LATEST),
+                digest.getValue());
+
+        // Second run: the recorded digest matches the resolved migrations
+        when(dao.findMigrationDigest()).thenReturn(digest.getValue());
+        assertEquals(0, new Migrate(migrationResolver, MigrationVersion.LATEST, dao, mock(Session.class), "sa", false).run());
+        verify(dao, times(1)).findAppliedMigrations();
+        verify(dao, times(1)).saveMigrationDigest(any(MigrationDigest.class));
+    }
+
+    @Test
+    public void migrateInParallelRecordsInVersionOrder() {
+        SchemaVersionDAO dao = createSchemaVersionDAO(Collections.<AppliedMigration>emptyList());
+        final List<String> recorded = Collections.synchronizedList(new ArrayList<String>());
+        when(dao.addAppliedMigration(any(AppliedMigration.class))).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) {
+                recorded.add(((AppliedMigration) invocation.getArguments()[0]).getVersion().toString());
+                return true;
+            }
+        });
+
+        MigrationResolver migrationResolver = createMigrationResolver(1, 2, 3, 4);
+        List<ResolvedMigration> resolvedMigrations = new ArrayList<>(migrationResolver.resolveMigrations());
+        for (ResolvedMigration resolvedMigration : resolvedMigrations) {
+            resolvedMigration.setDependencies(Collections.<MigrationVersion>emptyList());
+        }
+        // The first migration completes last
+        final CountDownLatch othersDone = new CountDownLatch(3);
+        for (int i = 1; i < 4; i++) {
+            resolvedMigrations.get(i).setExecutor(new MigrationExecutor() {
+                @Override
+                public void execute(Session session) {
+                    othersDone.countDown();
+                }
+            });
+        }
+        resolvedMigrations.get(0).setExecutor(new MigrationExecutor() {
+            @Override
+            public void execute(Session session) {
+                try {
+                    othersDone.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+
+        Migrate migrate = new Migrate(migrationResolver, MigrationVersion.LATEST, dao,
+                mock(Session.class), "sa", false, 4);
+
+        assertEquals(4, migrate.run());
+        assertEquals(Arrays.asList("1", "2", "3", "4"), recorded);
+    }
+
+    @Test
+    public void migrateInParallelStopsOnConcurrentRun() {
+        SchemaVersionDAO dao = createSchemaVersionDAO(Collections.<AppliedMigration>emptyList());
+        // Another run recorded 1 first: 2 is only applied once the history was read again
+        when(dao.addAppliedMigration(any(AppliedMigration.class))).thenReturn(false, true);
+        when(dao.findAppliedMigrations()).thenReturn(Collections.<AppliedMigration>emptyList(), Arrays.asList(
+                createAppliedMigration(MigrationVersion.fromVersion("1"))));
+
+        Migrate migrate = new Migrate(createMigrationResolver(1, 2, 3), MigrationVersion.LATEST, dao,
+                mock(Session.class), "sa", false, 4);
+
+        assertEquals(3, migrate.run());
+        verify(dao, times(2)).findAppliedMigrations();
+        verify(dao, times(3)).addAppliedMigration(any(AppliedMigration.class));
+    }
+
+    @Test
+    public void migrateAbortsOnLostLease() {
+        SchemaVersionDAO dao = createSchemaVersionDAO(Collections.<AppliedMigration>emptyList());
+        MigrationLease lease = mock(MigrationLease.class);
+        when(lease.isHeld()).thenReturn(true, false);
+
+        Migrate migrate = new Migrate(createMigrationResolver(1, 2, 3), MigrationVersion.LATEST, dao,
+                mock(Session.class), "sa", false);
+
+        try {
+            migrate.run(lease);
+            fail("Expected a lost lease to abort the migration");
+        } catch (CassandraMigrationException e) {
+            assertTrue(e.getMessage().contains("version 2"));
+        }
+        verify(dao, times(1)).addAppliedMigration(any(AppliedMigration.class));
+    }
+
+    private SchemaVersionDAO createSchemaVersionDAO(List<AppliedMigration> appliedMigrations) {
+        Keyspace keyspace = new Keyspace();
+        keyspace.setName("test");
+
+        SchemaVersionDAO dao = mock(SchemaVersionDAO.class);
+        when(dao.getKeyspace()).thenReturn(keyspace);
+        when(dao.findAppliedMigrations()).thenReturn(appliedMigrations);
+        when(dao.addAppliedMigration(any(AppliedMigration.class))).thenReturn(true);
+        return dao;
+    }
+
+    private MigrationResolver createMigrationResolver(int... versions) {
+        final List<ResolvedMigration> resolvedMigrations = new ArrayList<>();
+        for (int version : versions) {
+            ResolvedMigration migration = new ResolvedMigration();
+            migration.setVersion(MigrationVersion.fromVersion(Integer.toString(version)));
+            migration.setDescription("abc");
+            migration.setScript("x");
+            migration.setType(MigrationType.CQL);
+            migration.setExecutor(new MigrationExecutor() {
+                @Override
+                public void execute(Session session) {
+                }
+            });
+            resolvedMigrations.add(migration);
+        }
+        return new MigrationResolver() {
+            public List<ResolvedMigration> resolveMigrations() {
+                return resolvedMigrations;
+            }
+        };
+    }
+
+    private AppliedMigration createAppliedMigration(MigrationVersion version) {
+        int rank = Integer.parseInt(version.toString());
+        return new AppliedMigration(rank, rank, version, "abc", MigrationType.CQL, "x", null, new Date(), "sa", 0, true);
+    }
+}
@@ -0,0 +1,44 @@
+package com.contrastsecurity.cassandra.migration.config;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class ConsistencyTest {
+    @After
+    public void clearSystemProps() {
+        for (Consistency.ConsistencyProperty property : Consistency.ConsistencyProperty.values()) {
+            System.clearProperty(property.getName());
+        }
+    }
+
+    @Test
+    public void shouldHaveDefaultConfigValues() {
+        Consistency consistency = new Consistency();
+        assertThat(consistency.getHistoryRead(), is(nullValue()));
+        assertThat(consistency.getHistoryWrite(), is(nullValue()));
+        assertThat(consistency.getLock(), is(nullValue()));
+        assertThat(consistency.getDdl(), is(nullValue()));
+        assertThat(consistency.getSerial(), is(nullValue()));
+    }
+
+    @Test
+    public void systemPropsShouldOverrideDefaultConfigValues() {
+        System.setProperty(Consistency.ConsistencyProperty.HISTORY_READ.getName(), "local_quorum");
+        System.setProperty(Consistency.ConsistencyProperty.HISTORY_WRITE.getName(), "EACH_QUORUM");
+        System.setProperty(Consistency.ConsistencyProperty.LOCK.getName(), "QUORUM");
+        System.setProperty(Consistency.ConsistencyProperty.DDL.getName(), "ALL");
+        System.setProperty(Consistency.ConsistencyProperty.SERIAL.getName(), "LOCAL_SERIAL");
+
+        Consistency consistency = new Consistency();
+        assertThat(consistency.getHistoryRead(), is(ConsistencyLevel.LOCAL_QUORUM));
+        assertThat(consistency.getHistoryWrite(), is(ConsistencyLevel.EACH_QUORUM));
+        assertThat(consistency.getLock(), is(ConsistencyLevel.QUORUM));
+        assertThat(consistency.getDdl(), is(ConsistencyLevel.ALL));
+        assertThat(consistency.getSerial(), is(ConsistencyLevel.LOCAL_SERIAL));
+    }
+}
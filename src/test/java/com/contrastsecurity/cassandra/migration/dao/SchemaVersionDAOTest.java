@@ -0,0 +1,294 @@
+package com.contrastsecurity.cassandra.migration.dao;
+
+import com.contrastsecurity.cassandra.migration.config.Keyspace;
+import com.contrastsecurity.cassandra.migration.config.MigrationType;
+import com.contrastsecurity.cassandra.migration.info.AppliedMigration;
+import com.contrastsecurity.cassandra.migration.info.MigrationVersion;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.ColumnMetadata;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.TableMetadata;
+import com.datastax.driver.core.querybuilder.Select;
+import com.datastax.driver.core.utils.UUIDs;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SchemaVersionDAOTest {
+    private static final String TABLE = "cassandra_migration_version";
+
+    @Test
+    public void tablesExistIsMemoized() {
+        Metadata metadata = createMetadata();
+        KeyspaceMetadata keyspaceMetadata = mock(KeyspaceMetadata.class);
+        when(metadata.getKeyspace("ks")).thenReturn(keyspaceMetadata);
+        when(keyspaceMetadata.getTable(TABLE)).thenReturn(mock(TableMetadata.class));
+        when(keyspaceMetadata.getTable(TABLE + "_counts")).thenReturn(mock(TableMetadata.class));
+        Session session = createSession(metadata);
+
+        SchemaVersionDAO dao = new SchemaVersionDAO(session, createKeyspace(), TABLE);
+        assertTrue(dao.tablesExist());
+        assertTrue(dao.tablesExist());
+
+        verify(metadata, times(1)).getKeyspace("ks");
+        verify(session, never()).execute(any(Statement.class));
+    }
+
+    @Test
+    public void missingTablesAreCreatedOnce() {
+        Metadata metadata = createMetadata();
+        KeyspaceMetadata keyspaceMetadata = mock(KeyspaceMetadata.class);
+        when(metadata.getKeyspace("ks")).thenReturn(keyspaceMetadata);
+        Session session = createSession(metadata);
+
+        SchemaVersionDAO dao = new SchemaVersionDAO(session, createKeyspace(), TABLE);
+        assertFalse(dao.tablesExist());
+
+        dao.createTablesIfNotExist();
+        dao.createTablesIfNotExist();
+        assertTrue(dao.tablesExist());
+
+        verify(session, times(2)).execute(any(Statement.class));
+    }
+
+    @Test
+    public void cachedMigrationsAreReloadedOnEpochChange() {
+        Metadata metadata = createMetadata();
+        KeyspaceMetadata keyspaceMetadata = mock(KeyspaceMetadata.class);
+        TableMetadata tableMetadata = mock(TableMetadata.class);
+        when(metadata.getKeyspace("ks")).thenReturn(keyspaceMetadata);
+        when(keyspaceMetadata.getTable(TABLE)).thenReturn(tableMetadata);
+        when(keyspaceMetadata.getTable(TABLE + "_counts")).thenReturn(mock(TableMetadata.class));
+        when(tableMetadata.getColumn("installed_seq")).thenReturn(mock(ColumnMetadata.class));
+        Session session = createSession(metadata);
+
+        PreparedStatement preparedStatement = mock(PreparedStatement.class);
+        BoundStatement boundStatement = mock(BoundStatement.class);
+        when(session.prepare(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.bind(anyVararg())).thenReturn(boundStatement);
+        Row epochRow = mock(Row.class);
+        when(epochRow.getLong("count")).thenReturn(3L, 3L, 4L);
+        ResultSet epochResult = mock(ResultSet.class);
+        when(epochResult.all()).thenReturn(Collections.singletonList(epochRow));
+        when(session.execute(isA(BoundStatement.class))).thenReturn(epochResult);
+        ResultSet historyResult = mock(ResultSet.class);
+        when(historyResult.all()).thenReturn(Collections.<Row>emptyList());
+        when(session.execute(isA(Select.class))).thenReturn(historyResult);
+
+        SchemaVersionDAO dao = new SchemaVersionDAO(session, createKeyspace(), TABLE, true);
+        dao.findAppliedMigrations();
+        dao.findAppliedMigrations();
+        verify(session, times(1)).execute(isA(Select.class));
+
+        dao.findAppliedMigrations();
+        verify(session, times(2)).execute(isA(Select.class));
+    }
+
+    @Test
+    public void epochIsBumpedWithoutCache() throws Exception {
+        Metadata metadata = createMetadata();
+        KeyspaceMetadata keyspaceMetadata = mock(KeyspaceMetadata.class);
+        TableMetadata tableMetadata = mock(TableMetadata.class);
+        when(metadata.getKeyspace("ks")).thenReturn(keyspaceMetadata);
+        when(keyspaceMetadata.getTable(TABLE)).thenReturn(tableMetadata);
+        when(keyspaceMetadata.getTable(TABLE + "_counts")).thenReturn(mock(TableMetadata.class));
+        when(tableMetadata.getColumn("installed_seq")).thenReturn(mock(ColumnMetadata.class));
+        Session session = createSession(metadata);
+
+        PreparedStatement preparedStatement = mock(PreparedStatement.class);
+        when(session.prepare(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.bind(anyVararg())).thenReturn(mock(BoundStatement.class));
+        ResultSet insertResult = mock(ResultSet.class);
+        when(insertResult.wasApplied()).thenReturn(true);
+        when(session.execute(isA(BoundStatement.class))).thenReturn(insertResult);
+        ResultSetFuture failedBump = mock(ResultSetFuture.class);
+        when(failedBump.get()).thenThrow(new ExecutionException(new IllegalStateException("unavailable")));
+        when(session.executeAsync(isA(BoundStatement.class))).thenReturn(failedBump);
+
+        SchemaVersionDAO dao = new SchemaVersionDAO(session, createKeyspace(), TABLE, false);
+        dao.addAppliedMigration(new AppliedMigration(MigrationVersion.fromVersion("1"), "abc", MigrationType.CQL,
+                "x", null, "sa", 0, true));
+        verify(session, times(1)).executeAsync(isA(BoundStatement.class));
+
+        // The failed bump does not fail the next write
+        dao.addAppliedMigration(new AppliedMigration(MigrationVersion.fromVersion("2"), "abc", MigrationType.CQL,
+                "x", null, "sa", 0, true));
+        verify(session, times(2)).executeAsync(isA(BoundStatement.class));
+    }
+
+    @Test
+    public void alreadyRecordedVersionIsReported() {
+        Session session = createSession(createMetadataWithTables(true));
+        PreparedStatement preparedStatement = mock(PreparedStatement.class);
+        when(session.prepare(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.bind(anyVararg())).thenReturn(mock(BoundStatement.class));
+        ResultSet insertResult = mock(ResultSet.class);
+        when(insertResult.wasApplied()).thenReturn(false);
+        when(session.execute(isA(BoundStatement.class))).thenReturn(insertResult);
+
+        SchemaVersionDAO dao = new SchemaVersionDAO(session, createKeyspace(), TABLE, false);
+        assertFalse(dao.addAppliedMigration(new AppliedMigration(MigrationVersion.fromVersion("1"), "abc",
+                MigrationType.CQL, "x", null, "sa", 0, true)));
+
+        // Single round trip, no epoch bump for a row that was not written
+        verify(session, times(1)).execute(isA(BoundStatement.class));
+        verify(session, never()).executeAsync(isA(BoundStatement.class));
+    }
+
+    @Test
+    public void legacyRowsKeepTheirInstalledRankAndNewRowsAreRankedByTimeuuid() {
+        Session session = createSession(createMetadataWithTables(true));
+        // Legacy rows with a stored installed rank, and new rows written in the order 1.5, 2, 3
+        List<Row> rows = Arrays.asList(
+                createRow("1.1", 1, null),
+                createRow("3", null, UUIDs.startOf(3000)),
+                createRow("2", null, UUIDs.startOf(2000)),
+                createRow("1", 2, null),
+                createRow("1.5", null, UUIDs.startOf(1000)));
+        ResultSet historyResult = mock(ResultSet.class);
+        when(historyResult.all()).thenReturn(rows);
+        when(session.execute(isA(Select.class))).thenReturn(historyResult);
+
+        List<AppliedMigration> appliedMigrations =
+                new SchemaVersionDAO(session, createKeyspace(), TABLE, false).findAppliedMigrations();
+
+        List<String> versions = new ArrayList<>();
+        List<Integer> installedRanks = new ArrayList<>();
+        List<Integer> versionRanks = new ArrayList<>();
+        for (AppliedMigration appliedMigration : appliedMigrations) {
+            versions.add(appliedMigration.getVersion().toString());
+            installedRanks.add(appliedMigration.getInstalledRank());
+            versionRanks.add(appliedMigration.getVersionRank());
+        }
+        assertEquals(Arrays.asList("1", "1.1", "1.5", "2", "3"), versions);
+        assertEquals(Arrays.asList(2, 1, 3, 4, 5), installedRanks);
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), versionRanks);
+    }
+
+    @Test
+    public void legacyTableIsUpgradedOnce() {
+        Session session = createSession(createMetadataWithTables(false));
+
+        SchemaVersionDAO dao = new SchemaVersionDAO(session, createKeyspace(), TABLE, false);
+        dao.createTablesIfNotExist();
+        dao.createTablesIfNotExist();
+
+        ArgumentCaptor<Statement> statement = ArgumentCaptor.forClass(Statement.class);
+        verify(session, times(1)).execute(statement.capture());
+        assertEquals("ALTER TABLE ks." + TABLE + " ADD installed_seq timeuuid;",
+                ((SimpleStatement) statement.getValue()).getQueryString());
+    }
+
+    @Test
+    public void failedMigrationIsRemovedFromCache() {
+        Session session = createSession(createMetadataWithTables(true));
+        PreparedStatement preparedStatement = mock(PreparedStatement.class);
+        when(session.prepare(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.bind(anyVararg())).thenReturn(mock(BoundStatement.class));
+        Row epochRow = mock(Row.class);
+        when(epochRow.getLong("count")).thenReturn(3L, 4L);
+        ResultSet result = mock(ResultSet.class);
+        when(result.all()).thenReturn(Collections.singletonList(epochRow));
+        when(result.wasApplied()).thenReturn(true);
+        when(session.execute(isA(BoundStatement.class))).thenReturn(result);
+        when(session.executeAsync(isA(BoundStatement.class))).thenReturn(mock(ResultSetFuture.class));
+        Row failedRow = createRow("2", null, UUIDs.startOf(2000));
+        when(failedRow.getBool("success")).thenReturn(false);
+        List<Row> rows = Arrays.asList(createRow("1", null, UUIDs.startOf(1000)), failedRow);
+        ResultSet historyResult = mock(ResultSet.class);
+        when(historyResult.all()).thenReturn(rows);
+        when(session.execute(isA(Select.class))).thenReturn(historyResult);
+
+        SchemaVersionDAO dao = new SchemaVersionDAO(session, createKeyspace(), TABLE, true);
+        assertEquals(2, dao.findAppliedMigrations().size());
+        assertTrue(dao.removeFailedMigration(MigrationVersion.fromVersion("2")));
+
+        List<AppliedMigration> appliedMigrations = dao.findAppliedMigrations();
+        assertEquals(1, appliedMigrations.size());
+        assertEquals("1", appliedMigrations.get(0).getVersion().toString());
+        verify(session, times(1)).execute(isA(Select.class));
+    }
+
+    /**
+     * @param installedSeqColumn Whether the metadata table has the installed_seq column.
+     * @return The metadata of a cluster where both metadata tables exist.
+     */
+    private Metadata createMetadataWithTables(boolean installedSeqColumn) {
+        Metadata metadata = createMetadata();
+        KeyspaceMetadata keyspaceMetadata = mock(KeyspaceMetadata.class);
+        TableMetadata tableMetadata = mock(TableMetadata.class);
+        when(metadata.getKeyspace("ks")).thenReturn(keyspaceMetadata);
+        when(keyspaceMetadata.getTable(TABLE)).thenReturn(tableMetadata);
+        when(keyspaceMetadata.getTable(TABLE + "_counts")).thenReturn(mock(TableMetadata.class));
+        if (installedSeqColumn) {
+            when(tableMetadata.getColumn("installed_seq")).thenReturn(mock(ColumnMetadata.class));
+        }
+        return metadata;
+    }
+
+    /**
+     * @param installedRank The stored installed rank of a legacy row, {@code null} for a row with an installed_seq.
+     */
+    private Row createRow(String version, Integer installedRank, UUID installedSeq) {
+        Row row = mock(Row.class);
+        when(row.getString("version")).thenReturn(version);
+        when(row.getString("type")).thenReturn(MigrationType.CQL.name());
+        when(row.getBool("success")).thenReturn(true);
+        when(row.isNull("checksum")).thenReturn(true);
+        when(row.isNull("installed_rank")).thenReturn(installedRank == null);
+        if (installedRank != null) {
+            when(row.getInt("installed_rank")).thenReturn(installedRank);
+        }
+        when(row.getUUID("installed_seq")).thenReturn(installedSeq);
+        return row;
+    }
+
+    private Keyspace createKeyspace() {
+        Keyspace keyspace = new Keyspace();
+        keyspace.setName("ks");
+        return keyspace;
+    }
+
+    private Metadata createMetadata() {
+        Metadata metadata = mock(Metadata.class);
+        when(metadata.getAllHosts()).thenReturn(Collections.singleton(mock(Host.class)));
+        return metadata;
+    }
+
+    private Session createSession(Metadata metadata) {
+        Cluster cluster = mock(Cluster.class);
+        when(cluster.getMetadata()).thenReturn(metadata);
+        Session session = mock(Session.class);
+        when(session.getCluster()).thenReturn(cluster);
+        return session;
+    }
+}
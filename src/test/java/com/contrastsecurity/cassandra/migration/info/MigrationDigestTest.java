@@ -0,0 +1,69 @@
+package com.contrastsecurity.cassandra.migration.info;
+
+import com.contrastsecurity.cassandra.migration.config.MigrationType;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class MigrationDigestTest {
+    @Test
+    public void appliedAndResolvedSetsMatch() {
+        List<ResolvedMigration> resolved = Arrays.asList(resolved("1", 11), resolved("1.1", null), resolved("2", 22));
+        // Applied out of order, plus a failed attempt that does not count
+        List<AppliedMigration> applied = Arrays.asList(applied("2", 22, true), applied("1.1", null, true),
+                applied("1", 11, true), applied("3", 33, false));
+
+        MigrationDigest resolvedDigest = MigrationDigest.ofResolved(resolved, MigrationVersion.LATEST);
+        MigrationDigest appliedDigest = MigrationDigest.ofApplied(applied);
+
+        assertEquals(resolvedDigest, appliedDigest);
+        assertEquals("2", resolvedDigest.getWatermark().toString());
+        assertEquals(resolvedDigest, new MigrationDigest(appliedDigest.getBucketHashes(), MigrationVersion.fromVersion("2")));
+    }
+
+    @Test
+    public void divergingBucketIsFound() {
+        List<ResolvedMigration> resolved = Arrays.asList(resolved("1", 11), resolved("2", 22), resolved("3", 33));
+        List<AppliedMigration> applied = Arrays.asList(applied("1", 11, true), applied("2", 22, true));
+
+        MigrationDigest resolvedDigest = MigrationDigest.ofResolved(resolved, MigrationVersion.LATEST);
+        MigrationDigest appliedDigest = MigrationDigest.ofApplied(applied);
+
+        assertNotEquals(resolvedDigest, appliedDigest);
+        assertEquals(Collections.singletonList(MigrationDigest.bucketOf(MigrationVersion.fromVersion("3"))),
+                resolvedDigest.divergingBuckets(appliedDigest));
+
+        // Up to version 2, the sets are identical
+        assertEquals(appliedDigest, MigrationDigest.ofResolved(resolved, MigrationVersion.fromVersion("2")));
+    }
+
+    @Test
+    public void checksumChangeIsDetected() {
+        MigrationDigest digest = MigrationDigest.ofResolved(
+                Collections.singletonList(resolved("1", 11)), MigrationVersion.LATEST);
+        MigrationDigest modified = MigrationDigest.ofResolved(
+                Collections.singletonList(resolved("1", 12)), MigrationVersion.LATEST);
+
+        assertNotEquals(digest.getHash(), modified.getHash());
+        assertEquals(Collections.singletonList(MigrationDigest.bucketOf(MigrationVersion.fromVersion("1"))),
+                digest.divergingBuckets(modified));
+    }
+
+    private ResolvedMigration resolved(String version, Integer checksum) {
+        ResolvedMigration migration = new ResolvedMigration();
+        migration.setVersion(MigrationVersion.fromVersion(version));
+        migration.setChecksum(checksum);
+        return migration;
+    }
+
+    private AppliedMigration applied(String version, Integer checksum, boolean success) {
+        return new AppliedMigration(0, 0, MigrationVersion.fromVersion(version), "abc", MigrationType.CQL, "x",
+                checksum, new Date(), "sa", 0, success);
+    }
+}
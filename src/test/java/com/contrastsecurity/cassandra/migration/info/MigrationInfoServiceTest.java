@@ -166,6 +166,32 @@ public class MigrationInfoServiceTest {
         assertEquals(0, migrationInfoService.pending().length);
     }
 
+    @Test
+    public void unsortedInputs() {
+        MigrationInfoService migrationInfoService =
+                new MigrationInfoService(
+                        createMigrationResolver(createAvailableMigration(4), createAvailableMigration(1),
+                                createAvailableMigration(3)),
+                        createSchemaVersionDAO(createAppliedMigration(2), createAppliedMigration(1)),
+                        MigrationVersion.LATEST, true, true);
+        migrationInfoService.refresh();
+
+        MigrationInfo[] all = migrationInfoService.all();
+        assertEquals(4, all.length);
+        for (int i = 0; i < all.length; i++) {
+            assertEquals(Integer.toString(i + 1), all[i].getVersion().toString());
+        }
+        assertEquals(MigrationState.SUCCESS, all[0].getState());
+        assertEquals(MigrationState.MISSING_SUCCESS, all[1].getState());
+        assertEquals("2", migrationInfoService.current().getVersion().toString());
+        assertEquals(2, migrationInfoService.applied().length);
+        assertEquals(2, migrationInfoService.pending().length);
+        assertEquals("3", migrationInfoService.pending()[0].getVersion().toString());
+        assertEquals(3, migrationInfoService.resolved().length);
+        assertEquals("1", migrationInfoService.resolved()[0].getVersion().toString());
+        assertEquals("4", migrationInfoService.resolved()[2].getVersion().toString());
+    }
+
     /**
      * Creates a new available migration with this version.
      *
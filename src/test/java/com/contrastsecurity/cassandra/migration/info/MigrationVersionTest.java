@@ -19,6 +19,7 @@ import com.contrastsecurity.cassandra.migration.CassandraMigrationException;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -172,5 +173,40 @@ public class MigrationVersionTest {
         MigrationVersion longVersions = MigrationVersion.fromVersion(raw);
         assertEquals(raw, longVersions.getVersion());
     }
+
+    @Test
+    public void beyondLong() {
+        final MigrationVersion max = MigrationVersion.fromVersion("1.9223372036854775806");
+        final MigrationVersion beyond = MigrationVersion.fromVersion("1.9223372036854775808");
+        final MigrationVersion beyondZero = MigrationVersion.fromVersion("1.9223372036854775808.0");
+        assertTrue(max.compareTo(beyond) < 0);
+        assertTrue(beyond.compareTo(max) > 0);
+        assertTrue(beyond.compareTo(MigrationVersion.fromVersion("2")) < 0);
+        assertTrue(beyond.compareTo(MigrationVersion.fromVersion("1.1")) > 0);
+        assertEquals(beyond, beyondZero);
+        assertEquals(beyond.hashCode(), beyondZero.hashCode());
+    }
+
+    @Test
+    public void underscores() {
+        final MigrationVersion v1 = MigrationVersion.fromVersion("1_2_3");
+        assertEquals(MigrationVersion.fromVersion("1.2.3"), v1);
+        assertEquals("1.2.3", v1.getVersion());
+    }
+
+    @Test
+    public void interned() {
+        assertSame(MigrationVersion.fromVersion("4.5.6"), MigrationVersion.fromVersion("4.5.6"));
+    }
+
+    @Test(expected = CassandraMigrationException.class)
+    public void emptyVersion() {
+        MigrationVersion.fromVersion("");
+    }
+
+    @Test(expected = CassandraMigrationException.class)
+    public void lettersBeyondLong() {
+        MigrationVersion.fromVersion("1.99999999999999999999a");
+    }
 }
 
@@ -49,6 +49,26 @@ public class CompositeMigrationResolverTest {
         assertEquals("Add contents table", migrationList.get(2).getDescription());
     }
 
+    @Test
+    public void resolveMigrationsInParallel() {
+        ScriptsLocations locations =
+                new ScriptsLocations("migration.outoforder", "migration/subdir");
+        List<ResolvedMigration> sequential = new CompositeMigrationResolver(
+                Thread.currentThread().getContextClassLoader(), locations, "UTF-8").resolveMigrations();
+
+        CompositeMigrationResolver parallelResolver = new CompositeMigrationResolver(
+                Thread.currentThread().getContextClassLoader(), locations, "UTF-8");
+        parallelResolver.setThreads(4);
+        List<ResolvedMigration> parallel = parallelResolver.resolveMigrations();
+
+        assertEquals(sequential.size(), parallel.size());
+        for (int i = 0; i < sequential.size(); i++) {
+            assertEquals(sequential.get(i).getVersion(), parallel.get(i).getVersion());
+            assertEquals(sequential.get(i).getScript(), parallel.get(i).getScript());
+            assertEquals(sequential.get(i).getChecksum(), parallel.get(i).getChecksum());
+        }
+    }
+
     /**
      * Checks that migrations are properly collected, eliminating all exact duplicates.
      */
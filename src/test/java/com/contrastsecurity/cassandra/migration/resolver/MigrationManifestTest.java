@@ -0,0 +1,146 @@
+package com.contrastsecurity.cassandra.migration.resolver;
+
+import com.contrastsecurity.cassandra.migration.config.ScriptsLocation;
+import com.contrastsecurity.cassandra.migration.info.ResolvedMigration;
+import com.contrastsecurity.cassandra.migration.resolver.cql.CqlMigrationResolver;
+import com.contrastsecurity.cassandra.migration.resolver.java.JavaMigrationResolver;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MigrationManifestTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void resolversUseTheManifest() throws Exception {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        ScriptsLocation cqlLocation = new ScriptsLocation("migration/subdir");
+        ScriptsLocation javaLocation = new ScriptsLocation("com/contrastsecurity/cassandra/migration/resolver/java/dummy");
+
+        List<ResolvedMigration> scanned = resolve(classLoader, cqlLocation, false);
+        List<ResolvedMigration> scannedJava = resolve(classLoader, javaLocation, false);
+        File root = temporaryFolder.getRoot();
+        MigrationManifest.write(root, cqlLocation, "UTF-8", scanned);
+        MigrationManifest.write(root, javaLocation, "UTF-8", scannedJava);
+
+        try (URLClassLoader manifestClassLoader = manifestClassLoader(classLoader, root)) {
+            assertNotNull(MigrationManifest.load(manifestClassLoader, cqlLocation, "UTF-8"));
+            assertNull(MigrationManifest.load(manifestClassLoader, cqlLocation, "ISO-8859-1"));
+
+            assertSameMigrations(scanned, resolve(manifestClassLoader, cqlLocation, true));
+            assertSameMigrations(scannedJava, resolve(manifestClassLoader, javaLocation, true));
+        }
+    }
+
+    @Test
+    public void manifestsListingTheSameMigrationsAreMerged() throws Exception {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        ScriptsLocation cqlLocation = new ScriptsLocation("migration/subdir");
+
+        List<ResolvedMigration> scanned = resolve(classLoader, cqlLocation, false);
+        File first = temporaryFolder.newFolder("first");
+        File second = temporaryFolder.newFolder("second");
+        MigrationManifest.write(first, cqlLocation, "UTF-8", scanned);
+        MigrationManifest.write(second, cqlLocation, "UTF-8", scanned);
+
+        try (URLClassLoader manifestClassLoader = manifestClassLoader(classLoader, first, second)) {
+            assertSameMigrations(scanned, resolve(manifestClassLoader, cqlLocation, true));
+        }
+    }
+
+    @Test
+    public void entryWithoutManifestIsScanned() throws Exception {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        ScriptsLocation cqlLocation = new ScriptsLocation("migration/subdir");
+        File root = temporaryFolder.getRoot();
+        MigrationManifest.write(root, cqlLocation, "UTF-8", new ArrayList<ResolvedMigration>());
+
+        // The test classes hold the location too, without a manifest
+        try (URLClassLoader manifestClassLoader = new URLClassLoader(new URL[]{root.toURI().toURL()}, classLoader)) {
+            assertNull(MigrationManifest.load(manifestClassLoader, cqlLocation, "UTF-8"));
+            assertSameMigrations(resolve(classLoader, cqlLocation, false),
+                    resolve(manifestClassLoader, cqlLocation, true));
+        }
+    }
+
+    @Test
+    public void migrationsOfOtherClasspathEntries() throws Exception {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        ScriptsLocation cqlLocation = new ScriptsLocation("migration/subdir");
+        ScriptsLocation javaLocation = new ScriptsLocation("com/contrastsecurity/cassandra/migration/resolver/java/dummy");
+        ResolvedMigration cqlMigration = resolve(classLoader, cqlLocation, false).get(0);
+        ResolvedMigration javaMigration = resolve(classLoader, javaLocation, false).get(0);
+
+        File root = temporaryFolder.getRoot();
+        assertFalse(MigrationManifest.isIn(root, cqlLocation, cqlMigration));
+        assertFalse(MigrationManifest.isIn(root, javaLocation, javaMigration));
+
+        File classes = new File(classLoader.getResource("migration/subdir").toURI()).getParentFile().getParentFile();
+        assertTrue(MigrationManifest.isIn(classes, cqlLocation, cqlMigration));
+        assertTrue(MigrationManifest.isIn(classes, javaLocation, javaMigration));
+    }
+
+    @Test
+    public void locationWithoutManifest() {
+        assertNull(MigrationManifest.load(Thread.currentThread().getContextClassLoader(),
+                new ScriptsLocation("migration/subdir"), "UTF-8"));
+        assertNull(MigrationManifest.load(Thread.currentThread().getContextClassLoader(),
+                new ScriptsLocation("filesystem:src/test/resources/migration/subdir"), "UTF-8"));
+    }
+
+    /**
+     * Creates a ClassLoader finding resources in these directories only, and loading classes from its parent.
+     */
+    private URLClassLoader manifestClassLoader(ClassLoader parent, File... directories) throws Exception {
+        URL[] urls = new URL[directories.length];
+        for (int i = 0; i < directories.length; i++) {
+            urls[i] = directories[i].toURI().toURL();
+        }
+        return new URLClassLoader(urls, parent) {
+            @Override
+            public Enumeration<URL> getResources(String name) throws IOException {
+                return findResources(name);
+            }
+        };
+    }
+
+    private List<ResolvedMigration> resolve(ClassLoader classLoader, ScriptsLocation location, boolean useManifest) {
+        CqlMigrationResolver cqlMigrationResolver = new CqlMigrationResolver(classLoader, location, "UTF-8");
+        cqlMigrationResolver.setUseManifest(useManifest);
+        JavaMigrationResolver javaMigrationResolver = new JavaMigrationResolver(classLoader, location, "UTF-8");
+        javaMigrationResolver.setUseManifest(useManifest);
+
+        List<ResolvedMigration> migrations = new ArrayList<ResolvedMigration>(cqlMigrationResolver.resolveMigrations());
+        migrations.addAll(javaMigrationResolver.resolveMigrations());
+        return migrations;
+    }
+
+    private void assertSameMigrations(List<ResolvedMigration> expected, List<ResolvedMigration> actual) {
+        assertFalse(expected.isEmpty());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getVersion(), actual.get(i).getVersion());
+            assertEquals(expected.get(i).getDescription(), actual.get(i).getDescription());
+            assertEquals(expected.get(i).getScript(), actual.get(i).getScript());
+            assertEquals(expected.get(i).getChecksum(), actual.get(i).getChecksum());
+            assertEquals(expected.get(i).getType(), actual.get(i).getType());
+            assertEquals(expected.get(i).getDependencies(), actual.get(i).getDependencies());
+            assertNotNull(actual.get(i).getExecutor());
+        }
+    }
+}
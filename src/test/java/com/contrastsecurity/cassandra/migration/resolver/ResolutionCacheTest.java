@@ -0,0 +1,81 @@
+package com.contrastsecurity.cassandra.migration.resolver;
+
+import com.contrastsecurity.cassandra.migration.info.MigrationVersion;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResolutionCacheTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void entriesSurviveARoundTrip() throws Exception {
+        File file = new File(temporaryFolder.getRoot(), "cache/resolution.cache");
+
+        ResolutionCache cache = new ResolutionCache(file, "UTF-8");
+        cache.put("db/V1__First.cql", new ResolutionCache.Entry("a:1:2", MigrationVersion.fromVersion("1"),
+                "First", 42, null));
+        cache.put("db/V2__Second\ttab.cql", new ResolutionCache.Entry("a:3:4", MigrationVersion.fromVersion("2"),
+                "Second", null, Arrays.asList(MigrationVersion.fromVersion("1"))));
+        cache.put("db/V3__Third.cql", new ResolutionCache.Entry("a:5:6", MigrationVersion.fromVersion("3"),
+                "Third", -7, Collections.<MigrationVersion>emptyList()));
+        cache.save();
+        assertTrue(file.isFile());
+
+        ResolutionCache reloaded = new ResolutionCache(file, "UTF-8");
+        ResolutionCache.Entry first = reloaded.get("db/V1__First.cql", "a:1:2");
+        assertEquals("1", first.getVersion().toString());
+        assertEquals("First", first.getDescription());
+        assertEquals(Integer.valueOf(42), first.getChecksum());
+        assertNull(first.getDependencies());
+
+        ResolutionCache.Entry second = reloaded.get("db/V2__Second\ttab.cql", "a:3:4");
+        assertNull(second.getChecksum());
+        assertEquals(Arrays.asList(MigrationVersion.fromVersion("1")), second.getDependencies());
+
+        assertTrue(reloaded.get("db/V3__Third.cql", "a:5:6").getDependencies().isEmpty());
+    }
+
+    @Test
+    public void changedFingerprintMisses() throws Exception {
+        File file = temporaryFolder.newFile("resolution.cache");
+
+        ResolutionCache cache = new ResolutionCache(file, "UTF-8");
+        cache.put("db/V1__First.cql", new ResolutionCache.Entry("a:1:2", MigrationVersion.fromVersion("1"),
+                "First", 42, null));
+        cache.save();
+
+        assertNull(new ResolutionCache(file, "UTF-8").get("db/V1__First.cql", "a:1:3"));
+        assertNull(new ResolutionCache(file, "ISO-8859-1").get("db/V1__First.cql", "a:1:2"));
+    }
+
+    @Test
+    public void unusedEntriesAreDropped() throws Exception {
+        File file = temporaryFolder.newFile("resolution.cache");
+
+        ResolutionCache cache = new ResolutionCache(file, "UTF-8");
+        cache.put("db/V1__First.cql", new ResolutionCache.Entry("a:1:2", MigrationVersion.fromVersion("1"),
+                "First", 42, null));
+        cache.put("db/V2__Second.cql", new ResolutionCache.Entry("a:3:4", MigrationVersion.fromVersion("2"),
+                "Second", 43, null));
+        cache.save();
+
+        ResolutionCache reloaded = new ResolutionCache(file, "UTF-8");
+        reloaded.get("db/V2__Second.cql", "a:3:4");
+        reloaded.save();
+
+        ResolutionCache pruned = new ResolutionCache(file, "UTF-8");
+        assertNull(pruned.get("db/V1__First.cql", "a:1:2"));
+        assertFalse(pruned.get("db/V2__Second.cql", "a:3:4") == null);
+    }
+}
@@ -0,0 +1,128 @@
+package com.contrastsecurity.cassandra.migration.resolver;
+
+import com.contrastsecurity.cassandra.migration.config.ScriptsLocations;
+import com.contrastsecurity.cassandra.migration.info.ResolvedMigration;
+import com.datastax.driver.core.Session;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class WatchingMigrationResolverTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void resolvesChangedScripts() throws Exception {
+        File root = temporaryFolder.getRoot();
+        write(new File(root, "V1__First.cql"), "CREATE TABLE first (id int PRIMARY KEY);");
+
+        try (WatchingMigrationResolver resolver = createResolver(root)) {
+            assertEquals(Arrays.asList("1"), versions(resolver.resolveMigrations()));
+            assertFalse(resolver.awaitChanges(100, TimeUnit.MILLISECONDS));
+
+            // Added script
+            write(new File(root, "V2__Second.cql"), "CREATE TABLE second (id int PRIMARY KEY);");
+            assertTrue(resolver.awaitChanges(10, TimeUnit.SECONDS));
+            assertEquals(Arrays.asList("1", "2"), versions(resolver.resolveMigrations()));
+
+            // Added directory
+            File directory = new File(root, "a");
+            assertTrue(directory.mkdir());
+            write(new File(directory, "V3__Third.cql"), "CREATE TABLE third (id int PRIMARY KEY);");
+            assertTrue(awaitVersions(resolver, Arrays.asList("1", "2", "3")));
+
+            // Changed script
+            Integer checksum = resolver.resolveMigrations().get(1).getChecksum();
+            write(new File(root, "V2__Second.cql"), "CREATE TABLE second (id text PRIMARY KEY);");
+            assertTrue(resolver.awaitChanges(10, TimeUnit.SECONDS));
+            assertNotEquals(checksum, resolver.resolveMigrations().get(1).getChecksum());
+
+            // Deleted script
+            assertTrue(new File(root, "V1__First.cql").delete());
+            assertTrue(resolver.awaitChanges(10, TimeUnit.SECONDS));
+            assertEquals(Arrays.asList("2", "3"), versions(resolver.resolveMigrations()));
+        }
+    }
+
+    @Test
+    public void changedScriptIsReadWhenExecuted() throws Exception {
+        File root = temporaryFolder.getRoot();
+        write(new File(root, "V1__First.cql"), "CREATE TABLE first (id int PRIMARY KEY);");
+
+        try (WatchingMigrationResolver resolver = createResolver(root)) {
+            ResolvedMigration migration = resolver.resolveMigrations().get(0);
+
+            write(new File(root, "V1__First.cql"), "CREATE TABLE first (id text PRIMARY KEY);");
+            assertTrue(resolver.awaitChanges(10, TimeUnit.SECONDS));
+            ResolvedMigration changed = resolver.resolveMigrations().get(0);
+            assertNotSame(migration, changed);
+
+            Session session = mock(Session.class);
+            changed.getExecutor().execute(session);
+            verify(session).execute("CREATE TABLE first (id text PRIMARY KEY)");
+        }
+    }
+
+    @Test
+    public void ignoresOtherFiles() throws Exception {
+        File root = temporaryFolder.getRoot();
+
+        try (WatchingMigrationResolver resolver = createResolver(root)) {
+            assertEquals(0, resolver.resolveMigrations().size());
+
+            write(new File(root, "README.txt"), "Not a migration");
+            assertFalse(resolver.awaitChanges(500, TimeUnit.MILLISECONDS));
+            assertEquals(0, resolver.resolveMigrations().size());
+        }
+    }
+
+    private WatchingMigrationResolver createResolver(File root) throws Exception {
+        ScriptsLocations locations = new ScriptsLocations("filesystem:" + root.getPath());
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        return new WatchingMigrationResolver(new CompositeMigrationResolver(classLoader, locations, "UTF-8"),
+                classLoader, locations, "UTF-8", 0);
+    }
+
+    /**
+     * Waits for the resolved migrations to have these versions, as the events of a new directory and its scripts may
+     * be signalled separately.
+     */
+    private static boolean awaitVersions(WatchingMigrationResolver resolver, List<String> expected) throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!versions(resolver.resolveMigrations()).equals(expected)) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            resolver.awaitChanges(100, TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    private static List<String> versions(List<ResolvedMigration> migrations) {
+        List<String> versions = new ArrayList<>();
+        for (ResolvedMigration migration : migrations) {
+            versions.add(migration.getVersion().toString());
+        }
+        return versions;
+    }
+
+    private static void write(File file, String content) throws Exception {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -3,15 +3,19 @@ package com.contrastsecurity.cassandra.migration.resolver.cql;
 import com.contrastsecurity.cassandra.migration.CassandraMigrationException;
 import com.contrastsecurity.cassandra.migration.config.ScriptsLocation;
 import com.contrastsecurity.cassandra.migration.info.ResolvedMigration;
+import com.contrastsecurity.cassandra.migration.resolver.ResolutionCache;
 import com.contrastsecurity.cassandra.migration.utils.scanner.classpath.ClassPathResource;
 import com.contrastsecurity.cassandra.migration.utils.scanner.filesystem.FileSystemResource;
 import org.junit.Test;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.zip.CRC32;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 /**
  * Testcase for CqlMigration.
@@ -37,6 +41,47 @@ public class CqlMigrationResolverTest {
         assertEquals("dir2/V2_0__Add_contents_table.cql", migrationList.get(2).getScript());
     }
 
+    @Test
+    public void resolveMigrationsWithCache() throws Exception {
+        File cacheFile = File.createTempFile("resolution", ".cache");
+        try {
+            List<ResolvedMigration> uncached = new ArrayList<>(new CqlMigrationResolver(
+                    Thread.currentThread().getContextClassLoader(),
+                    new ScriptsLocation("migration/subdir"), "UTF-8").resolveMigrations());
+
+            for (int run = 0; run < 2; run++) {
+                ResolutionCache resolutionCache = new ResolutionCache(cacheFile, "UTF-8");
+                List<ResolvedMigration> cached = new ArrayList<>(new CqlMigrationResolver(
+                        Thread.currentThread().getContextClassLoader(),
+                        new ScriptsLocation("migration/subdir"), "UTF-8", 0, resolutionCache).resolveMigrations());
+                resolutionCache.save();
+
+                assertEquals(uncached.size(), cached.size());
+                for (int i = 0; i < uncached.size(); i++) {
+                    assertEquals(uncached.get(i).getVersion(), cached.get(i).getVersion());
+                    assertEquals(uncached.get(i).getDescription(), cached.get(i).getDescription());
+                    assertEquals(uncached.get(i).getScript(), cached.get(i).getScript());
+                    assertEquals(uncached.get(i).getChecksum(), cached.get(i).getChecksum());
+                }
+            }
+        } finally {
+            cacheFile.delete();
+        }
+    }
+
+    @Test
+    public void checksumIsComputedOverTheWholeScript() {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        List<ResolvedMigration> migrations = new ArrayList<>(new CqlMigrationResolver(classLoader,
+                new ScriptsLocation("migration/subdir"), "UTF-8").resolveMigrations());
+
+        for (ResolvedMigration migration : migrations) {
+            CRC32 crc32 = new CRC32();
+            crc32.update(new ClassPathResource("migration/subdir/" + migration.getScript(), classLoader).loadAsBytes());
+            assertEquals(Integer.valueOf((int) crc32.getValue()), migration.getChecksum());
+        }
+    }
+
     @Test(expected = CassandraMigrationException.class)
     public void resolveMigrationsNonExisting() {
         CqlMigrationResolver cqlMigrationResolver =
@@ -73,4 +118,19 @@ public class CqlMigrationResolverTest {
 
         assertEquals("V3.171__patch.cql", cqlMigrationResolver.extractScriptName(new FileSystemResource("/some/dir/V3.171__patch.cql")));
     }
+
+    @Test
+    public void extractDependencies() {
+        assertEquals("[1.1, 1.2]", String.valueOf(CqlMigrationResolver.extractDependencies(
+                "-- Adds the users table\n\n--  @depends: 1.1, 1.2\nCREATE TABLE users (id int PRIMARY KEY);")));
+        assertEquals("[]", String.valueOf(CqlMigrationResolver.extractDependencies(
+                "-- @depends:\nCREATE TABLE users (id int PRIMARY KEY);")));
+    }
+
+    @Test
+    public void extractDependenciesUndeclared() {
+        assertNull(CqlMigrationResolver.extractDependencies("CREATE TABLE users (id int PRIMARY KEY);"));
+        assertNull(CqlMigrationResolver.extractDependencies(
+                "CREATE TABLE users (id int PRIMARY KEY);\n-- @depends: 1.1"));
+    }
 }
@@ -0,0 +1,94 @@
+package com.contrastsecurity.cassandra.migration.script;
+
+import com.contrastsecurity.cassandra.migration.CassandraMigrationException;
+import com.contrastsecurity.cassandra.migration.utils.scanner.Resource;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.exceptions.InvalidQueryException;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CqlScriptTest {
+    private static final String SOURCE = "-- A comment\n" +
+            "CREATE TABLE t (k int PRIMARY KEY, v text);\n" +
+            "\n" +
+            "/* a multi-line\n" +
+            "   comment */\n" +
+            "INSERT INTO t (k, v)\n" +
+            "  VALUES (1, 'a;b');\n" +
+            "UPDATE t SET v = 'c' WHERE k = 1";
+
+    @Test
+    public void parse() {
+        assertEquals(Arrays.asList(
+                "CREATE TABLE t (k int PRIMARY KEY, v text)",
+                "INSERT INTO t (k, v)\n  VALUES (1, 'a;b')",
+                "UPDATE t SET v = 'c' WHERE k = 1"), new CqlScript(SOURCE).getCqlStatements());
+    }
+
+    @Test
+    public void parserTracksLineNumbers() throws Exception {
+        CqlStatementParser parser = new CqlStatementParser(new StringReader(SOURCE));
+
+        assertEquals("CREATE TABLE t (k int PRIMARY KEY, v text)", parser.next());
+        assertEquals(2, parser.getLineNumber());
+        assertEquals("INSERT INTO t (k, v)\n  VALUES (1, 'a;b')", parser.next());
+        assertEquals(6, parser.getLineNumber());
+        assertEquals("UPDATE t SET v = 'c' WHERE k = 1", parser.next());
+        assertEquals(8, parser.getLineNumber());
+        assertNull(parser.next());
+    }
+
+    @Test
+    public void failureNamesTheLine() {
+        Session session = mock(Session.class);
+        when(session.execute("INSERT INTO t (k, v)\n  VALUES (1, 'a;b')")).thenThrow(new InvalidQueryException("boom"));
+
+        try {
+            new CqlScript(SOURCE).execute(session);
+            fail();
+        } catch (CassandraMigrationException e) {
+            assertEquals("Unable to execute CQL at line 6: INSERT INTO t (k, v)\n  VALUES (1, 'a;b')", e.getMessage());
+        }
+        verify(session).execute("CREATE TABLE t (k int PRIMARY KEY, v text)");
+    }
+
+    @Test
+    public void parseFailureWaitsForStatementsInFlight() {
+        InputStream truncated = new SequenceInputStream(
+                new ByteArrayInputStream("INSERT INTO t (k) VALUES (1);\nINSERT".getBytes()),
+                new InputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        throw new IOException("disk gone");
+                    }
+                });
+        Resource resource = mock(Resource.class);
+        when(resource.openStream()).thenReturn(truncated);
+        when(resource.getLocation()).thenReturn("db/migration/V1__broken.cql");
+        Session session = mock(Session.class);
+        ResultSetFuture insert = mock(ResultSetFuture.class);
+        when(session.executeAsync("INSERT INTO t (k) VALUES (1)")).thenReturn(insert);
+
+        try {
+            new CqlScript(resource, "UTF-8").execute(session, 4);
+            fail();
+        } catch (CassandraMigrationException e) {
+            assertEquals(IOException.class, e.getCause().getClass());
+        }
+        verify(insert).getUninterruptibly();
+    }
+}
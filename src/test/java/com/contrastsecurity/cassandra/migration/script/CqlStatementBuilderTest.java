@@ -0,0 +1,82 @@
+package com.contrastsecurity.cassandra.migration.script;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CqlStatementBuilderTest {
+    @Test
+    public void delimiterTerminatesStatement() {
+        CqlStatementBuilder builder = new CqlStatementBuilder();
+        builder.addLine("CREATE TABLE t (k int PRIMARY KEY)");
+        assertFalse(builder.isTerminated());
+        builder.addLine("  WITH comment = 'x';  ");
+        assertTrue(builder.isTerminated());
+        assertEquals("CREATE TABLE t (k int PRIMARY KEY)\n  WITH comment = 'x'", builder.getCqlStatement());
+    }
+
+    @Test
+    public void delimiterInsideStringLiteral() {
+        CqlStatementBuilder builder = new CqlStatementBuilder();
+        builder.addLine("INSERT INTO t (k, v) VALUES (1, 'it''s;");
+        assertFalse(builder.isTerminated());
+        assertTrue(builder.endWithOpenMultilineStringLiteral());
+        builder.addLine("-- not a comment /* nor this;");
+        assertFalse(builder.isTerminated());
+        builder.addLine("');");
+        assertTrue(builder.isTerminated());
+        assertEquals("INSERT INTO t (k, v) VALUES (1, 'it''s;\n-- not a comment /* nor this;\n')",
+                builder.getCqlStatement());
+    }
+
+    @Test
+    public void delimiterInsideDollarBlock() {
+        CqlStatementBuilder builder = new CqlStatementBuilder();
+        builder.addLine("CREATE FUNCTION f (v int) RETURNS NULL ON NULL INPUT RETURNS int LANGUAGE java AS $$");
+        builder.addLine("  int x = v * 2;");
+        assertFalse(builder.isTerminated());
+        assertTrue(builder.endWithOpenMultilineStringLiteral());
+        builder.addLine("  return x; $$;");
+        assertTrue(builder.isTerminated());
+        assertTrue(builder.getCqlStatement().endsWith("return x; $$"));
+    }
+
+    @Test
+    public void delimiterInsideComments() {
+        CqlStatementBuilder builder = new CqlStatementBuilder();
+        builder.addLine("SELECT * FROM t -- trailing;");
+        assertFalse(builder.isTerminated());
+        builder.addLine("/* block;");
+        builder.addLine("comment; */ WHERE k = 1;");
+        assertTrue(builder.isTerminated());
+        assertEquals("SELECT * FROM t -- trailing;\n/* block;\ncomment; */ WHERE k = 1", builder.getCqlStatement());
+    }
+
+    @Test
+    public void commentsOnlyCanBeDiscarded() {
+        CqlStatementBuilder builder = new CqlStatementBuilder();
+        builder.addLine("-- a comment; ");
+        assertTrue(builder.canDiscard());
+
+        builder = new CqlStatementBuilder();
+        builder.addLine("/* a multi-line");
+        assertFalse(builder.canDiscard());
+        builder.addLine("   comment */");
+        assertTrue(builder.canDiscard());
+        builder.addLine("SELECT");
+        assertFalse(builder.canDiscard());
+    }
+
+    @Test
+    public void delimiterAloneOnLine() {
+        CqlStatementBuilder builder = new CqlStatementBuilder();
+        builder.setDelimiter(new Delimiter("go", true));
+        builder.addLine("SELECT * FROM ergo");
+        assertFalse(builder.isTerminated());
+        builder.addLine("  GO ");
+        assertTrue(builder.isTerminated());
+        assertEquals("SELECT * FROM ergo\n  ", builder.getCqlStatement());
+    }
+}
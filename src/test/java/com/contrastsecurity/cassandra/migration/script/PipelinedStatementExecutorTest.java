@@ -0,0 +1,101 @@
+package com.contrastsecurity.cassandra.migration.script;
+
+import com.contrastsecurity.cassandra.migration.CassandraMigrationException;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.exceptions.InvalidQueryException;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PipelinedStatementExecutorTest {
+    @Test
+    public void pipelinable() {
+        assertTrue(PipelinedStatementExecutor.isPipelinable("INSERT INTO t (k, v) VALUES (1, 'if it works')"));
+        assertTrue(PipelinedStatementExecutor.isPipelinable("update t set v = 2 where k = 1"));
+        assertTrue(PipelinedStatementExecutor.isPipelinable("DELETE FROM t WHERE k = 1"));
+        assertTrue(PipelinedStatementExecutor.isPipelinable("UPDATE t SET l = [1, 2] WHERE k = 1"));
+        assertTrue(PipelinedStatementExecutor.isPipelinable("BEGIN BATCH INSERT INTO t (k) VALUES (1); APPLY BATCH"));
+
+        assertFalse(PipelinedStatementExecutor.isPipelinable("CREATE TABLE t (k int PRIMARY KEY)"));
+        assertFalse(PipelinedStatementExecutor.isPipelinable("SELECT * FROM t"));
+        assertFalse(PipelinedStatementExecutor.isPipelinable("INSERT INTO t (k) VALUES (1) IF NOT EXISTS"));
+        assertFalse(PipelinedStatementExecutor.isPipelinable("UPDATE t SET v = 2 WHERE k = 1 IF v = 1"));
+        assertFalse(PipelinedStatementExecutor.isPipelinable("UPDATE t SET l = l + [1] WHERE k = 1"));
+        assertFalse(PipelinedStatementExecutor.isPipelinable("UPDATE t SET l = [1] + l WHERE k = 1"));
+        assertFalse(PipelinedStatementExecutor.isPipelinable("UPDATE t SET c = c - 1 WHERE k = 1"));
+        assertFalse(PipelinedStatementExecutor.isPipelinable("UPDATE t SET l[1] = 2 WHERE k = 1"));
+        assertFalse(PipelinedStatementExecutor.isPipelinable("DELETE l[1] FROM t WHERE k = 1"));
+    }
+
+    @Test
+    public void windowIsBounded() {
+        Session session = mock(Session.class);
+        ResultSetFuture first = mock(ResultSetFuture.class);
+        ResultSetFuture second = mock(ResultSetFuture.class);
+        ResultSetFuture third = mock(ResultSetFuture.class);
+        when(session.executeAsync("INSERT 1")).thenReturn(first);
+        when(session.executeAsync("INSERT 2")).thenReturn(second);
+        when(session.executeAsync("INSERT 3")).thenReturn(third);
+
+        PipelinedStatementExecutor executor = new PipelinedStatementExecutor(session, 2);
+        executor.execute("INSERT 1");
+        executor.execute("INSERT 2");
+        verify(first, never()).getUninterruptibly();
+
+        executor.execute("INSERT 3");
+        verify(first).getUninterruptibly();
+        verify(second, never()).getUninterruptibly();
+
+        executor.flush();
+        verify(second).getUninterruptibly();
+        verify(third).getUninterruptibly();
+    }
+
+    @Test
+    public void ddlIsABarrier() {
+        Session session = mock(Session.class);
+        ResultSetFuture insert = mock(ResultSetFuture.class);
+        when(session.executeAsync("INSERT 1")).thenReturn(insert);
+
+        PipelinedStatementExecutor executor = new PipelinedStatementExecutor(session, 10);
+        executor.execute("INSERT 1");
+        executor.execute("ALTER TABLE t ADD v int");
+
+        InOrder inOrder = inOrder(session, insert);
+        inOrder.verify(session).executeAsync("INSERT 1");
+        inOrder.verify(insert).getUninterruptibly();
+        inOrder.verify(session).execute("ALTER TABLE t ADD v int");
+    }
+
+    @Test
+    public void stopsOnFirstFailure() {
+        Session session = mock(Session.class);
+        ResultSetFuture first = mock(ResultSetFuture.class);
+        ResultSetFuture second = mock(ResultSetFuture.class);
+        when(session.executeAsync("INSERT 1")).thenReturn(first);
+        when(session.executeAsync("INSERT 2")).thenReturn(second);
+        when(first.getUninterruptibly()).thenThrow(new InvalidQueryException("boom"));
+
+        PipelinedStatementExecutor executor = new PipelinedStatementExecutor(session, 10);
+        executor.execute("INSERT 1");
+        executor.execute("INSERT 2");
+        try {
+            executor.flush();
+            fail();
+        } catch (CassandraMigrationException e) {
+            assertEquals("Unable to execute CQL: INSERT 1", e.getMessage());
+        }
+        // The remaining request was awaited before reporting the failure
+        verify(second).getUninterruptibly();
+    }
+}
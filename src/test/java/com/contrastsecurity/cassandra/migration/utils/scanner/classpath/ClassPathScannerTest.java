@@ -0,0 +1,52 @@
+package com.contrastsecurity.cassandra.migration.utils.scanner.classpath;
+
+import com.contrastsecurity.cassandra.migration.api.JavaMigration;
+import com.contrastsecurity.cassandra.migration.resolver.java.dummy.SabotageEnum;
+import com.contrastsecurity.cassandra.migration.resolver.java.dummy.V2__InterfaceBasedMigration;
+import com.contrastsecurity.cassandra.migration.resolver.java.dummy.V4__DummyExtendedAbstractJdbcMigration;
+import com.contrastsecurity.cassandra.migration.resolver.java.dummy.Version3dot5;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for ClassPathScanner.
+ */
+public class ClassPathScannerTest {
+    @Test
+    public void scanForClasses() throws Exception {
+        Class<?>[] classes = new ClassPathScanner(Thread.currentThread().getContextClassLoader())
+                .scanForClasses("com/contrastsecurity/cassandra/migration/resolver/java/dummy", JavaMigration.class);
+
+        // V4 implements the interface through an abstract superclass, the abstract class and the enum are skipped
+        assertEquals(new HashSet<Class<?>>(Arrays.<Class<?>>asList(V2__InterfaceBasedMigration.class,
+                Version3dot5.class, V4__DummyExtendedAbstractJdbcMigration.class)), new HashSet<Class<?>>(Arrays.asList(classes)));
+    }
+
+    @Test
+    public void readClassFile() throws Exception {
+        ClassFileInfo classFileInfo = read(V4__DummyExtendedAbstractJdbcMigration.class);
+        assertEquals(V4__DummyExtendedAbstractJdbcMigration.class.getName(), classFileInfo.getName());
+        assertEquals("com.contrastsecurity.cassandra.migration.resolver.java.dummy.DummyAbstractJavaMigration",
+                classFileInfo.getSuperName());
+        assertArrayEquals(new String[0], classFileInfo.getInterfaceNames());
+        assertFalse(classFileInfo.isNonInstantiable());
+
+        classFileInfo = read(SabotageEnum.class);
+        assertArrayEquals(new String[]{JavaMigration.class.getName()}, classFileInfo.getInterfaceNames());
+        assertTrue(classFileInfo.isNonInstantiable());
+    }
+
+    private ClassFileInfo read(Class<?> clazz) throws Exception {
+        try (InputStream inputStream = clazz.getResourceAsStream(clazz.getSimpleName() + ".class")) {
+            return ClassFileInfo.read(inputStream);
+        }
+    }
+}
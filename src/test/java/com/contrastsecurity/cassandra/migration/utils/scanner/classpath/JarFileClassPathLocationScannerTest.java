@@ -0,0 +1,73 @@
+package com.contrastsecurity.cassandra.migration.utils.scanner.classpath;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for JarFileClassPathLocationScanner.
+ */
+public class JarFileClassPathLocationScannerTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void findResourceNames() throws Exception {
+        File jar = temporaryFolder.newFile("app.jar");
+        writeJar(new FileOutputStream(jar), "db/", "db/migration/", "db/migration/V1__First.cql",
+                "db/migration/sub/V2__Second.cql", "db/migration2/V3__Other.cql", "db/V0__Above.cql");
+
+        URL url = new URL("jar:" + jar.toURI() + "!/db/migration");
+        JarFileClassPathLocationScanner scanner = new JarFileClassPathLocationScanner();
+        assertEquals(new TreeSet<String>(Arrays.asList("db/migration/V1__First.cql", "db/migration/sub/V2__Second.cql")),
+                scanner.findResourceNames("db/migration", url));
+        // Served by the shared index
+        assertEquals(new TreeSet<String>(Arrays.asList("db/migration2/V3__Other.cql")),
+                new JarFileClassPathLocationScanner().findResourceNames("db/migration2", url));
+    }
+
+    @Test
+    public void findResourceNamesInFatJar() throws Exception {
+        ByteArrayOutputStream nestedJar = new ByteArrayOutputStream();
+        writeJar(nestedJar, "db/migration/V1__Nested.cql");
+
+        File jar = temporaryFolder.newFile("fat.jar");
+        try (JarOutputStream outputStream = new JarOutputStream(new FileOutputStream(jar))) {
+            outputStream.putNextEntry(new JarEntry("BOOT-INF/classes/db/migration/V2__Classes.cql"));
+            outputStream.closeEntry();
+            outputStream.putNextEntry(new JarEntry("BOOT-INF/lib/nested.jar"));
+            outputStream.write(nestedJar.toByteArray());
+            outputStream.closeEntry();
+        }
+
+        JarFileClassPathLocationScanner scanner = new JarFileClassPathLocationScanner();
+        assertEquals(new TreeSet<String>(Arrays.asList("db/migration/V2__Classes.cql")),
+                scanner.findResourceNames("db/migration",
+                        new URL("jar:" + jar.toURI() + "!/BOOT-INF/classes!/db/migration")));
+        assertEquals(new TreeSet<String>(Arrays.asList("db/migration/V1__Nested.cql")),
+                scanner.findResourceNames("db/migration",
+                        new URL("jar:" + jar.toURI() + "!/BOOT-INF/lib/nested.jar!/db/migration")));
+    }
+
+    private void writeJar(OutputStream outputStream, String... entryNames) throws IOException {
+        try (JarOutputStream jarOutputStream = new JarOutputStream(outputStream)) {
+            for (String entryName : entryNames) {
+                jarOutputStream.putNextEntry(new JarEntry(entryName));
+                jarOutputStream.closeEntry();
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.contrastsecurity.cassandra.migration.utils.scanner.filesystem;
+
+import com.contrastsecurity.cassandra.migration.utils.scanner.Resource;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class FileSystemScannerTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void scanForResources() throws Exception {
+        final String root = createTree();
+
+        List<String> expected = Arrays.asList(root + "/V1__First.cql", root + "/a/V2__Second.cql",
+                root + "/a/b/c/V3__Third.cql", root + "/d/V4__Fourth.cql");
+        assertEquals(expected, locations(new FileSystemScanner().scanForResources(root, "V", ".cql")));
+
+        // Walked in parallel by the threads of the pool, with the same result
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Resource[] resources = pool.submit(new Callable<Resource[]>() {
+                @Override
+                public Resource[] call() throws Exception {
+                    return new FileSystemScanner().scanForResources(root, "V", ".cql");
+                }
+            }).get();
+            assertEquals(expected, locations(resources));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void fingerprintIsReadWhileScanning() throws Exception {
+        String root = createTree();
+        Resource resource = new FileSystemScanner().scanForResources(root, "V", ".cql")[0];
+        assertEquals(new FileSystemResource(resource.getLocation()).getFingerprint(), resource.getFingerprint());
+    }
+
+    private String createTree() throws Exception {
+        File root = temporaryFolder.getRoot();
+        for (String path : Arrays.asList("V1__First.cql", "README.txt", "a/V2__Second.cql", "a/V.cql",
+                "a/b/c/V3__Third.cql", "a/b/c/U5__Other.cql", "d/V4__Fourth.cql", "d/V6__Sixth.cql.bak")) {
+            File file = new File(root, path);
+            file.getParentFile().mkdirs();
+            file.createNewFile();
+        }
+        return root.getPath().replace(File.separatorChar, '/');
+    }
+
+    private List<String> locations(Resource[] resources) {
+        List<String> locations = new ArrayList<String>();
+        for (Resource resource : resources) {
+            locations.add(resource.getLocation());
+        }
+        return locations;
+    }
+}